@@ -0,0 +1,100 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.convolution.DirectConvolution;
+import io.github.karolbystrek.convolution.FftConvolution;
+import io.github.karolbystrek.convolution.Im2colConvolution;
+import io.github.karolbystrek.convolution.WinogradConvolution;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class ConvolutionalLayerBenchmark {
+
+    @Param({"mnist-conv1", "mnist-conv2", "mnist-conv3", "cifar-conv1", "cifar-conv2"})
+    private String shape;
+
+    @Param({"default"})
+    private String engine;
+
+    private ConvolutionalLayer layer;
+    private Tensor input;
+    private Tensor gradOutput;
+    private TensorArena arena;
+    private TensorArena previousArena;
+
+    @Setup
+    public void setUp() {
+        int[] config = switch (shape) {
+            case "mnist-conv1" -> new int[]{64, 1, 28, 28, 3, 5, 2};
+            case "mnist-conv2" -> new int[]{64, 3, 14, 14, 3, 5, 2};
+            case "mnist-conv3" -> new int[]{64, 3, 14, 14, 3, 3, 1};
+            case "cifar-conv1" -> new int[]{32, 3, 32, 32, 16, 3, 1};
+            case "cifar-conv2" -> new int[]{32, 16, 16, 16, 16, 3, 1};
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        };
+        int batchSize = config[0];
+        layer = new ConvolutionalLayer(config[4], config[1], config[5], 1, config[6]);
+        switch (engine) {
+            case "default" -> {
+            }
+            case "direct" -> layer.setEngine(new DirectConvolution());
+            case "im2col" -> layer.setEngine(new Im2colConvolution());
+            case "winograd" -> layer.setEngine(new WinogradConvolution());
+            case "fft" -> layer.setEngine(new FftConvolution());
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+
+        input = SyntheticData.tensor(1, batchSize, config[1], config[2], config[3]);
+        int[] outputShape = layer.outputShape(new int[]{config[1], config[2], config[3]});
+        gradOutput = SyntheticData.tensor(2, batchSize, outputShape[0], outputShape[1], outputShape[2]);
+
+        arena = new TensorArena();
+        previousArena = TensorArena.bind(arena);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TensorArena.bind(previousArena);
+    }
+
+    @Benchmark
+    public void forward(Blackhole blackhole) {
+        int mark = arena.mark();
+        blackhole.consume(layer.forwardBatch(input));
+        arena.rewind(mark);
+    }
+
+    @Benchmark
+    public void forwardBackward(Blackhole blackhole) {
+        int mark = arena.mark();
+        layer.forwardBatch(input);
+        blackhole.consume(layer.backwardBatch(gradOutput));
+        arena.rewind(mark);
+    }
+
+    @Benchmark
+    public Tensor inference() {
+        return layer.inferBatch(input);
+    }
+}
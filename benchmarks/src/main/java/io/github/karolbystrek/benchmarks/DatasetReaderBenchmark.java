@@ -0,0 +1,65 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.reader.Cifar10DataReader;
+import io.github.karolbystrek.reader.ImageDataset;
+import io.github.karolbystrek.reader.MnistDataReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class DatasetReaderBenchmark {
+
+    private static final int MNIST_IMAGES = 10000;
+
+    private Path directory;
+    private Path mnistImages;
+    private Path mnistLabels;
+    private Path cifarBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dataset-benchmark");
+        mnistImages = directory.resolve("images.idx3-ubyte");
+        mnistLabels = directory.resolve("labels.idx1-ubyte");
+        cifarBatch = directory.resolve("data_batch.bin");
+        SyntheticData.writeMnistFiles(mnistImages, mnistLabels, MNIST_IMAGES, 1);
+        SyntheticData.writeCifarFile(cifarBatch, 2);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(mnistImages);
+        Files.deleteIfExists(mnistLabels);
+        Files.deleteIfExists(cifarBatch);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public ImageDataset readMnist() throws IOException {
+        return new MnistDataReader().readDataset(mnistImages.toString(), mnistLabels.toString());
+    }
+
+    @Benchmark
+    public ImageDataset readCifar() throws IOException {
+        return new Cifar10DataReader().readDataset(cifarBatch.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+import io.github.karolbystrek.layers.HiddenLayer;
+import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.layers.OutputLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class DenseLayerBenchmark {
+
+    @Param({"mnist-hidden", "mnist-output", "cifar-output"})
+    private String shape;
+
+    private Layer layer;
+    private Tensor input;
+    private Tensor gradOutput;
+    private TensorArena arena;
+    private TensorArena previousArena;
+
+    @Setup
+    public void setUp() {
+        int[] config = switch (shape) {
+            case "mnist-hidden" -> new int[]{64, 147, 64};
+            case "mnist-output" -> new int[]{64, 64, 10};
+            case "cifar-output" -> new int[]{32, 16, 10};
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        };
+        layer = shape.endsWith("hidden") ? new HiddenLayer(config[1], config[2]) : new OutputLayer(config[1], config[2]);
+
+        input = SyntheticData.tensor(1, config[0], 1, 1, config[1]);
+        gradOutput = SyntheticData.tensor(2, config[0], 1, 1, config[2]);
+
+        arena = new TensorArena();
+        previousArena = TensorArena.bind(arena);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TensorArena.bind(previousArena);
+    }
+
+    @Benchmark
+    public void forward(Blackhole blackhole) {
+        int mark = arena.mark();
+        blackhole.consume(layer.forwardBatch(input));
+        arena.rewind(mark);
+    }
+
+    @Benchmark
+    public void forwardBackward(Blackhole blackhole) {
+        int mark = arena.mark();
+        layer.forwardBatch(input);
+        blackhole.consume(layer.backwardBatch(gradOutput));
+        arena.rewind(mark);
+    }
+}
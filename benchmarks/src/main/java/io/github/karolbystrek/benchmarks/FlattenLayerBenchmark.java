@@ -0,0 +1,52 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.FlattenLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class FlattenLayerBenchmark {
+
+    @Param({"mnist", "cifar"})
+    private String shape;
+
+    private FlattenLayer layer;
+    private Tensor input;
+    private Tensor gradOutput;
+
+    @Setup
+    public void setUp() {
+        int[] config = "mnist".equals(shape) ? new int[]{64, 3, 7, 7} : new int[]{32, 16, 1, 1};
+        layer = new FlattenLayer();
+        input = SyntheticData.tensor(1, config);
+        gradOutput = SyntheticData.tensor(2, config[0], 1, 1, config[1] * config[2] * config[3]);
+    }
+
+    @Benchmark
+    public Tensor forward() {
+        return layer.forwardBatch(input);
+    }
+
+    @Benchmark
+    public Tensor forwardBackward() {
+        layer.forwardBatch(input);
+        return layer.backwardBatch(gradOutput);
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.Kernel;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
+
+final class Models {
+
+    static final int MNIST_BATCH_SIZE = 64;
+    static final int CIFAR_BATCH_SIZE = 32;
+
+    private Models() {
+    }
+
+    static NeuralNetwork create(String name) {
+        return switch (name) {
+            case "mnist" -> mnist();
+            case "cifar" -> cifar();
+            default -> throw new IllegalArgumentException("Unknown model: " + name);
+        };
+    }
+
+    static int batchSize(String name) {
+        return "mnist".equals(name) ? MNIST_BATCH_SIZE : CIFAR_BATCH_SIZE;
+    }
+
+    static int[] inputShape(String name) {
+        return "mnist".equals(name) ? new int[]{1, 28, 28} : new int[]{3, 32, 32};
+    }
+
+    static NeuralNetwork mnist() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(kernels(3, 1, 5), 1, 2));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(kernels(3, 3, 5), 1, 2));
+        model.addLayer(new ConvolutionalLayer(kernels(3, 3, 3), 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{147, 64, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    static NeuralNetwork cifar() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(16, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(16, 16, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(PoolingLayer.globalAverage());
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{16, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    private static Kernel[] kernels(int numKernels, int depth, int size) {
+        Kernel[] kernels = new Kernel[numKernels];
+        for (int k = 0; k < numKernels; k++) {
+            kernels[k] = new Kernel(depth, size, size);
+        }
+        return kernels;
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.io.NeuralNetworkFileIO;
+import io.github.karolbystrek.model.NeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class NetworkFileIOBenchmark {
+
+    @Param({"mnist", "cifar"})
+    private String model;
+
+    private NeuralNetwork network;
+    private Path directory;
+    private String textFile;
+    private String binaryFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        network = Models.create(model);
+        directory = Files.createTempDirectory("network-io-benchmark");
+        textFile = directory.resolve("network.txt").toString();
+        binaryFile = directory.resolve("network.bin").toString();
+        NeuralNetworkFileIO.saveNetwork(network, textFile);
+        NeuralNetworkFileIO.saveNetworkBinary(network, binaryFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(textFile));
+        Files.deleteIfExists(Path.of(binaryFile));
+        Files.deleteIfExists(directory.resolve("saved.txt"));
+        Files.deleteIfExists(directory.resolve("saved.bin"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void saveText() throws IOException {
+        NeuralNetworkFileIO.saveNetwork(network, directory.resolve("saved.txt").toString());
+    }
+
+    @Benchmark
+    public void saveBinary() throws IOException {
+        NeuralNetworkFileIO.saveNetworkBinary(network, directory.resolve("saved.bin").toString());
+    }
+
+    @Benchmark
+    public NeuralNetwork loadText() throws IOException {
+        return NeuralNetworkFileIO.loadNetwork(textFile);
+    }
+
+    @Benchmark
+    public NeuralNetwork loadBinary() throws IOException {
+        return NeuralNetworkFileIO.loadNetworkBinary(binaryFile);
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
+import io.github.karolbystrek.optimizer.MomentumOptimizer;
+import io.github.karolbystrek.optimizer.Optimizer;
+import io.github.karolbystrek.optimizer.SgdOptimizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class OptimizerBenchmark {
+
+    private static final float LEARNING_RATE = 0.001f;
+
+    @Param({"mnist", "cifar"})
+    private String model;
+
+    @Param({"sgd", "momentum", "adam"})
+    private String optimizerName;
+
+    private ParameterStore parameters;
+    private Optimizer optimizer;
+
+    @Setup
+    public void setUp() {
+        parameters = Models.create(model).getParameters();
+        float[] gradients = parameters.getGradients();
+        Random random = new Random(1);
+        for (int i = 0; i < parameters.size(); i++) {
+            gradients[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+
+        optimizer = switch (optimizerName) {
+            case "sgd" -> new SgdOptimizer();
+            case "momentum" -> new MomentumOptimizer();
+            case "adam" -> new AdamOptimizer();
+            default -> throw new IllegalArgumentException("Unknown optimizer: " + optimizerName);
+        };
+    }
+
+    @Benchmark
+    public float[] step() {
+        optimizer.step(parameters, LEARNING_RATE);
+        return parameters.getValues();
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+import io.github.karolbystrek.layers.PoolingLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class PoolingLayerBenchmark {
+
+    @Param({"mnist-pool1", "mnist-pool2", "cifar-pool1", "cifar-pool2", "cifar-gap"})
+    private String shape;
+
+    private PoolingLayer layer;
+    private Tensor input;
+    private Tensor gradOutput;
+    private TensorArena arena;
+    private TensorArena previousArena;
+
+    @Setup
+    public void setUp() {
+        int[] config = switch (shape) {
+            case "mnist-pool1" -> new int[]{64, 3, 28, 28};
+            case "mnist-pool2" -> new int[]{64, 3, 14, 14};
+            case "cifar-pool1" -> new int[]{32, 16, 32, 32};
+            case "cifar-pool2" -> new int[]{32, 16, 16, 16};
+            case "cifar-gap" -> new int[]{32, 16, 8, 8};
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        };
+        layer = "cifar-gap".equals(shape) ? PoolingLayer.globalAverage() : new PoolingLayer(2, 2);
+
+        input = SyntheticData.tensor(1, config);
+        int[] outputShape = layer.outputShape(new int[]{config[1], config[2], config[3]});
+        gradOutput = SyntheticData.tensor(2, config[0], outputShape[0], outputShape[1], outputShape[2]);
+
+        arena = new TensorArena();
+        previousArena = TensorArena.bind(arena);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TensorArena.bind(previousArena);
+    }
+
+    @Benchmark
+    public void forward(Blackhole blackhole) {
+        int mark = arena.mark();
+        blackhole.consume(layer.forwardBatch(input));
+        arena.rewind(mark);
+    }
+
+    @Benchmark
+    public void forwardBackward(Blackhole blackhole) {
+        int mark = arena.mark();
+        layer.forwardBatch(input);
+        blackhole.consume(layer.backwardBatch(gradOutput));
+        arena.rewind(mark);
+    }
+}
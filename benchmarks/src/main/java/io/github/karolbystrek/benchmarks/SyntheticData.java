@@ -0,0 +1,89 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.reader.Cifar10DataPoint;
+import io.github.karolbystrek.reader.DataPoint;
+import io.github.karolbystrek.reader.ImageDataset;
+import io.github.karolbystrek.reader.MnistDataPoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class SyntheticData {
+
+    private static final int NUM_LABELS = 10;
+    private static final int CIFAR_IMAGES_PER_FILE = 10000;
+
+    private SyntheticData() {
+    }
+
+    static List<DataPoint> dataPoints(String model, int count, long seed) {
+        int[] shape = Models.inputShape(model);
+        ImageDataset dataset = dataset(count, shape[0], shape[1], shape[2], seed);
+
+        List<DataPoint> data = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            data.add("mnist".equals(model) ? new MnistDataPoint(dataset, i) : new Cifar10DataPoint(dataset, i));
+        }
+        return data;
+    }
+
+    static ImageDataset dataset(int count, int depth, int height, int width, long seed) {
+        Random random = new Random(seed);
+        byte[] pixels = new byte[count * depth * height * width];
+        random.nextBytes(pixels);
+        byte[] labels = new byte[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = (byte) random.nextInt(NUM_LABELS);
+        }
+        return new ImageDataset(pixels, labels, NUM_LABELS, depth, height, width);
+    }
+
+    static Tensor tensor(long seed, int... shape) {
+        Random random = new Random(seed);
+        Tensor tensor = new Tensor(shape);
+        float[] data = tensor.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return tensor;
+    }
+
+    static void writeMnistFiles(Path images, Path labels, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (DataOutputStream imageOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(images.toFile())));
+             DataOutputStream labelOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(labels.toFile())))) {
+            imageOutput.writeInt(2051);
+            imageOutput.writeInt(count);
+            imageOutput.writeInt(28);
+            imageOutput.writeInt(28);
+            labelOutput.writeInt(2049);
+            labelOutput.writeInt(count);
+
+            byte[] pixels = new byte[28 * 28];
+            for (int i = 0; i < count; i++) {
+                random.nextBytes(pixels);
+                imageOutput.write(pixels);
+                labelOutput.writeByte(random.nextInt(NUM_LABELS));
+            }
+        }
+    }
+
+    static void writeCifarFile(Path file, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            byte[] pixels = new byte[3 * 32 * 32];
+            for (int i = 0; i < CIFAR_IMAGES_PER_FILE; i++) {
+                output.writeByte(random.nextInt(NUM_LABELS));
+                random.nextBytes(pixels);
+                output.write(pixels);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.karolbystrek.benchmarks;
+
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.reader.DataPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class TrainStepBenchmark {
+
+    private static final float LEARNING_RATE = 0.001f;
+
+    @Param({"mnist", "cifar"})
+    private String model;
+
+    @Param({"false", "true"})
+    private boolean compiled;
+
+    private NeuralNetwork network;
+    private List<DataPoint> batch;
+    private int batchSize;
+
+    @Setup
+    public void setUp() {
+        network = Models.create(model);
+        batchSize = Models.batchSize(model);
+        batch = SyntheticData.dataPoints(model, batchSize, 1);
+        if (compiled) {
+            network.compile(batchSize, Models.inputShape(model));
+        }
+    }
+
+    @Benchmark
+    public float trainStep() {
+        return network.train(batch, batchSize, LEARNING_RATE);
+    }
+}
@@ -6,9 +6,12 @@ import io.github.karolbystrek.layers.ConvolutionalLayer;
 import io.github.karolbystrek.layers.FlattenLayer;
 import io.github.karolbystrek.layers.FullyConnectedLayer;
 import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.metrics.TrainingMetrics;
 import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
 import io.github.karolbystrek.reader.Cifar10DataPoint;
 import io.github.karolbystrek.reader.Cifar10DataReader;
+import io.github.karolbystrek.reader.DataLoader;
 import io.github.karolbystrek.reader.DataPoint;
 
 import java.io.IOException;
@@ -36,22 +39,36 @@ public class Cifar10App {
             List<Cifar10DataPoint> testData = dataReader.readTestData(testFile);
 
             NeuralNetwork model = new NeuralNetwork();
+            model.setNumThreads(Runtime.getRuntime().availableProcessors());
+            model.setOptimizer(new AdamOptimizer());
 
             model.addLayer(new ConvolutionalLayer(16, 3, 3, 1, 1));
             model.addLayer(new PoolingLayer(2, 2));
 
-            model.addLayer(new ConvolutionalLayer(16, 32, 3, 1, 1));
+            model.addLayer(new ConvolutionalLayer(16, 16, 3, 1, 1));
             model.addLayer(new PoolingLayer(2, 2));
 
+            model.addLayer(PoolingLayer.globalAverage());
             model.addLayer(new FlattenLayer());
 
-            model.addLayer(new FullyConnectedLayer(new int[] {1024, 512, 10}));
+            model.addLayer(new FullyConnectedLayer(new int[] {16, 10}));
 
-            model.fit(trainingData, MAX_EPOCHS, BATCH_SIZE, LEARNING_RATE);
+            model.fuseLayers();
+            System.out.println(model.compile(BATCH_SIZE, 3, 32, 32));
+
+            TrainingMetrics metrics = new TrainingMetrics();
+            metrics.register("cifar-10");
+            model.setMetrics(metrics);
+
+            try (DataLoader dataLoader = new DataLoader(trainingData, BATCH_SIZE)) {
+                model.fit(dataLoader, MAX_EPOCHS, LEARNING_RATE);
+            }
+            System.out.print(metrics);
 
             evaluate(model, testData);
 
-            NeuralNetworkFileIO.saveNetwork(model, "data/networks/C16-3-3_P2-2_C16-32-3_P2-2_FC1024-512-10.txt");
+            NeuralNetworkFileIO.saveNetwork(model, "data/networks/C16-3-3_P2-2_C16-16-3_P2-2_GAP_FC16-10.txt");
+            NeuralNetworkFileIO.saveNetworkBinary(model, "data/networks/C16-3-3_P2-2_C16-16-3_P2-2_GAP_FC16-10.bin");
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -62,21 +79,19 @@ public class Cifar10App {
         int correct = 0;
 
         for (DataPoint dataPoint : testData) {
-            Tensor outputTensor = model.predict(dataPoint);
-            float[] output = outputTensor.getData()[0][0];
+            Tensor output = model.predict(dataPoint);
 
             int predicted = 0;
-            for (int i = 1; i < output.length; i++) {
-                if (output[i] > output[predicted]) {
+            for (int i = 1; i < output.getWidth(); i++) {
+                if (output.get(0, 0, i) > output.get(0, 0, predicted)) {
                     predicted = i;
                 }
             }
 
-            Tensor expectedOutputTensor = dataPoint.getExpectedOutput();
-            float[] expectedOutput = expectedOutputTensor.getData()[0][0];
+            Tensor expectedOutput = dataPoint.getExpectedOutput();
             int expected = 0;
-            for (int i = 1; i < expectedOutput.length; i++) {
-                if (expectedOutput[i] > expectedOutput[expected]) {
+            for (int i = 1; i < expectedOutput.getWidth(); i++) {
+                if (expectedOutput.get(0, 0, i) > expectedOutput.get(0, 0, expected)) {
                     expected = i;
                 }
             }
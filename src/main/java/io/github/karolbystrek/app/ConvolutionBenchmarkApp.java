@@ -0,0 +1,107 @@
+package io.github.karolbystrek.app;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.convolution.ConvolutionEngine;
+import io.github.karolbystrek.convolution.ConvolutionGeometry;
+import io.github.karolbystrek.convolution.DirectConvolution;
+import io.github.karolbystrek.convolution.FftConvolution;
+import io.github.karolbystrek.convolution.Im2colConvolution;
+import io.github.karolbystrek.convolution.WinogradConvolution;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class ConvolutionBenchmarkApp {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final long ROUND_NANOS = 200_000_000L;
+
+    private static final int[] KERNEL_SIZES = {3, 5, 7, 9, 11};
+
+    public static void main(String[] args) {
+        ComputeExecutor executor = ForkJoinExecutor.common();
+
+        Map<String, Supplier<ConvolutionEngine>> engines = new LinkedHashMap<>();
+        engines.put("direct", DirectConvolution::new);
+        engines.put("im2col", Im2colConvolution::new);
+        engines.put("winograd", WinogradConvolution::new);
+        engines.put("fft", FftConvolution::new);
+
+        System.out.println("MNIST 28x28, 1 -> 3 channels, batch 64");
+        benchmark(executor, engines, 64, 1, 28, 28, 3);
+        System.out.println("MNIST 14x14, 3 -> 3 channels, batch 64");
+        benchmark(executor, engines, 64, 3, 14, 14, 3);
+        System.out.println("CIFAR-10 32x32, 3 -> 16 channels, batch 32");
+        benchmark(executor, engines, 32, 3, 32, 32, 16);
+        System.out.println("CIFAR-10 16x16, 16 -> 16 channels, batch 32");
+        benchmark(executor, engines, 32, 16, 16, 16, 16);
+    }
+
+    private static void benchmark(ComputeExecutor executor, Map<String, Supplier<ConvolutionEngine>> engines,
+                                  int batchSize, int inputDepth, int height, int width, int numKernels) {
+        System.out.printf("%-8s", "kernel");
+        for (String name : engines.keySet()) {
+            System.out.printf("%24s", name + " fwd/bwd ms");
+        }
+        System.out.println();
+
+        Random random = new Random(42);
+        for (int kernelSize : KERNEL_SIZES) {
+            ConvolutionGeometry geometry = ConvolutionGeometry.of(batchSize, inputDepth, height, width,
+                    numKernels, inputDepth, kernelSize, kernelSize, 1, kernelSize / 2);
+
+            float[] input = randomArray(random, batchSize * geometry.inputSize());
+            float[] parameters = randomArray(random, geometry.weightsSize() + numKernels);
+            float[] delta = randomArray(random, batchSize * geometry.outputSize());
+            float[] output = new float[batchSize * geometry.outputSize()];
+            float[] gradients = new float[parameters.length];
+            float[] gradInput = new float[input.length];
+
+            System.out.printf("%-8s", kernelSize + "x" + kernelSize);
+            for (Map.Entry<String, Supplier<ConvolutionEngine>> entry : engines.entrySet()) {
+                ConvolutionEngine engine = entry.getValue().get();
+                if (engine instanceof WinogradConvolution && !WinogradConvolution.supports(geometry)) {
+                    System.out.printf("%24s", "-");
+                    continue;
+                }
+                double forward = measure(() -> engine.forward(executor, geometry, input, 0, parameters, 0, output));
+                double backward = measure(() -> engine.backward(executor, geometry, input, 0, delta,
+                        parameters, gradients, 0, gradInput));
+                System.out.printf("%24s", String.format("%.3f / %.3f", forward / 1.0e6, backward / 1.0e6));
+            }
+            System.out.println();
+        }
+        System.out.println();
+    }
+
+    private static double measure(Runnable operation) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            int iterations = 0;
+            long startTime = System.nanoTime();
+            long elapsed;
+            do {
+                operation.run();
+                iterations++;
+                elapsed = System.nanoTime() - startTime;
+            } while (elapsed < ROUND_NANOS);
+
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, (double) elapsed / iterations);
+            }
+        }
+        return best;
+    }
+
+    private static float[] randomArray(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return values;
+    }
+}
@@ -6,7 +6,10 @@ import io.github.karolbystrek.layers.ConvolutionalLayer;
 import io.github.karolbystrek.layers.FlattenLayer;
 import io.github.karolbystrek.layers.FullyConnectedLayer;
 import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.metrics.TrainingMetrics;
 import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
+import io.github.karolbystrek.reader.DataLoader;
 import io.github.karolbystrek.reader.DataPoint;
 import io.github.karolbystrek.reader.MnistDataPoint;
 import io.github.karolbystrek.reader.MnistDataReader;
@@ -26,6 +29,8 @@ public class MnistApp {
             List<MnistDataPoint> testData = reader.readData("data/mnist/t10k-images.idx3-ubyte", "data/mnist/t10k-labels.idx1-ubyte");
 
             NeuralNetwork model = new NeuralNetwork();
+            model.setNumThreads(Runtime.getRuntime().availableProcessors());
+            model.setOptimizer(new AdamOptimizer());
 
             Kernel kernel1 = new Kernel(1, 5, 5);
             Kernel kernel2 = new Kernel(1, 5, 5);
@@ -50,7 +55,17 @@ public class MnistApp {
 
             model.addLayer(new FullyConnectedLayer(new int[]{147, 64, 10}));
 
-            model.fit(trainingData, MAX_EPOCHS, BATCH_SIZE, LEARNING_RATE);
+            model.fuseLayers();
+            System.out.println(model.compile(BATCH_SIZE, 1, 28, 28));
+
+            TrainingMetrics metrics = new TrainingMetrics();
+            metrics.register("mnist");
+            model.setMetrics(metrics);
+
+            try (DataLoader dataLoader = new DataLoader(trainingData, BATCH_SIZE)) {
+                model.fit(dataLoader, MAX_EPOCHS, LEARNING_RATE);
+            }
+            System.out.print(metrics);
 
             evaluate(model, testData);
 
@@ -63,21 +78,19 @@ public class MnistApp {
         int correct = 0;
 
         for (DataPoint dataPoint : testData) {
-            Tensor outputTensor = model.predict(dataPoint);
-            float[] output = outputTensor.getData()[0][0];
+            Tensor output = model.predict(dataPoint);
 
             int predicted = 0;
-            for (int i = 1; i < output.length; i++) {
-                if (output[i] > output[predicted]) {
+            for (int i = 1; i < output.getWidth(); i++) {
+                if (output.get(0, 0, i) > output.get(0, 0, predicted)) {
                     predicted = i;
                 }
             }
 
-            Tensor expectedOutputTensor = dataPoint.getExpectedOutput();
-            float[] expectedOutput = expectedOutputTensor.getData()[0][0];
+            Tensor expectedOutput = dataPoint.getExpectedOutput();
             int expected = 0;
-            for (int i = 1; i < expectedOutput.length; i++) {
-                if (expectedOutput[i] > expectedOutput[expected]) {
+            for (int i = 1; i < expectedOutput.getWidth(); i++) {
+                if (expectedOutput.get(0, 0, i) > expectedOutput.get(0, 0, expected)) {
                     expected = i;
                 }
             }
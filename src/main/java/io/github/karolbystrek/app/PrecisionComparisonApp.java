@@ -0,0 +1,141 @@
+package io.github.karolbystrek.app;
+
+import io.github.karolbystrek.core.Precision;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
+import io.github.karolbystrek.reader.Cifar10DataReader;
+import io.github.karolbystrek.reader.DataLoader;
+import io.github.karolbystrek.reader.DataPoint;
+import io.github.karolbystrek.reader.MnistDataReader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class PrecisionComparisonApp {
+
+    private static final int MAX_EPOCHS = 5;
+    private static final float LEARNING_RATE = 0.001f;
+
+    private static final String[] cifarTrainingFiles = {
+            "data/cifar-10/data_batch_1.bin",
+            "data/cifar-10/data_batch_2.bin",
+            "data/cifar-10/data_batch_3.bin",
+            "data/cifar-10/data_batch_4.bin",
+            "data/cifar-10/data_batch_5.bin"
+    };
+
+    public static void main(String[] args) {
+        try {
+            MnistDataReader mnistReader = new MnistDataReader();
+            compare("MNIST", PrecisionComparisonApp::mnistModel, 64,
+                    mnistReader.readData("data/mnist/train-images.idx3-ubyte", "data/mnist/train-labels.idx1-ubyte"),
+                    mnistReader.readData("data/mnist/t10k-images.idx3-ubyte", "data/mnist/t10k-labels.idx1-ubyte"));
+
+            Cifar10DataReader cifarReader = new Cifar10DataReader();
+            compare("CIFAR-10", PrecisionComparisonApp::cifarModel, 32,
+                    cifarReader.readTrainingData(cifarTrainingFiles),
+                    cifarReader.readTestData("data/cifar-10/test_batch.bin"));
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void compare(String name, Supplier<NeuralNetwork> modelFactory, int batchSize,
+                                List<? extends DataPoint> trainingData, List<? extends DataPoint> testData) {
+        float[] initialParameters = null;
+        float baselineAccuracy = 0.0f;
+
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork model = modelFactory.get();
+            if (initialParameters == null) {
+                initialParameters = model.getParameters().snapshot();
+            } else {
+                model.getParameters().restore(initialParameters);
+            }
+            model.setActivationPrecision(precision);
+
+            long startTime = System.nanoTime();
+            try (DataLoader dataLoader = new DataLoader(trainingData, batchSize)) {
+                model.fit(dataLoader, MAX_EPOCHS, LEARNING_RATE);
+            }
+            long endTime = System.nanoTime();
+
+            float accuracy = evaluate(model, testData);
+            if (precision == Precision.FP32) {
+                baselineAccuracy = accuracy;
+            }
+            System.out.printf("%s %s: test accuracy %.2f%% (%+.2f vs FP32), training time %.1fs%n",
+                    name, precision, accuracy, accuracy - baselineAccuracy, (endTime - startTime) / 1.0e9);
+        }
+    }
+
+    private static NeuralNetwork mnistModel() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setNumThreads(Runtime.getRuntime().availableProcessors());
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(3, 1, 5, 1, 2));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 5, 1, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{147, 64, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    private static NeuralNetwork cifarModel() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setNumThreads(Runtime.getRuntime().availableProcessors());
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(16, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(16, 16, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(PoolingLayer.globalAverage());
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{16, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    private static float evaluate(NeuralNetwork model, List<? extends DataPoint> testData) {
+        int correct = 0;
+
+        for (DataPoint dataPoint : testData) {
+            Tensor output = model.predict(dataPoint);
+
+            int predicted = 0;
+            for (int i = 1; i < output.getWidth(); i++) {
+                if (output.get(0, 0, i) > output.get(0, 0, predicted)) {
+                    predicted = i;
+                }
+            }
+
+            Tensor expectedOutput = dataPoint.getExpectedOutput();
+            int expected = 0;
+            for (int i = 1; i < expectedOutput.getWidth(); i++) {
+                if (expectedOutput.get(0, 0, i) > expectedOutput.get(0, 0, expected)) {
+                    expected = i;
+                }
+            }
+
+            if (predicted == expected) {
+                correct++;
+            }
+        }
+
+        return 100.0f * correct / testData.size();
+    }
+}
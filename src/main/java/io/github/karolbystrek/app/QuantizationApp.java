@@ -0,0 +1,158 @@
+package io.github.karolbystrek.app;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.io.NeuralNetworkFileIO;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.InferenceModel;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.optimizer.AdamOptimizer;
+import io.github.karolbystrek.quantization.PostTrainingQuantizer;
+import io.github.karolbystrek.reader.Cifar10DataReader;
+import io.github.karolbystrek.reader.DataLoader;
+import io.github.karolbystrek.reader.DataPoint;
+import io.github.karolbystrek.reader.MnistDataReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QuantizationApp {
+
+    private static final int MAX_EPOCHS = 5;
+    private static final int BATCH_SIZE = 64;
+    private static final int EVALUATION_BATCH_SIZE = 256;
+    private static final float LEARNING_RATE = 0.001f;
+
+    private static final String[] cifarTrainingFiles = {
+            "data/cifar-10/data_batch_1.bin",
+            "data/cifar-10/data_batch_2.bin",
+            "data/cifar-10/data_batch_3.bin",
+            "data/cifar-10/data_batch_4.bin",
+            "data/cifar-10/data_batch_5.bin"
+    };
+
+    public static void main(String[] args) {
+        try {
+            MnistDataReader mnistReader = new MnistDataReader();
+            report("mnist", mnistModel(),
+                    mnistReader.readData("data/mnist/train-images.idx3-ubyte", "data/mnist/train-labels.idx1-ubyte"),
+                    mnistReader.readData("data/mnist/t10k-images.idx3-ubyte", "data/mnist/t10k-labels.idx1-ubyte"));
+
+            Cifar10DataReader cifarReader = new Cifar10DataReader();
+            report("cifar10", cifarModel(),
+                    cifarReader.readTrainingData(cifarTrainingFiles),
+                    cifarReader.readTestData("data/cifar-10/test_batch.bin"));
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void report(String name, NeuralNetwork model,
+                               List<? extends DataPoint> trainingData, List<? extends DataPoint> testData) throws IOException {
+        try (DataLoader dataLoader = new DataLoader(trainingData, BATCH_SIZE)) {
+            model.fit(dataLoader, MAX_EPOCHS, LEARNING_RATE);
+        }
+
+        NeuralNetwork quantized = new PostTrainingQuantizer().quantize(model, trainingData);
+
+        String modelPath = name + "-fp32.bin";
+        String quantizedPath = name + "-int8.bin";
+        NeuralNetworkFileIO.saveNetworkBinary(model, modelPath);
+        NeuralNetworkFileIO.saveNetworkBinary(quantized, quantizedPath);
+        quantized = NeuralNetworkFileIO.loadNetworkBinary(quantizedPath);
+
+        long modelSize = Files.size(Path.of(modelPath));
+        long quantizedSize = Files.size(Path.of(quantizedPath));
+
+        long startTime = System.nanoTime();
+        float accuracy = evaluate(model.asInferenceModel(), testData);
+        long modelTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        float quantizedAccuracy = evaluate(quantized.asInferenceModel(), testData);
+        long quantizedTime = System.nanoTime() - startTime;
+
+        System.out.printf("%s FP32: accuracy %.2f%%, %d bytes, inference %.1fms%n",
+                name, accuracy, modelSize, modelTime / 1.0e6);
+        System.out.printf("%s INT8: accuracy %.2f%% (%+.2f), %d bytes (%.1fx smaller), inference %.1fms (%.1fx faster)%n",
+                name, quantizedAccuracy, quantizedAccuracy - accuracy, quantizedSize, (double) modelSize / quantizedSize,
+                quantizedTime / 1.0e6, (double) modelTime / quantizedTime);
+    }
+
+    private static NeuralNetwork mnistModel() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setNumThreads(Runtime.getRuntime().availableProcessors());
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(3, 1, 5, 1, 2));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 5, 1, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{147, 64, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    private static NeuralNetwork cifarModel() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.setNumThreads(Runtime.getRuntime().availableProcessors());
+        model.setOptimizer(new AdamOptimizer());
+
+        model.addLayer(new ConvolutionalLayer(16, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(16, 16, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(PoolingLayer.globalAverage());
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{16, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+
+    private static float evaluate(InferenceModel model, List<? extends DataPoint> testData) {
+        int correct = 0;
+
+        for (int start = 0; start < testData.size(); start += EVALUATION_BATCH_SIZE) {
+            List<? extends DataPoint> batch = testData.subList(start, Math.min(start + EVALUATION_BATCH_SIZE, testData.size()));
+            List<Tensor> inputs = new ArrayList<>();
+            for (DataPoint dataPoint : batch) {
+                inputs.add(dataPoint.getInput());
+            }
+            Tensor outputs = model.predictBatch(Tensor.stack(inputs));
+
+            for (int n = 0; n < batch.size(); n++) {
+                Tensor output = outputs.sample(n);
+                int predicted = 0;
+                for (int i = 1; i < output.getWidth(); i++) {
+                    if (output.get(0, 0, i) > output.get(0, 0, predicted)) {
+                        predicted = i;
+                    }
+                }
+
+                Tensor expectedOutput = batch.get(n).getExpectedOutput();
+                int expected = 0;
+                for (int i = 1; i < expectedOutput.getWidth(); i++) {
+                    if (expectedOutput.get(0, 0, i) > expectedOutput.get(0, 0, expected)) {
+                        expected = i;
+                    }
+                }
+
+                if (predicted == expected) {
+                    correct++;
+                }
+            }
+        }
+
+        return 100.0f * correct / testData.size();
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.karolbystrek.app;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.io.NeuralNetworkFileIO;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.serving.InferenceServer;
+import io.github.karolbystrek.serving.LoadGenerator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ServingApp {
+
+    private static final int[] INPUT_SHAPE = {1, 28, 28};
+    private static final int CONCURRENCY = 64;
+    private static final int TOTAL_REQUESTS = 5000;
+    private static final Duration MAX_WAIT = Duration.ofMillis(2);
+
+    public static void main(String[] args) {
+        try {
+            NeuralNetwork model = args.length > 0 ? NeuralNetworkFileIO.loadNetworkBinary(args[0]) : mnistModel();
+
+            List<Tensor> inputs = new ArrayList<>();
+            Random random = new Random(42);
+            for (int i = 0; i < 256; i++) {
+                float[] data = new float[INPUT_SHAPE[0] * INPUT_SHAPE[1] * INPUT_SHAPE[2]];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = random.nextFloat();
+                }
+                inputs.add(new Tensor(data, INPUT_SHAPE));
+            }
+
+            for (int maxBatchSize : new int[]{1, 8, 32}) {
+                try (InferenceServer server = InferenceServer.start(model.asInferenceModel(), INPUT_SHAPE,
+                        new InetSocketAddress("localhost", 0), maxBatchSize, MAX_WAIT)) {
+                    LoadGenerator loadGenerator = LoadGenerator.forServer(server);
+                    loadGenerator.run(inputs, CONCURRENCY, TOTAL_REQUESTS / 10);
+                    server.getMetrics().reset();
+
+                    LoadGenerator.Result result = loadGenerator.run(inputs, CONCURRENCY, TOTAL_REQUESTS);
+                    System.out.println("max batch " + maxBatchSize + (server.usesVirtualThreads() ? " (virtual threads)" : "") + ": " + result);
+                    System.out.println("  server " + server.getMetrics().toJson());
+                }
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static NeuralNetwork mnistModel() {
+        NeuralNetwork model = new NeuralNetwork();
+
+        model.addLayer(new ConvolutionalLayer(3, 1, 5, 1, 2));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 5, 1, 2));
+        model.addLayer(new ConvolutionalLayer(3, 3, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{147, 64, 10}));
+
+        model.fuseLayers();
+        return model;
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.karolbystrek.compute;
+
+public interface ComputeExecutor {
+
+    void forRange(int count, long costPerItem, RangeTask task);
+
+    int getParallelism();
+
+    @FunctionalInterface
+    interface RangeTask {
+        void run(int from, int to);
+    }
+}
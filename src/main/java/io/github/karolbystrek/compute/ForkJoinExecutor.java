@@ -0,0 +1,228 @@
+package io.github.karolbystrek.compute;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public final class ForkJoinExecutor implements ComputeExecutor {
+
+    private static final ForkJoinExecutor COMMON = new ForkJoinExecutor(ForkJoinPool.commonPool(),
+            Runtime.getRuntime().availableProcessors(), WorkPartitioner.DEFAULT_MIN_CHUNK_COST);
+
+    private final ForkJoinPool pool;
+    private final WorkPartitioner partitioner;
+    private final ThreadLocal<Frames> frames = ThreadLocal.withInitial(Frames::new);
+
+    public ForkJoinExecutor(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    public ForkJoinExecutor(ForkJoinPool pool) {
+        this(pool, WorkPartitioner.DEFAULT_MIN_CHUNK_COST);
+    }
+
+    public ForkJoinExecutor(ForkJoinPool pool, long minChunkCost) {
+        this(pool, pool.getParallelism(), minChunkCost);
+    }
+
+    private ForkJoinExecutor(ForkJoinPool pool, int parallelism, long minChunkCost) {
+        this.pool = pool;
+        this.partitioner = new WorkPartitioner(parallelism, minChunkCost);
+    }
+
+    public static ForkJoinExecutor common() {
+        return COMMON;
+    }
+
+    @Override
+    public void forRange(int count, long costPerItem, RangeTask task) {
+        if (count <= 0) {
+            return;
+        }
+        int chunks = partitioner.chunkCount(count, costPerItem);
+        if (chunks == 1) {
+            task.run(0, count);
+            return;
+        }
+
+        Frames threadFrames = frames.get();
+        Frame frame = threadFrames.push();
+        try {
+            frame.run(task, count, chunks);
+        } finally {
+            threadFrames.pop();
+        }
+    }
+
+    @Override
+    public int getParallelism() {
+        return partitioner.getParallelism();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    private final class Frames {
+
+        private Frame[] stack = new Frame[0];
+        private int depth;
+
+        Frame push() {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth + 1);
+                stack[depth] = new Frame();
+            }
+            return stack[depth++];
+        }
+
+        void pop() {
+            depth--;
+        }
+    }
+
+    private final class Frame implements ForkJoinPool.ManagedBlocker {
+
+        private final ChunkAction[] helpers = new ChunkAction[partitioner.getParallelism() - 1];
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger pendingHelpers = new AtomicInteger();
+
+        private RangeTask task;
+        private int count;
+        private int chunks;
+        private Thread owner;
+        private volatile Throwable failure;
+
+        Frame() {
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new ChunkAction(this);
+            }
+        }
+
+        void run(RangeTask task, int count, int chunks) {
+            this.task = task;
+            this.count = count;
+            this.chunks = chunks;
+            this.owner = Thread.currentThread();
+            this.failure = null;
+            nextChunk.set(0);
+
+            int numHelpers = Math.min(helpers.length, chunks - 1);
+            pendingHelpers.set(numHelpers);
+            boolean inPool = ForkJoinTask.getPool() == pool;
+            for (int i = 0; i < numHelpers; i++) {
+                ChunkAction helper = helpers[i];
+                helper.reinitialize();
+                if (inPool) {
+                    helper.fork();
+                } else {
+                    pool.execute(helper);
+                }
+            }
+
+            runChunks();
+
+            if (inPool) {
+                for (int i = numHelpers - 1; i >= 0; i--) {
+                    if (helpers[i].tryUnfork()) {
+                        helpers[i].invoke();
+                    }
+                }
+                for (int i = 0; i < numHelpers; i++) {
+                    helpers[i].join();
+                }
+            } else {
+                awaitHelpers();
+                for (int i = 0; i < numHelpers; i++) {
+                    while (!helpers[i].isDone()) {
+                        Thread.yield();
+                    }
+                }
+            }
+
+            this.task = null;
+            Throwable thrown = failure;
+            if (thrown != null) {
+                failure = null;
+                if (thrown instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (thrown instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException("Parallel range task failed", thrown);
+            }
+        }
+
+        private void awaitHelpers() {
+            boolean interrupted = false;
+            while (!isReleasable()) {
+                try {
+                    ForkJoinPool.managedBlock(this);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean block() {
+            if (!isReleasable()) {
+                LockSupport.park(this);
+            }
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return pendingHelpers.get() == 0;
+        }
+
+        void runChunks() {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    task.run(WorkPartitioner.chunkStart(count, chunks, chunk),
+                            WorkPartitioner.chunkStart(count, chunks, chunk + 1));
+                } catch (Throwable e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    nextChunk.set(chunks);
+                }
+            }
+        }
+
+        void helperFinished() {
+            if (pendingHelpers.decrementAndGet() == 0) {
+                LockSupport.unpark(owner);
+            }
+        }
+    }
+
+    private static final class ChunkAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Frame frame;
+
+        private ChunkAction(Frame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                frame.runChunks();
+            } finally {
+                frame.helperFinished();
+            }
+        }
+    }
+}
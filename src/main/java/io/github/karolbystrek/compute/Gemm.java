@@ -0,0 +1,163 @@
+package io.github.karolbystrek.compute;
+
+import java.util.Arrays;
+
+public final class Gemm {
+
+    private static final int MR = 4;
+    private static final int NR = 4;
+    private static final int KC = 256;
+    private static final int MC = 128;
+    private static final int NC = 512;
+
+    private static final ScratchBuffer PACKED_A = new ScratchBuffer();
+    private static final ScratchBuffer PACKED_B = new ScratchBuffer();
+
+    private Gemm() {}
+
+    public static void multiply(boolean transposeA, boolean transposeB, int m, int n, int k,
+                                float[] a, int aOffset, int lda,
+                                float[] b, int bOffset, int ldb,
+                                float[] c, int cOffset, int ldc,
+                                boolean accumulate) {
+        if (!accumulate) {
+            for (int i = 0; i < m; i++) {
+                int row = cOffset + i * ldc;
+                Arrays.fill(c, row, row + n, 0.0f);
+            }
+        }
+        if (m == 0 || n == 0 || k == 0) {
+            return;
+        }
+
+        int blockK = Math.min(k, KC);
+        float[] packedA = PACKED_A.get(roundUp(Math.min(m, MC), MR) * blockK);
+        float[] packedB = PACKED_B.get(roundUp(Math.min(n, NC), NR) * blockK);
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(transposeB, b, bOffset, ldb, pc, jc, kc, nc, packedB);
+
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    packA(transposeA, a, aOffset, lda, ic, pc, mc, kc, packedA);
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            microKernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                    c, cOffset + (ic + ir) * ldc + jc + jr, ldc, mr, nr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void packA(boolean transpose, float[] a, int aOffset, int lda,
+                              int rowStart, int depthStart, int rows, int depth, float[] packed) {
+        int index = 0;
+        for (int panel = 0; panel < rows; panel += MR) {
+            for (int p = 0; p < depth; p++) {
+                for (int i = 0; i < MR; i++) {
+                    int row = panel + i;
+                    if (row < rows) {
+                        int r = rowStart + row;
+                        int col = depthStart + p;
+                        packed[index++] = transpose ? a[aOffset + col * lda + r] : a[aOffset + r * lda + col];
+                    } else {
+                        packed[index++] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void packB(boolean transpose, float[] b, int bOffset, int ldb,
+                              int depthStart, int colStart, int depth, int cols, float[] packed) {
+        int index = 0;
+        for (int panel = 0; panel < cols; panel += NR) {
+            for (int p = 0; p < depth; p++) {
+                int row = depthStart + p;
+                for (int j = 0; j < NR; j++) {
+                    int col = panel + j;
+                    if (col < cols) {
+                        int cIndex = colStart + col;
+                        packed[index++] = transpose ? b[bOffset + cIndex * ldb + row] : b[bOffset + row * ldb + cIndex];
+                    } else {
+                        packed[index++] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void microKernel(int depth, float[] packedA, int aIndex, float[] packedB, int bIndex,
+                                    float[] c, int cIndex, int ldc, int rows, int cols) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < depth; p++) {
+            float a0 = packedA[aIndex];
+            float a1 = packedA[aIndex + 1];
+            float a2 = packedA[aIndex + 2];
+            float a3 = packedA[aIndex + 3];
+            float b0 = packedB[bIndex];
+            float b1 = packedB[bIndex + 1];
+            float b2 = packedB[bIndex + 2];
+            float b3 = packedB[bIndex + 3];
+            aIndex += MR;
+            bIndex += NR;
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+
+        if (rows == MR && cols == NR) {
+            c[cIndex] += c00; c[cIndex + 1] += c01; c[cIndex + 2] += c02; c[cIndex + 3] += c03;
+            cIndex += ldc;
+            c[cIndex] += c10; c[cIndex + 1] += c11; c[cIndex + 2] += c12; c[cIndex + 3] += c13;
+            cIndex += ldc;
+            c[cIndex] += c20; c[cIndex + 1] += c21; c[cIndex + 2] += c22; c[cIndex + 3] += c23;
+            cIndex += ldc;
+            c[cIndex] += c30; c[cIndex + 1] += c31; c[cIndex + 2] += c32; c[cIndex + 3] += c33;
+            return;
+        }
+
+        storeRow(c, cIndex, cols, c00, c01, c02, c03);
+        if (rows > 1) {
+            storeRow(c, cIndex + ldc, cols, c10, c11, c12, c13);
+        }
+        if (rows > 2) {
+            storeRow(c, cIndex + 2 * ldc, cols, c20, c21, c22, c23);
+        }
+        if (rows > 3) {
+            storeRow(c, cIndex + 3 * ldc, cols, c30, c31, c32, c33);
+        }
+    }
+
+    private static void storeRow(float[] c, int cIndex, int cols, float v0, float v1, float v2, float v3) {
+        c[cIndex] += v0;
+        if (cols > 1) {
+            c[cIndex + 1] += v1;
+        }
+        if (cols > 2) {
+            c[cIndex + 2] += v2;
+        }
+        if (cols > 3) {
+            c[cIndex + 3] += v3;
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+}
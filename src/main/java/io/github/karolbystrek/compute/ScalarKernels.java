@@ -0,0 +1,85 @@
+package io.github.karolbystrek.compute;
+
+class ScalarKernels implements VectorKernels {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void add(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sgdStep(float learningRate, float[] gradients, float[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            values[i] -= learningRate * gradients[i];
+            gradients[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void addAndClear(float[] source, float[] target, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            target[i] += source[i];
+            source[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void momentumStep(float learningRate, float momentum, boolean nesterov,
+                             float[] gradients, float[] velocity, float[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float gradient = gradients[i];
+            float v = momentum * velocity[i] + gradient;
+            velocity[i] = v;
+            values[i] -= learningRate * (nesterov ? gradient + momentum * v : v);
+            gradients[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void adamStep(float stepSize, float beta1, float beta2, float epsilon, float decay,
+                         float[] gradients, float[] firstMoments, float[] secondMoments, float[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float gradient = gradients[i];
+            float m = beta1 * firstMoments[i] + (1.0f - beta1) * gradient;
+            float v = beta2 * secondMoments[i] + (1.0f - beta2) * gradient * gradient;
+            firstMoments[i] = m;
+            secondMoments[i] = v;
+            values[i] = values[i] * (1.0f - decay) - stepSize * m / ((float) Math.sqrt(v) + epsilon);
+            gradients[i] = 0.0f;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.karolbystrek.compute;
+
+public final class ScratchBuffer {
+
+    private final ThreadLocal<float[]> buffers = new ThreadLocal<>();
+
+    public float[] get(int length) {
+        float[] buffer = buffers.get();
+        if (buffer == null || buffer.length < length) {
+            buffer = new float[length];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.karolbystrek.compute;
+
+public final class SequentialExecutor implements ComputeExecutor {
+
+    public static final SequentialExecutor INSTANCE = new SequentialExecutor();
+
+    private SequentialExecutor() {}
+
+    @Override
+    public void forRange(int count, long costPerItem, RangeTask task) {
+        if (count > 0) {
+            task.run(0, count);
+        }
+    }
+
+    @Override
+    public int getParallelism() {
+        return 1;
+    }
+}
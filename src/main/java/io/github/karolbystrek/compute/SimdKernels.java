@@ -0,0 +1,194 @@
+package io.github.karolbystrek.compute;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+class SimdKernels implements VectorKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / Integer.BYTES));
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector accumulator = FloatVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            accumulator = va.fma(vb, accumulator);
+        }
+
+        float sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        IntVector accumulator = IntVector.zero(INT_SPECIES);
+        int bound = BYTE_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += BYTE_SPECIES.length()) {
+            IntVector va = (IntVector) ByteVector.fromArray(BYTE_SPECIES, a, aOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            IntVector vb = (IntVector) ByteVector.fromArray(BYTE_SPECIES, b, bOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            accumulator = va.mul(vb).add(accumulator);
+        }
+
+        int sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector scale = FloatVector.broadcast(SPECIES, alpha);
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOffset + i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOffset + i);
+            vx.fma(scale, vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        IntVector scale = IntVector.broadcast(INT_SPECIES, alpha);
+        int bound = BYTE_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += BYTE_SPECIES.length()) {
+            IntVector vx = (IntVector) ByteVector.fromArray(BYTE_SPECIES, x, xOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            IntVector vy = IntVector.fromArray(INT_SPECIES, y, yOffset + i);
+            vx.mul(scale).add(vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void add(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOffset + i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOffset + i);
+            vy.add(vx).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++) {
+            y[yOffset + i] += x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void sgdStep(float learningRate, float[] gradients, float[] values, int offset, int length) {
+        FloatVector scale = FloatVector.broadcast(SPECIES, -learningRate);
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int bound = offset + SPECIES.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vg = FloatVector.fromArray(SPECIES, gradients, i);
+            FloatVector vv = FloatVector.fromArray(SPECIES, values, i);
+            vg.fma(scale, vv).intoArray(values, i);
+            zero.intoArray(gradients, i);
+        }
+
+        for (; i < offset + length; i++) {
+            values[i] -= learningRate * gradients[i];
+            gradients[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void addAndClear(float[] source, float[] target, int offset, int length) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int bound = offset + SPECIES.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vs = FloatVector.fromArray(SPECIES, source, i);
+            FloatVector vt = FloatVector.fromArray(SPECIES, target, i);
+            vt.add(vs).intoArray(target, i);
+            zero.intoArray(source, i);
+        }
+
+        for (; i < offset + length; i++) {
+            target[i] += source[i];
+            source[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void momentumStep(float learningRate, float momentum, boolean nesterov,
+                             float[] gradients, float[] velocity, float[] values, int offset, int length) {
+        FloatVector scale = FloatVector.broadcast(SPECIES, -learningRate);
+        FloatVector mu = FloatVector.broadcast(SPECIES, momentum);
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int bound = offset + SPECIES.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vg = FloatVector.fromArray(SPECIES, gradients, i);
+            FloatVector vv = FloatVector.fromArray(SPECIES, velocity, i).fma(mu, vg);
+            FloatVector update = nesterov ? vv.fma(mu, vg) : vv;
+            vv.intoArray(velocity, i);
+            update.fma(scale, FloatVector.fromArray(SPECIES, values, i)).intoArray(values, i);
+            zero.intoArray(gradients, i);
+        }
+
+        for (; i < offset + length; i++) {
+            float gradient = gradients[i];
+            float v = momentum * velocity[i] + gradient;
+            velocity[i] = v;
+            values[i] -= learningRate * (nesterov ? gradient + momentum * v : v);
+            gradients[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void adamStep(float stepSize, float beta1, float beta2, float epsilon, float decay,
+                         float[] gradients, float[] firstMoments, float[] secondMoments, float[] values, int offset, int length) {
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int bound = offset + SPECIES.loopBound(length);
+        int i = offset;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector vg = FloatVector.fromArray(SPECIES, gradients, i);
+            FloatVector m = FloatVector.fromArray(SPECIES, firstMoments, i).mul(beta1).add(vg.mul(1.0f - beta1));
+            FloatVector v = FloatVector.fromArray(SPECIES, secondMoments, i).mul(beta2).add(vg.mul(vg).mul(1.0f - beta2));
+            m.intoArray(firstMoments, i);
+            v.intoArray(secondMoments, i);
+            FloatVector update = m.div(v.sqrt().add(epsilon)).mul(stepSize);
+            FloatVector.fromArray(SPECIES, values, i).mul(1.0f - decay).sub(update).intoArray(values, i);
+            zero.intoArray(gradients, i);
+        }
+
+        for (; i < offset + length; i++) {
+            float gradient = gradients[i];
+            float m = beta1 * firstMoments[i] + (1.0f - beta1) * gradient;
+            float v = beta2 * secondMoments[i] + (1.0f - beta2) * gradient * gradient;
+            firstMoments[i] = m;
+            secondMoments[i] = v;
+            values[i] = values[i] * (1.0f - decay) - stepSize * m / ((float) Math.sqrt(v) + epsilon);
+            gradients[i] = 0.0f;
+        }
+    }
+
+    static int laneCount() {
+        return SPECIES.length();
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.karolbystrek.compute;
+
+interface VectorKernels {
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+    void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length);
+
+    void add(float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    void sgdStep(float learningRate, float[] gradients, float[] values, int offset, int length);
+
+    void addAndClear(float[] source, float[] target, int offset, int length);
+
+    void momentumStep(float learningRate, float momentum, boolean nesterov,
+                      float[] gradients, float[] velocity, float[] values, int offset, int length);
+
+    void adamStep(float stepSize, float beta1, float beta2, float epsilon, float decay,
+                  float[] gradients, float[] firstMoments, float[] secondMoments, float[] values, int offset, int length);
+}
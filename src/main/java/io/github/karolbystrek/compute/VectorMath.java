@@ -0,0 +1,70 @@
+package io.github.karolbystrek.compute;
+
+public final class VectorMath {
+
+    public static final String SIMD_PROPERTY = "cnn.simd";
+
+    private static final VectorKernels KERNELS = selectKernels();
+
+    private VectorMath() {}
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return KERNELS.dot(a, aOffset, b, bOffset, length);
+    }
+
+    public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return KERNELS.dot(a, aOffset, b, bOffset, length);
+    }
+
+    public static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        KERNELS.axpy(alpha, x, xOffset, y, yOffset, length);
+    }
+
+    public static void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        KERNELS.axpy(alpha, x, xOffset, y, yOffset, length);
+    }
+
+    public static void add(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        KERNELS.add(x, xOffset, y, yOffset, length);
+    }
+
+    public static void sgdStep(float learningRate, float[] gradients, float[] values, int offset, int length) {
+        KERNELS.sgdStep(learningRate, gradients, values, offset, length);
+    }
+
+    public static void addAndClear(float[] source, float[] target, int offset, int length) {
+        KERNELS.addAndClear(source, target, offset, length);
+    }
+
+    public static void momentumStep(float learningRate, float momentum, boolean nesterov,
+                                    float[] gradients, float[] velocity, float[] values, int offset, int length) {
+        KERNELS.momentumStep(learningRate, momentum, nesterov, gradients, velocity, values, offset, length);
+    }
+
+    public static void adamStep(float stepSize, float beta1, float beta2, float epsilon, float decay,
+                                float[] gradients, float[] firstMoments, float[] secondMoments, float[] values, int offset, int length) {
+        KERNELS.adamStep(stepSize, beta1, beta2, epsilon, decay, gradients, firstMoments, secondMoments, values, offset, length);
+    }
+
+    public static boolean isSimdEnabled() {
+        return KERNELS instanceof SimdKernels;
+    }
+
+    public static String describe() {
+        return isSimdEnabled() ? "SIMD (" + SimdKernels.laneCount() + " float lanes)" : "scalar";
+    }
+
+    private static VectorKernels selectKernels() {
+        if (!Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))) {
+            return new ScalarKernels();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernels();
+        }
+        try {
+            return new SimdKernels();
+        } catch (LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.karolbystrek.compute;
+
+public final class WorkPartitioner {
+
+    public static final long DEFAULT_MIN_CHUNK_COST = 1L << 15;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int parallelism;
+    private final long minChunkCost;
+
+    public WorkPartitioner(int parallelism, long minChunkCost) {
+        if (parallelism < 1 || minChunkCost < 1) {
+            throw new IllegalArgumentException("Parallelism and minimum chunk cost must be positive");
+        }
+        this.parallelism = parallelism;
+        this.minChunkCost = minChunkCost;
+    }
+
+    public int chunkCount(int count, long costPerItem) {
+        if (parallelism == 1 || count <= 1) {
+            return 1;
+        }
+        long totalCost = (long) count * Math.max(1L, costPerItem);
+        long byCost = totalCost / minChunkCost;
+        long byThreads = (long) parallelism * CHUNKS_PER_THREAD;
+        return (int) Math.max(1L, Math.min(count, Math.min(byCost, byThreads)));
+    }
+
+    public static int chunkStart(int count, int chunks, int chunk) {
+        return (int) ((long) count * chunk / chunks);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getMinChunkCost() {
+        return minChunkCost;
+    }
+}
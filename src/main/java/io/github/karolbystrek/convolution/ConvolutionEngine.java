@@ -0,0 +1,14 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+
+public interface ConvolutionEngine {
+
+    void forward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                 float[] parameters, int parametersOffset, float[] output);
+
+    void backward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset, float[] delta,
+                  float[] parameters, float[] gradients, int parametersOffset, float[] gradInput);
+
+    default void invalidate() {}
+}
@@ -0,0 +1,58 @@
+package io.github.karolbystrek.convolution;
+
+public record ConvolutionGeometry(int batchSize,
+                                  int inputDepth, int inputHeight, int inputWidth,
+                                  int numKernels, int kernelHeight, int kernelWidth, int kernelSize,
+                                  int stride, int padding,
+                                  int outputHeight, int outputWidth) {
+
+    public static ConvolutionGeometry of(int batchSize, int inputDepth, int inputHeight, int inputWidth,
+                                         int numKernels, int kernelDepth, int kernelHeight, int kernelWidth,
+                                         int stride, int padding) {
+        if (inputDepth > kernelDepth) {
+            throw new IllegalArgumentException("Input depth " + inputDepth + " exceeds kernel depth " + kernelDepth);
+        }
+        int outputHeight = (inputHeight + 2 * padding - kernelHeight) / stride + 1;
+        int outputWidth = (inputWidth + 2 * padding - kernelWidth) / stride + 1;
+        return new ConvolutionGeometry(batchSize, inputDepth, inputHeight, inputWidth,
+                numKernels, kernelHeight, kernelWidth, kernelDepth * kernelHeight * kernelWidth,
+                stride, padding, outputHeight, outputWidth);
+    }
+
+    public ConvolutionGeometry withBatchSize(int batchSize) {
+        return new ConvolutionGeometry(batchSize, inputDepth, inputHeight, inputWidth,
+                numKernels, kernelHeight, kernelWidth, kernelSize,
+                stride, padding, outputHeight, outputWidth);
+    }
+
+    public boolean hasInput(int batchSize, int inputDepth, int inputHeight, int inputWidth) {
+        return this.batchSize == batchSize && this.inputDepth == inputDepth
+                && this.inputHeight == inputHeight && this.inputWidth == inputWidth;
+    }
+
+    public boolean sameShapeAs(ConvolutionGeometry other) {
+        return inputDepth == other.inputDepth && inputHeight == other.inputHeight && inputWidth == other.inputWidth
+                && numKernels == other.numKernels && kernelHeight == other.kernelHeight && kernelWidth == other.kernelWidth
+                && kernelSize == other.kernelSize && stride == other.stride && padding == other.padding;
+    }
+
+    public int inputSize() {
+        return inputDepth * inputHeight * inputWidth;
+    }
+
+    public int outputPlaneSize() {
+        return outputHeight * outputWidth;
+    }
+
+    public int outputSize() {
+        return numKernels * outputHeight * outputWidth;
+    }
+
+    public int weightsSize() {
+        return numKernels * kernelSize;
+    }
+
+    public int patchSize() {
+        return inputDepth * kernelHeight * kernelWidth;
+    }
+}
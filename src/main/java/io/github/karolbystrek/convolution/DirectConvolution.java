@@ -0,0 +1,235 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ScratchBuffer;
+import io.github.karolbystrek.compute.VectorMath;
+
+import java.util.Arrays;
+
+public class DirectConvolution implements ConvolutionEngine {
+
+    private final ScratchBuffer paddedInputBuffer = new ScratchBuffer();
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+
+    @Override
+    public void forward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                        float[] parameters, int parametersOffset, float[] output) {
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.parameters = parameters;
+        call.parametersOffset = parametersOffset;
+        call.output = output;
+        call.paddedInput = padInput(geometry, input, inputOffset);
+
+        int rows = geometry.batchSize() * geometry.numKernels() * geometry.outputHeight();
+        executor.forRange(rows, (long) geometry.outputWidth() * geometry.kernelSize(), call.forwardRows);
+    }
+
+    @Override
+    public void backward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset, float[] delta,
+                         float[] parameters, float[] gradients, int parametersOffset, float[] gradInput) {
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.delta = delta;
+        call.parameters = parameters;
+        call.gradients = gradients;
+        call.parametersOffset = parametersOffset;
+        call.gradInput = gradInput;
+
+        long sliceCost = (long) geometry.outputPlaneSize() * geometry.kernelHeight() * geometry.kernelWidth();
+        executor.forRange(geometry.numKernels() * geometry.inputDepth(), geometry.batchSize() * sliceCost, call.weightGradientSlices);
+        executor.forRange(geometry.batchSize() * geometry.inputDepth(), geometry.numKernels() * sliceCost, call.inputGradientPlanes);
+    }
+
+    private static final class Call {
+
+        private ConvolutionGeometry geometry;
+        private float[] input;
+        private int inputOffset;
+        private float[] paddedInput;
+        private float[] parameters;
+        private int parametersOffset;
+        private float[] output;
+        private float[] delta;
+        private float[] gradients;
+        private float[] gradInput;
+
+        private final ComputeExecutor.RangeTask forwardRows = this::forwardRows;
+        private final ComputeExecutor.RangeTask weightGradientSlices = this::weightGradientSlices;
+        private final ComputeExecutor.RangeTask inputGradientPlanes = this::inputGradientPlanes;
+
+        private void forwardRows(int from, int to) {
+            int inputDepth = geometry.inputDepth();
+            int numKernels = geometry.numKernels();
+            int kernelHeight = geometry.kernelHeight();
+            int kernelWidth = geometry.kernelWidth();
+            int kernelSize = geometry.kernelSize();
+            int stride = geometry.stride();
+            int padding = geometry.padding();
+            int outputHeight = geometry.outputHeight();
+            int outputWidth = geometry.outputWidth();
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+
+            int paddedHeight = geometry.inputHeight() + 2 * padding;
+            int paddedWidth = geometry.inputWidth() + 2 * padding;
+            int paddedSize = inputDepth * paddedHeight * paddedWidth;
+
+            for (int row = from; row < to; row++) {
+                int plane = row / outputHeight;
+                int outY = row % outputHeight;
+                int k = plane % numKernels;
+                int inputBase = plane / numKernels * paddedSize;
+                int kernelBase = parametersOffset + k * kernelSize;
+                int outputRow = plane * outputHeight * outputWidth + outY * outputWidth;
+
+                Arrays.fill(output, outputRow, outputRow + outputWidth, parameters[biasesOffset + k]);
+
+                for (int d = 0; d < inputDepth; d++) {
+                    for (int kY = 0; kY < kernelHeight; kY++) {
+                        int inputRow = inputBase + (d * paddedHeight + outY * stride + kY) * paddedWidth;
+                        int kernelRow = kernelBase + (d * kernelHeight + kY) * kernelWidth;
+                        for (int kX = 0; kX < kernelWidth; kX++) {
+                            float weight = parameters[kernelRow + kX];
+                            if (stride == 1) {
+                                VectorMath.axpy(weight, paddedInput, inputRow + kX, output, outputRow, outputWidth);
+                            } else {
+                                for (int outX = 0; outX < outputWidth; outX++) {
+                                    output[outputRow + outX] += weight * paddedInput[inputRow + outX * stride + kX];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void weightGradientSlices(int from, int to) {
+            int batchSize = geometry.batchSize();
+            int inputDepth = geometry.inputDepth();
+            int inputHeight = geometry.inputHeight();
+            int inputWidth = geometry.inputWidth();
+            int numKernels = geometry.numKernels();
+            int kernelHeight = geometry.kernelHeight();
+            int kernelWidth = geometry.kernelWidth();
+            int kernelSize = geometry.kernelSize();
+            int stride = geometry.stride();
+            int padding = geometry.padding();
+            int outputHeight = geometry.outputHeight();
+            int outputWidth = geometry.outputWidth();
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+
+            for (int slice = from; slice < to; slice++) {
+                int k = slice / inputDepth;
+                int d = slice % inputDepth;
+                int kernelBase = parametersOffset + k * kernelSize + d * kernelHeight * kernelWidth;
+
+                for (int n = 0; n < batchSize; n++) {
+                    int inputPlane = inputOffset + n * geometry.inputSize() + d * inputHeight * inputWidth;
+                    int outputBase = (n * numKernels + k) * outputHeight * outputWidth;
+
+                    for (int outY = 0; outY < outputHeight; outY++) {
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            float value = delta[outputBase + outY * outputWidth + outX];
+                            if (value == 0.0f) {
+                                continue;
+                            }
+
+                            if (d == 0) {
+                                gradients[biasesOffset + k] += value;
+                            }
+
+                            for (int kY = 0; kY < kernelHeight; kY++) {
+                                int inY = outY * stride - padding + kY;
+                                if (inY < 0 || inY >= inputHeight) {
+                                    continue;
+                                }
+                                int inputRow = inputPlane + inY * inputWidth;
+                                int kernelRow = kernelBase + kY * kernelWidth;
+
+                                for (int kX = 0; kX < kernelWidth; kX++) {
+                                    int inX = outX * stride - padding + kX;
+                                    if (inX >= 0 && inX < inputWidth) {
+                                        gradients[kernelRow + kX] += input[inputRow + inX] * value;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void inputGradientPlanes(int from, int to) {
+            int inputDepth = geometry.inputDepth();
+            int inputHeight = geometry.inputHeight();
+            int inputWidth = geometry.inputWidth();
+            int numKernels = geometry.numKernels();
+            int kernelHeight = geometry.kernelHeight();
+            int kernelWidth = geometry.kernelWidth();
+            int kernelSize = geometry.kernelSize();
+            int stride = geometry.stride();
+            int padding = geometry.padding();
+            int outputHeight = geometry.outputHeight();
+            int outputWidth = geometry.outputWidth();
+
+            for (int plane = from; plane < to; plane++) {
+                int n = plane / inputDepth;
+                int d = plane % inputDepth;
+                int inputPlane = plane * inputHeight * inputWidth;
+
+                for (int k = 0; k < numKernels; k++) {
+                    int kernelBase = parametersOffset + k * kernelSize + d * kernelHeight * kernelWidth;
+                    int outputBase = (n * numKernels + k) * outputHeight * outputWidth;
+
+                    for (int outY = 0; outY < outputHeight; outY++) {
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            float value = delta[outputBase + outY * outputWidth + outX];
+                            if (value == 0.0f) {
+                                continue;
+                            }
+
+                            for (int kY = 0; kY < kernelHeight; kY++) {
+                                int inY = outY * stride - padding + kY;
+                                if (inY < 0 || inY >= inputHeight) {
+                                    continue;
+                                }
+                                int inputRow = inputPlane + inY * inputWidth;
+                                int kernelRow = kernelBase + kY * kernelWidth;
+
+                                for (int kX = 0; kX < kernelWidth; kX++) {
+                                    int inX = outX * stride - padding + kX;
+                                    if (inX >= 0 && inX < inputWidth) {
+                                        gradInput[inputRow + inX] += parameters[kernelRow + kX] * value;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private float[] padInput(ConvolutionGeometry geometry, float[] input, int inputOffset) {
+        int padding = geometry.padding();
+        int inputHeight = geometry.inputHeight();
+        int inputWidth = geometry.inputWidth();
+        int paddedHeight = inputHeight + 2 * padding;
+        int paddedWidth = inputWidth + 2 * padding;
+        int planes = geometry.batchSize() * geometry.inputDepth();
+
+        float[] paddedInput = paddedInputBuffer.get(planes * paddedHeight * paddedWidth);
+        Arrays.fill(paddedInput, 0, planes * paddedHeight * paddedWidth, 0.0f);
+
+        for (int plane = 0; plane < planes; plane++) {
+            for (int y = 0; y < inputHeight; y++) {
+                int source = inputOffset + (plane * inputHeight + y) * inputWidth;
+                int target = (plane * paddedHeight + y + padding) * paddedWidth + padding;
+                System.arraycopy(input, source, paddedInput, target, inputWidth);
+            }
+        }
+        return paddedInput;
+    }
+}
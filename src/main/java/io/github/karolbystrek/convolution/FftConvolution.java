@@ -0,0 +1,342 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ScratchBuffer;
+
+import java.util.Arrays;
+
+public class FftConvolution implements ConvolutionEngine {
+
+    private final Im2colConvolution fallback = new Im2colConvolution();
+    private final ScratchBuffer inputSpectraBuffer = new ScratchBuffer();
+    private final ScratchBuffer deltaSpectraBuffer = new ScratchBuffer();
+    private final ScratchBuffer planeBuffer = new ScratchBuffer();
+    private final ScratchBuffer accumulatorBuffer = new ScratchBuffer();
+    private final ScratchBuffer workBuffer = new ScratchBuffer();
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+
+    private volatile KernelSpectra kernelSpectra;
+
+    public static boolean supports(ConvolutionGeometry geometry) {
+        return geometry.stride() == 1;
+    }
+
+    @Override
+    public void forward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                        float[] parameters, int parametersOffset, float[] output) {
+        if (!supports(geometry)) {
+            fallback.forward(executor, geometry, input, inputOffset, parameters, parametersOffset, output);
+            return;
+        }
+
+        KernelSpectra spectra = spectraFor(geometry, parameters, parametersOffset);
+        RealFft2d fft = spectra.fft;
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.spectra = spectra;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.parameters = parameters;
+        call.parametersOffset = parametersOffset;
+        call.output = output;
+        call.inputSpectra = inputSpectraBuffer.get(geometry.batchSize() * geometry.inputDepth() * fft.spectrumSize());
+        executor.forRange(geometry.batchSize() * geometry.inputDepth(), fft.realSize() * 16L, call.inputTransforms);
+
+        executor.forRange(geometry.batchSize() * geometry.numKernels(),
+                (long) geometry.inputDepth() * fft.spectrumSize() + fft.realSize() * 16L, call.forwardPlanes);
+    }
+
+    @Override
+    public void backward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset, float[] delta,
+                         float[] parameters, float[] gradients, int parametersOffset, float[] gradInput) {
+        if (!supports(geometry)) {
+            fallback.backward(executor, geometry, input, inputOffset, delta, parameters, gradients, parametersOffset, gradInput);
+            return;
+        }
+
+        KernelSpectra spectra = spectraFor(geometry, parameters, parametersOffset);
+        RealFft2d fft = spectra.fft;
+        int spectrumSize = fft.spectrumSize();
+        int batchSize = geometry.batchSize();
+        int inputDepth = geometry.inputDepth();
+        int numKernels = geometry.numKernels();
+
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.spectra = spectra;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.delta = delta;
+        call.parameters = parameters;
+        call.gradients = gradients;
+        call.parametersOffset = parametersOffset;
+        call.gradInput = gradInput;
+        call.inputSpectra = inputSpectraBuffer.get(batchSize * inputDepth * spectrumSize);
+        executor.forRange(batchSize * inputDepth, fft.realSize() * 16L, call.inputTransforms);
+
+        call.deltaSpectra = deltaSpectraBuffer.get(batchSize * numKernels * spectrumSize);
+        executor.forRange(batchSize * numKernels, fft.realSize() * 16L, call.deltaTransforms);
+        executor.forRange(numKernels * inputDepth, (long) batchSize * spectrumSize + fft.realSize() * 16L, call.weightGradientPlanes);
+        executor.forRange(batchSize * inputDepth, (long) numKernels * spectrumSize + fft.realSize() * 16L, call.inputGradientPlanes);
+    }
+
+    @Override
+    public void invalidate() {
+        KernelSpectra spectra = kernelSpectra;
+        if (spectra != null) {
+            spectra.valid = false;
+        }
+    }
+
+    private KernelSpectra spectraFor(ConvolutionGeometry geometry, float[] parameters, int parametersOffset) {
+        KernelSpectra spectra = kernelSpectra;
+        if (spectra != null && spectra.valid && spectra.matches(geometry, parameters, parametersOffset)) {
+            return spectra;
+        }
+        synchronized (this) {
+            spectra = kernelSpectra;
+            if (spectra == null || !spectra.geometry.sameShapeAs(geometry)) {
+                spectra = new KernelSpectra(geometry);
+                kernelSpectra = spectra;
+            }
+            if (!spectra.valid || !spectra.matches(geometry, parameters, parametersOffset)) {
+                spectra.refresh(parameters, parametersOffset);
+            }
+            return spectra;
+        }
+    }
+
+    private static void transformKernels(ConvolutionGeometry geometry, float[] parameters, int parametersOffset,
+                                         KernelSpectra kernelSpectra) {
+        RealFft2d fft = kernelSpectra.fft;
+        int inputDepth = geometry.inputDepth();
+        int channelSize = geometry.kernelHeight() * geometry.kernelWidth();
+        float[] spectra = kernelSpectra.forward;
+        float[] plane = kernelSpectra.plane;
+        float[] work = kernelSpectra.work;
+        for (int k = 0; k < geometry.numKernels(); k++) {
+            for (int d = 0; d < inputDepth; d++) {
+                Arrays.fill(plane, 0.0f);
+                int weights = parametersOffset + k * geometry.kernelSize() + d * channelSize;
+                for (int u = 0; u < geometry.kernelHeight(); u++) {
+                    System.arraycopy(parameters, weights + u * geometry.kernelWidth(), plane, u * fft.getCols(), geometry.kernelWidth());
+                }
+                fft.forward(plane, 0, spectra, (k * inputDepth + d) * fft.spectrumSize(), work);
+            }
+        }
+    }
+
+    private static void multiplyAccumulate(float[] a, int aOffset, float[] b, int bOffset, float[] accumulator, int length) {
+        for (int i = 0; i < length; i += 2) {
+            float aRe = a[aOffset + i];
+            float aIm = a[aOffset + i + 1];
+            float bRe = b[bOffset + i];
+            float bIm = b[bOffset + i + 1];
+            accumulator[i] += aRe * bRe - aIm * bIm;
+            accumulator[i + 1] += aRe * bIm + aIm * bRe;
+        }
+    }
+
+    private static void multiplyConjugateAccumulate(float[] a, int aOffset, float[] b, int bOffset, float[] accumulator, int length) {
+        for (int i = 0; i < length; i += 2) {
+            float aRe = a[aOffset + i];
+            float aIm = a[aOffset + i + 1];
+            float bRe = b[bOffset + i];
+            float bIm = b[bOffset + i + 1];
+            accumulator[i] += aRe * bRe + aIm * bIm;
+            accumulator[i + 1] += aIm * bRe - aRe * bIm;
+        }
+    }
+
+    private final class Call {
+
+        private ConvolutionGeometry geometry;
+        private KernelSpectra spectra;
+        private float[] input;
+        private int inputOffset;
+        private float[] delta;
+        private float[] parameters;
+        private float[] gradients;
+        private int parametersOffset;
+        private float[] output;
+        private float[] gradInput;
+        private float[] inputSpectra;
+        private float[] deltaSpectra;
+
+        private final ComputeExecutor.RangeTask inputTransforms = this::inputTransforms;
+        private final ComputeExecutor.RangeTask forwardPlanes = this::forwardPlanes;
+        private final ComputeExecutor.RangeTask deltaTransforms = this::deltaTransforms;
+        private final ComputeExecutor.RangeTask weightGradientPlanes = this::weightGradientPlanes;
+        private final ComputeExecutor.RangeTask inputGradientPlanes = this::inputGradientPlanes;
+
+        private void inputTransforms(int from, int to) {
+            RealFft2d fft = spectra.fft;
+            int padding = geometry.padding();
+            int planeSize = geometry.inputHeight() * geometry.inputWidth();
+            float[] plane = planeBuffer.get(fft.realSize());
+            float[] work = workBuffer.get(fft.workSize());
+            for (int task = from; task < to; task++) {
+                Arrays.fill(plane, 0, fft.realSize(), 0.0f);
+                int inputPlane = inputOffset + task * planeSize;
+                for (int y = 0; y < geometry.inputHeight(); y++) {
+                    System.arraycopy(input, inputPlane + y * geometry.inputWidth(),
+                            plane, (y + padding) * fft.getCols() + padding, geometry.inputWidth());
+                }
+                fft.forward(plane, 0, inputSpectra, task * fft.spectrumSize(), work);
+            }
+        }
+
+        private void forwardPlanes(int from, int to) {
+            RealFft2d fft = spectra.fft;
+            int spectrumSize = fft.spectrumSize();
+            int inputDepth = geometry.inputDepth();
+            int numKernels = geometry.numKernels();
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+            float[] accumulator = accumulatorBuffer.get(spectrumSize);
+            float[] plane = planeBuffer.get(fft.realSize());
+            float[] work = workBuffer.get(fft.workSize());
+            for (int task = from; task < to; task++) {
+                int n = task / numKernels;
+                int k = task % numKernels;
+
+                Arrays.fill(accumulator, 0, spectrumSize, 0.0f);
+                for (int d = 0; d < inputDepth; d++) {
+                    multiplyConjugateAccumulate(inputSpectra, (n * inputDepth + d) * spectrumSize,
+                            spectra.forward, (k * inputDepth + d) * spectrumSize, accumulator, spectrumSize);
+                }
+                fft.inverse(accumulator, 0, plane, 0, work);
+
+                float bias = parameters[biasesOffset + k];
+                int outputPlane = (n * numKernels + k) * geometry.outputPlaneSize();
+                for (int y = 0; y < geometry.outputHeight(); y++) {
+                    int row = y * fft.getCols();
+                    int outputRow = outputPlane + y * geometry.outputWidth();
+                    for (int x = 0; x < geometry.outputWidth(); x++) {
+                        output[outputRow + x] = plane[row + x] + bias;
+                    }
+                }
+            }
+        }
+
+        private void deltaTransforms(int from, int to) {
+            RealFft2d fft = spectra.fft;
+            float[] plane = planeBuffer.get(fft.realSize());
+            float[] work = workBuffer.get(fft.workSize());
+            for (int task = from; task < to; task++) {
+                Arrays.fill(plane, 0, fft.realSize(), 0.0f);
+                int deltaPlane = task * geometry.outputPlaneSize();
+                for (int y = 0; y < geometry.outputHeight(); y++) {
+                    System.arraycopy(delta, deltaPlane + y * geometry.outputWidth(), plane, y * fft.getCols(), geometry.outputWidth());
+                }
+                fft.forward(plane, 0, deltaSpectra, task * fft.spectrumSize(), work);
+            }
+        }
+
+        private void weightGradientPlanes(int from, int to) {
+            RealFft2d fft = spectra.fft;
+            int spectrumSize = fft.spectrumSize();
+            int batchSize = geometry.batchSize();
+            int inputDepth = geometry.inputDepth();
+            int numKernels = geometry.numKernels();
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+            float[] accumulator = accumulatorBuffer.get(spectrumSize);
+            float[] plane = planeBuffer.get(fft.realSize());
+            float[] work = workBuffer.get(fft.workSize());
+            for (int task = from; task < to; task++) {
+                int k = task / inputDepth;
+                int d = task % inputDepth;
+
+                if (d == 0) {
+                    float sum = 0.0f;
+                    for (int n = 0; n < batchSize; n++) {
+                        int deltaPlane = (n * numKernels + k) * geometry.outputPlaneSize();
+                        for (int i = 0; i < geometry.outputPlaneSize(); i++) {
+                            sum += delta[deltaPlane + i];
+                        }
+                    }
+                    gradients[biasesOffset + k] += sum;
+                }
+
+                Arrays.fill(accumulator, 0, spectrumSize, 0.0f);
+                for (int n = 0; n < batchSize; n++) {
+                    multiplyConjugateAccumulate(inputSpectra, (n * inputDepth + d) * spectrumSize,
+                            deltaSpectra, (n * numKernels + k) * spectrumSize, accumulator, spectrumSize);
+                }
+                fft.inverse(accumulator, 0, plane, 0, work);
+
+                int weights = parametersOffset + k * geometry.kernelSize() + d * geometry.kernelHeight() * geometry.kernelWidth();
+                for (int u = 0; u < geometry.kernelHeight(); u++) {
+                    for (int v = 0; v < geometry.kernelWidth(); v++) {
+                        gradients[weights + u * geometry.kernelWidth() + v] += plane[u * fft.getCols() + v];
+                    }
+                }
+            }
+        }
+
+        private void inputGradientPlanes(int from, int to) {
+            RealFft2d fft = spectra.fft;
+            int spectrumSize = fft.spectrumSize();
+            int inputDepth = geometry.inputDepth();
+            int numKernels = geometry.numKernels();
+            int padding = geometry.padding();
+            float[] accumulator = accumulatorBuffer.get(spectrumSize);
+            float[] plane = planeBuffer.get(fft.realSize());
+            float[] work = workBuffer.get(fft.workSize());
+            for (int task = from; task < to; task++) {
+                int n = task / inputDepth;
+                int d = task % inputDepth;
+
+                Arrays.fill(accumulator, 0, spectrumSize, 0.0f);
+                for (int k = 0; k < numKernels; k++) {
+                    multiplyAccumulate(deltaSpectra, (n * numKernels + k) * spectrumSize,
+                            spectra.forward, (k * inputDepth + d) * spectrumSize, accumulator, spectrumSize);
+                }
+                fft.inverse(accumulator, 0, plane, 0, work);
+
+                int inputPlane = task * geometry.inputHeight() * geometry.inputWidth();
+                for (int y = 0; y < geometry.inputHeight(); y++) {
+                    int row = (y + padding) * fft.getCols() + padding;
+                    int gradRow = inputPlane + y * geometry.inputWidth();
+                    for (int x = 0; x < geometry.inputWidth(); x++) {
+                        gradInput[gradRow + x] += plane[row + x];
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class KernelSpectra {
+
+        private final ConvolutionGeometry geometry;
+        private final RealFft2d fft;
+        private final float[] forward;
+        private final float[] plane;
+        private final float[] work;
+
+        private float[] parameters;
+        private int parametersOffset;
+        private volatile boolean valid;
+
+        KernelSpectra(ConvolutionGeometry geometry) {
+            int paddedHeight = geometry.inputHeight() + 2 * geometry.padding();
+            int paddedWidth = geometry.inputWidth() + 2 * geometry.padding();
+            this.geometry = geometry;
+            this.fft = new RealFft2d(RealFft2d.sizeFor(paddedHeight), RealFft2d.sizeFor(paddedWidth));
+            this.forward = new float[geometry.numKernels() * geometry.inputDepth() * fft.spectrumSize()];
+            this.plane = new float[fft.realSize()];
+            this.work = new float[fft.workSize()];
+        }
+
+        void refresh(float[] parameters, int parametersOffset) {
+            transformKernels(geometry, parameters, parametersOffset, this);
+            this.parameters = parameters;
+            this.parametersOffset = parametersOffset;
+            this.valid = true;
+        }
+
+        boolean matches(ConvolutionGeometry geometry, float[] parameters, int parametersOffset) {
+            return this.parameters == parameters && this.parametersOffset == parametersOffset
+                    && this.geometry.sameShapeAs(geometry);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.Gemm;
+import io.github.karolbystrek.compute.ScratchBuffer;
+
+public class Im2colConvolution implements ConvolutionEngine {
+
+    private static final int KERNEL_BLOCK = 4;
+    private static final int PATCH_BLOCK = 64;
+    private static final int PLANE_BLOCK = 256;
+
+    private final ScratchBuffer batchColumnsBuffer = new ScratchBuffer();
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+
+    @Override
+    public void forward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                        float[] parameters, int parametersOffset, float[] output) {
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.parameters = parameters;
+        call.parametersOffset = parametersOffset;
+        call.output = output;
+        call.columns = batchColumnsBuffer.get(geometry.batchSize() * geometry.patchSize() * geometry.outputPlaneSize());
+        unfold(executor, call);
+
+        int rowsPerBlock = Math.max(1, PLANE_BLOCK / geometry.outputWidth());
+        call.blockSize = rowsPerBlock * geometry.outputWidth();
+        call.planeBlocks = (geometry.outputPlaneSize() + call.blockSize - 1) / call.blockSize;
+
+        executor.forRange(geometry.batchSize() * call.planeBlocks,
+                (long) geometry.numKernels() * geometry.patchSize() * call.blockSize, call.forwardTiles);
+    }
+
+    @Override
+    public void backward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset, float[] delta,
+                         float[] parameters, float[] gradients, int parametersOffset, float[] gradInput) {
+        Call call = prepareBackward(executor, geometry, input, inputOffset, delta, gradients, parametersOffset);
+        weightGradients(executor, call);
+
+        call.parameters = parameters;
+        call.gradInput = gradInput;
+        inputGradients(executor, call);
+    }
+
+    void accumulateWeightGradients(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                                   float[] delta, float[] gradients, int parametersOffset) {
+        Call call = prepareBackward(executor, geometry, input, inputOffset, delta, gradients, parametersOffset);
+        weightGradients(executor, call);
+    }
+
+    private Call prepareBackward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                                 float[] delta, float[] gradients, int parametersOffset) {
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.delta = delta;
+        call.gradients = gradients;
+        call.parametersOffset = parametersOffset;
+        call.columns = batchColumnsBuffer.get(geometry.batchSize() * geometry.patchSize() * geometry.outputPlaneSize());
+        unfold(executor, call);
+        return call;
+    }
+
+    private static void weightGradients(ComputeExecutor executor, Call call) {
+        ConvolutionGeometry geometry = call.geometry;
+        call.kernelBlocks = (geometry.numKernels() + KERNEL_BLOCK - 1) / KERNEL_BLOCK;
+        call.patchBlocks = (geometry.patchSize() + PATCH_BLOCK - 1) / PATCH_BLOCK;
+
+        executor.forRange(call.kernelBlocks * call.patchBlocks,
+                (long) geometry.batchSize() * KERNEL_BLOCK * PATCH_BLOCK * geometry.outputPlaneSize(), call.weightGradientBlocks);
+    }
+
+    private static void inputGradients(ComputeExecutor executor, Call call) {
+        ConvolutionGeometry geometry = call.geometry;
+        executor.forRange(geometry.batchSize() * geometry.inputDepth(),
+                (long) geometry.numKernels() * geometry.kernelHeight() * geometry.kernelWidth() * geometry.outputPlaneSize(),
+                call.inputGradientPlanes);
+    }
+
+    private static void unfold(ComputeExecutor executor, Call call) {
+        ConvolutionGeometry geometry = call.geometry;
+        executor.forRange(geometry.batchSize() * geometry.inputDepth(),
+                (long) geometry.kernelHeight() * geometry.kernelWidth() * geometry.outputPlaneSize(), call.unfoldPlanes);
+    }
+
+    private static final class Call {
+
+        private ConvolutionGeometry geometry;
+        private float[] input;
+        private int inputOffset;
+        private float[] parameters;
+        private int parametersOffset;
+        private float[] output;
+        private float[] delta;
+        private float[] gradients;
+        private float[] gradInput;
+        private float[] columns;
+        private int blockSize;
+        private int planeBlocks;
+        private int kernelBlocks;
+        private int patchBlocks;
+
+        private final ComputeExecutor.RangeTask unfoldPlanes = this::unfoldPlanes;
+        private final ComputeExecutor.RangeTask forwardTiles = this::forwardTiles;
+        private final ComputeExecutor.RangeTask weightGradientBlocks = this::weightGradientBlocks;
+        private final ComputeExecutor.RangeTask inputGradientPlanes = this::inputGradientPlanes;
+
+        private void unfoldPlanes(int from, int to) {
+            int inputDepth = geometry.inputDepth();
+            int columnsSize = geometry.patchSize() * geometry.outputPlaneSize();
+            for (int plane = from; plane < to; plane++) {
+                int n = plane / inputDepth;
+                int d = plane % inputDepth;
+                im2col(geometry, input, inputOffset + n * geometry.inputSize(), columns, n * columnsSize, d, d + 1);
+            }
+        }
+
+        private void forwardTiles(int from, int to) {
+            int numKernels = geometry.numKernels();
+            int patchSize = geometry.patchSize();
+            int planeSize = geometry.outputPlaneSize();
+            int columnsSize = patchSize * planeSize;
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+
+            for (int tile = from; tile < to; tile++) {
+                int n = tile / planeBlocks;
+                int planeStart = tile % planeBlocks * blockSize;
+                int planeCount = Math.min(blockSize, planeSize - planeStart);
+                int outputBase = n * geometry.outputSize() + planeStart;
+
+                Gemm.multiply(false, false, numKernels, planeCount, patchSize,
+                        parameters, parametersOffset, geometry.kernelSize(),
+                        columns, n * columnsSize + planeStart, planeSize,
+                        output, outputBase, planeSize,
+                        false);
+
+                for (int k = 0; k < numKernels; k++) {
+                    float bias = parameters[biasesOffset + k];
+                    int row = outputBase + k * planeSize;
+                    for (int i = 0; i < planeCount; i++) {
+                        output[row + i] += bias;
+                    }
+                }
+            }
+        }
+
+        private void weightGradientBlocks(int from, int to) {
+            int batchSize = geometry.batchSize();
+            int numKernels = geometry.numKernels();
+            int patchSize = geometry.patchSize();
+            int planeSize = geometry.outputPlaneSize();
+            int columnsSize = patchSize * planeSize;
+            int biasesOffset = parametersOffset + geometry.weightsSize();
+
+            for (int block = from; block < to; block++) {
+                int kernelStart = block / patchBlocks * KERNEL_BLOCK;
+                int kernelCount = Math.min(KERNEL_BLOCK, numKernels - kernelStart);
+                int patchStart = block % patchBlocks * PATCH_BLOCK;
+                int patchCount = Math.min(PATCH_BLOCK, patchSize - patchStart);
+
+                for (int n = 0; n < batchSize; n++) {
+                    int deltaBase = n * geometry.outputSize() + kernelStart * planeSize;
+
+                    if (patchStart == 0) {
+                        for (int k = 0; k < kernelCount; k++) {
+                            int row = deltaBase + k * planeSize;
+                            float sum = 0.0f;
+                            for (int i = 0; i < planeSize; i++) {
+                                sum += delta[row + i];
+                            }
+                            gradients[biasesOffset + kernelStart + k] += sum;
+                        }
+                    }
+
+                    Gemm.multiply(false, true, kernelCount, patchCount, planeSize,
+                            delta, deltaBase, planeSize,
+                            columns, n * columnsSize + patchStart * planeSize, planeSize,
+                            gradients, parametersOffset + kernelStart * geometry.kernelSize() + patchStart, geometry.kernelSize(),
+                            true);
+                }
+            }
+        }
+
+        private void inputGradientPlanes(int from, int to) {
+            int inputDepth = geometry.inputDepth();
+            int numKernels = geometry.numKernels();
+            int planeSize = geometry.outputPlaneSize();
+            int channelPatch = geometry.kernelHeight() * geometry.kernelWidth();
+            int columnsSize = geometry.patchSize() * planeSize;
+
+            for (int plane = from; plane < to; plane++) {
+                int n = plane / inputDepth;
+                int d = plane % inputDepth;
+                int columnsBase = n * columnsSize + d * channelPatch * planeSize;
+
+                Gemm.multiply(true, false, channelPatch, planeSize, numKernels,
+                        parameters, parametersOffset + d * channelPatch, geometry.kernelSize(),
+                        delta, n * geometry.outputSize(), planeSize,
+                        columns, columnsBase, planeSize,
+                        false);
+                col2im(geometry, columns, n * columnsSize, gradInput, n * geometry.inputSize(), d, d + 1);
+            }
+        }
+    }
+
+    static void im2col(ConvolutionGeometry geometry, float[] input, int inputOffset, float[] columns, int columnsOffset,
+                       int fromChannel, int toChannel) {
+        int inputHeight = geometry.inputHeight();
+        int inputWidth = geometry.inputWidth();
+        int kernelHeight = geometry.kernelHeight();
+        int kernelWidth = geometry.kernelWidth();
+        int stride = geometry.stride();
+        int padding = geometry.padding();
+        int outputHeight = geometry.outputHeight();
+        int outputWidth = geometry.outputWidth();
+
+        int row = fromChannel * kernelHeight * kernelWidth;
+        for (int d = fromChannel; d < toChannel; d++) {
+            int inputPlane = inputOffset + d * inputHeight * inputWidth;
+            for (int kY = 0; kY < kernelHeight; kY++) {
+                for (int kX = 0; kX < kernelWidth; kX++) {
+                    int column = columnsOffset + row * outputHeight * outputWidth;
+                    for (int outY = 0; outY < outputHeight; outY++) {
+                        int inY = outY * stride - padding + kY;
+                        if (inY < 0 || inY >= inputHeight) {
+                            for (int outX = 0; outX < outputWidth; outX++) {
+                                columns[column++] = 0.0f;
+                            }
+                            continue;
+                        }
+                        int inputRow = inputPlane + inY * inputWidth;
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            int inX = outX * stride - padding + kX;
+                            columns[column++] = (inX >= 0 && inX < inputWidth) ? input[inputRow + inX] : 0.0f;
+                        }
+                    }
+                    row++;
+                }
+            }
+        }
+    }
+
+    static void col2im(ConvolutionGeometry geometry, float[] columns, int columnsOffset, float[] output, int outputOffset,
+                       int fromChannel, int toChannel) {
+        int inputHeight = geometry.inputHeight();
+        int inputWidth = geometry.inputWidth();
+        int kernelHeight = geometry.kernelHeight();
+        int kernelWidth = geometry.kernelWidth();
+        int stride = geometry.stride();
+        int padding = geometry.padding();
+        int outputHeight = geometry.outputHeight();
+        int outputWidth = geometry.outputWidth();
+
+        int row = fromChannel * kernelHeight * kernelWidth;
+        for (int d = fromChannel; d < toChannel; d++) {
+            int inputPlane = outputOffset + d * inputHeight * inputWidth;
+            for (int kY = 0; kY < kernelHeight; kY++) {
+                for (int kX = 0; kX < kernelWidth; kX++) {
+                    int column = columnsOffset + row * outputHeight * outputWidth;
+                    for (int outY = 0; outY < outputHeight; outY++) {
+                        int inY = outY * stride - padding + kY;
+                        if (inY < 0 || inY >= inputHeight) {
+                            column += outputWidth;
+                            continue;
+                        }
+                        int inputRow = inputPlane + inY * inputWidth;
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            int inX = outX * stride - padding + kX;
+                            if (inX >= 0 && inX < inputWidth) {
+                                output[inputRow + inX] += columns[column];
+                            }
+                            column++;
+                        }
+                    }
+                    row++;
+                }
+            }
+        }
+    }
+}
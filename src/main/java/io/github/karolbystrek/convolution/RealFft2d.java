@@ -0,0 +1,188 @@
+package io.github.karolbystrek.convolution;
+
+final class RealFft2d {
+
+    private final int rows;
+    private final int cols;
+    private final int halfCols;
+    private final int spectrumCols;
+
+    private final int[] rowReverse;
+    private final float[] rowCos;
+    private final float[] rowSin;
+    private final int[] columnReverse;
+    private final float[] columnCos;
+    private final float[] columnSin;
+    private final float[] realCos;
+    private final float[] realSin;
+
+    RealFft2d(int rows, int cols) {
+        if (Integer.bitCount(rows) != 1 || Integer.bitCount(cols) != 1 || cols < 2) {
+            throw new IllegalArgumentException("FFT size " + rows + "x" + cols + " must be a power of two with at least two columns");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.halfCols = cols / 2;
+        this.spectrumCols = halfCols + 1;
+
+        this.rowReverse = bitReversal(halfCols);
+        this.rowCos = twiddles(halfCols, true);
+        this.rowSin = twiddles(halfCols, false);
+        this.columnReverse = bitReversal(rows);
+        this.columnCos = twiddles(rows, true);
+        this.columnSin = twiddles(rows, false);
+
+        this.realCos = new float[spectrumCols];
+        this.realSin = new float[spectrumCols];
+        for (int k = 0; k < spectrumCols; k++) {
+            double angle = 2.0 * Math.PI * k / cols;
+            realCos[k] = (float) Math.cos(angle);
+            realSin[k] = (float) Math.sin(angle);
+        }
+    }
+
+    static int sizeFor(int length) {
+        return Math.max(2, Integer.highestOneBit(length - 1) << 1);
+    }
+
+    private static int[] bitReversal(int length) {
+        int bits = Integer.numberOfTrailingZeros(length);
+        int[] reverse = new int[length];
+        for (int i = 0; i < length; i++) {
+            reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        return reverse;
+    }
+
+    private static float[] twiddles(int length, boolean cosine) {
+        float[] table = new float[Math.max(1, length / 2)];
+        for (int j = 0; j < table.length; j++) {
+            double angle = 2.0 * Math.PI * j / length;
+            table[j] = (float) (cosine ? Math.cos(angle) : Math.sin(angle));
+        }
+        return table;
+    }
+
+    void forward(float[] real, int realOffset, float[] spectrum, int spectrumOffset, float[] work) {
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(real, realOffset + r * cols, work, 0, cols);
+            transform(work, 0, 1, halfCols, rowReverse, rowCos, rowSin, false);
+
+            int row = spectrumOffset + 2 * r * spectrumCols;
+            for (int k = 0; k < spectrumCols; k++) {
+                int a = 2 * (k % halfCols);
+                int b = 2 * ((halfCols - k) % halfCols);
+                float zRe = work[a];
+                float zIm = work[a + 1];
+                float cRe = work[b];
+                float cIm = -work[b + 1];
+
+                float evenRe = 0.5f * (zRe + cRe);
+                float evenIm = 0.5f * (zIm + cIm);
+                float oddRe = 0.5f * (zIm - cIm);
+                float oddIm = -0.5f * (zRe - cRe);
+
+                float wRe = realCos[k];
+                float wIm = -realSin[k];
+                spectrum[row + 2 * k] = evenRe + wRe * oddRe - wIm * oddIm;
+                spectrum[row + 2 * k + 1] = evenIm + wRe * oddIm + wIm * oddRe;
+            }
+        }
+
+        for (int c = 0; c < spectrumCols; c++) {
+            transform(spectrum, spectrumOffset + 2 * c, spectrumCols, rows, columnReverse, columnCos, columnSin, false);
+        }
+    }
+
+    void inverse(float[] spectrum, int spectrumOffset, float[] real, int realOffset, float[] work) {
+        for (int c = 0; c < spectrumCols; c++) {
+            transform(spectrum, spectrumOffset + 2 * c, spectrumCols, rows, columnReverse, columnCos, columnSin, true);
+        }
+
+        float scale = 1.0f / (rows * halfCols);
+        for (int r = 0; r < rows; r++) {
+            int row = spectrumOffset + 2 * r * spectrumCols;
+            for (int k = 0; k < halfCols; k++) {
+                float xRe = spectrum[row + 2 * k];
+                float xIm = spectrum[row + 2 * k + 1];
+                float cRe = spectrum[row + 2 * (halfCols - k)];
+                float cIm = -spectrum[row + 2 * (halfCols - k) + 1];
+
+                float evenRe = 0.5f * (xRe + cRe);
+                float evenIm = 0.5f * (xIm + cIm);
+                float diffRe = 0.5f * (xRe - cRe);
+                float diffIm = 0.5f * (xIm - cIm);
+                float wRe = realCos[k];
+                float wIm = realSin[k];
+                float oddRe = diffRe * wRe - diffIm * wIm;
+                float oddIm = diffRe * wIm + diffIm * wRe;
+
+                work[2 * k] = evenRe - oddIm;
+                work[2 * k + 1] = evenIm + oddRe;
+            }
+            transform(work, 0, 1, halfCols, rowReverse, rowCos, rowSin, true);
+
+            int out = realOffset + r * cols;
+            for (int i = 0; i < cols; i++) {
+                real[out + i] = work[i] * scale;
+            }
+        }
+    }
+
+    private static void transform(float[] data, int offset, int stride, int length,
+                                  int[] reverse, float[] cos, float[] sin, boolean inverse) {
+        int step2 = 2 * stride;
+        for (int i = 0; i < length; i++) {
+            int j = reverse[i];
+            if (i < j) {
+                int a = offset + i * step2;
+                int b = offset + j * step2;
+                float re = data[a];
+                float im = data[a + 1];
+                data[a] = data[b];
+                data[a + 1] = data[b + 1];
+                data[b] = re;
+                data[b + 1] = im;
+            }
+        }
+
+        for (int size = 2; size <= length; size <<= 1) {
+            int half = size >> 1;
+            int tableStep = length / size;
+            for (int j = 0; j < half; j++) {
+                float wRe = cos[j * tableStep];
+                float wIm = inverse ? sin[j * tableStep] : -sin[j * tableStep];
+                for (int start = j; start < length; start += size) {
+                    int a = offset + start * step2;
+                    int b = a + half * step2;
+                    float tRe = wRe * data[b] - wIm * data[b + 1];
+                    float tIm = wRe * data[b + 1] + wIm * data[b];
+                    data[b] = data[a] - tRe;
+                    data[b + 1] = data[a + 1] - tIm;
+                    data[a] += tRe;
+                    data[a + 1] += tIm;
+                }
+            }
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    int realSize() {
+        return rows * cols;
+    }
+
+    int spectrumSize() {
+        return 2 * rows * spectrumCols;
+    }
+
+    int workSize() {
+        return 2 * Math.max(halfCols, rows);
+    }
+}
@@ -0,0 +1,327 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.Gemm;
+import io.github.karolbystrek.compute.ScratchBuffer;
+
+public class WinogradConvolution implements ConvolutionEngine {
+
+    private static final int TILE = 4;
+    private static final int TILE_SIZE = TILE * TILE;
+    private static final int TILE_BLOCK = 64;
+    private static final int MIN_CHANNELS = 8;
+
+    private final Im2colConvolution fallback = new Im2colConvolution();
+    private final ScratchBuffer transformedInputBuffer = new ScratchBuffer();
+    private final ScratchBuffer transformedOutputBuffer = new ScratchBuffer();
+    private final ScratchBuffer tileBuffer = new ScratchBuffer();
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+
+    private volatile FilterTransforms filterTransforms;
+
+    public static boolean supports(ConvolutionGeometry geometry) {
+        return geometry.kernelHeight() == 3 && geometry.kernelWidth() == 3 && geometry.stride() == 1 && geometry.padding() == 1;
+    }
+
+    private static boolean worthwhile(ConvolutionGeometry geometry) {
+        return supports(geometry) && Math.min(geometry.inputDepth(), geometry.numKernels()) >= MIN_CHANNELS;
+    }
+
+    @Override
+    public void forward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset,
+                        float[] parameters, int parametersOffset, float[] output) {
+        if (!worthwhile(geometry)) {
+            fallback.forward(executor, geometry, input, inputOffset, parameters, parametersOffset, output);
+            return;
+        }
+
+        FilterTransforms transforms = transformsFor(geometry, parameters, parametersOffset);
+        convolve(executor, geometry.batchSize(), geometry.inputDepth(), geometry.numKernels(),
+                geometry.inputHeight(), geometry.inputWidth(), input, inputOffset, transforms.forward,
+                parameters, parametersOffset + geometry.weightsSize(), output);
+    }
+
+    @Override
+    public void backward(ComputeExecutor executor, ConvolutionGeometry geometry, float[] input, int inputOffset, float[] delta,
+                         float[] parameters, float[] gradients, int parametersOffset, float[] gradInput) {
+        if (!worthwhile(geometry)) {
+            fallback.backward(executor, geometry, input, inputOffset, delta, parameters, gradients, parametersOffset, gradInput);
+            return;
+        }
+
+        fallback.accumulateWeightGradients(executor, geometry, input, inputOffset, delta, gradients, parametersOffset);
+
+        FilterTransforms transforms = transformsFor(geometry, parameters, parametersOffset);
+        convolve(executor, geometry.batchSize(), geometry.numKernels(), geometry.inputDepth(),
+                geometry.inputHeight(), geometry.inputWidth(), delta, 0, transforms.backward,
+                null, 0, gradInput);
+    }
+
+    @Override
+    public void invalidate() {
+        FilterTransforms transforms = filterTransforms;
+        if (transforms != null) {
+            transforms.valid = false;
+        }
+    }
+
+    private FilterTransforms transformsFor(ConvolutionGeometry geometry, float[] parameters, int parametersOffset) {
+        FilterTransforms transforms = filterTransforms;
+        if (transforms != null && transforms.valid && transforms.matches(geometry, parameters, parametersOffset)) {
+            return transforms;
+        }
+        synchronized (this) {
+            transforms = filterTransforms;
+            if (transforms == null || transforms.numKernels != geometry.numKernels() || transforms.depth != geometry.inputDepth()) {
+                transforms = new FilterTransforms(geometry.numKernels(), geometry.inputDepth());
+                filterTransforms = transforms;
+            }
+            if (!transforms.valid || !transforms.matches(geometry, parameters, parametersOffset)) {
+                transforms.refresh(geometry, parameters, parametersOffset);
+            }
+            return transforms;
+        }
+    }
+
+    private static void transformFilters(ConvolutionGeometry geometry, float[] parameters, int parametersOffset,
+                                         FilterTransforms transforms) {
+        int numKernels = geometry.numKernels();
+        int depth = geometry.inputDepth();
+        float[] forward = transforms.forward;
+        float[] backward = transforms.backward;
+        float[] filter = transforms.filter;
+        float[] flipped = transforms.flipped;
+        float[] transformed = transforms.transformed;
+        float[] t = transforms.work;
+
+        for (int k = 0; k < numKernels; k++) {
+            for (int d = 0; d < depth; d++) {
+                System.arraycopy(parameters, parametersOffset + k * geometry.kernelSize() + d * 9, filter, 0, 9);
+                transformFilter(filter, t, transformed);
+                for (int xi = 0; xi < TILE_SIZE; xi++) {
+                    forward[(xi * numKernels + k) * depth + d] = transformed[xi];
+                }
+
+                for (int i = 0; i < 9; i++) {
+                    flipped[i] = filter[8 - i];
+                }
+                transformFilter(flipped, t, transformed);
+                for (int xi = 0; xi < TILE_SIZE; xi++) {
+                    backward[(xi * depth + d) * numKernels + k] = transformed[xi];
+                }
+            }
+        }
+    }
+
+    private static void transformFilter(float[] g, float[] t, float[] u) {
+        for (int col = 0; col < 3; col++) {
+            float g0 = g[col];
+            float g1 = g[3 + col];
+            float g2 = g[6 + col];
+            t[col] = g0;
+            t[3 + col] = 0.5f * (g0 + g1 + g2);
+            t[6 + col] = 0.5f * (g0 - g1 + g2);
+            t[9 + col] = g2;
+        }
+        for (int row = 0; row < TILE; row++) {
+            float t0 = t[row * 3];
+            float t1 = t[row * 3 + 1];
+            float t2 = t[row * 3 + 2];
+            u[row * TILE] = t0;
+            u[row * TILE + 1] = 0.5f * (t0 + t1 + t2);
+            u[row * TILE + 2] = 0.5f * (t0 - t1 + t2);
+            u[row * TILE + 3] = t2;
+        }
+    }
+
+    private void convolve(ComputeExecutor executor, int batchSize, int depthIn, int depthOut, int height, int width,
+                          float[] input, int inputOffset, float[] filters, float[] biases, int biasesOffset, float[] output) {
+        Call call = calls.get();
+        call.batchSize = batchSize;
+        call.depthIn = depthIn;
+        call.depthOut = depthOut;
+        call.height = height;
+        call.width = width;
+        call.input = input;
+        call.inputOffset = inputOffset;
+        call.filters = filters;
+        call.biases = biases;
+        call.biasesOffset = biasesOffset;
+        call.output = output;
+
+        int numTiles = batchSize * ((height + 1) / 2) * ((width + 1) / 2);
+        int tileBlocks = (numTiles + TILE_BLOCK - 1) / TILE_BLOCK;
+        executor.forRange(tileBlocks, (long) TILE_SIZE * (depthIn + 1) * depthOut * TILE_BLOCK, call.tileBlocks);
+    }
+
+    private final class Call {
+
+        private int batchSize;
+        private int depthIn;
+        private int depthOut;
+        private int height;
+        private int width;
+        private float[] input;
+        private int inputOffset;
+        private float[] filters;
+        private float[] biases;
+        private int biasesOffset;
+        private float[] output;
+
+        private final ComputeExecutor.RangeTask tileBlocks = this::tileBlocks;
+
+        private void tileBlocks(int from, int to) {
+            int tilesY = (height + 1) / 2;
+            int tilesX = (width + 1) / 2;
+            int tilesPerImage = tilesY * tilesX;
+            int numTiles = batchSize * tilesPerImage;
+            int planeSize = height * width;
+
+            float[] transformedInput = transformedInputBuffer.get(TILE_SIZE * depthIn * TILE_BLOCK);
+            float[] transformedOutput = transformedOutputBuffer.get(TILE_SIZE * depthOut * TILE_BLOCK);
+            float[] tile = tileBuffer.get(TILE_SIZE);
+
+            for (int block = from; block < to; block++) {
+                int tileStart = block * TILE_BLOCK;
+                int tileCount = Math.min(TILE_BLOCK, numTiles - tileStart);
+
+                for (int t = 0; t < tileCount; t++) {
+                    int n = (tileStart + t) / tilesPerImage;
+                    int tileInImage = (tileStart + t) % tilesPerImage;
+                    int startY = tileInImage / tilesX * 2 - 1;
+                    int startX = tileInImage % tilesX * 2 - 1;
+                    for (int d = 0; d < depthIn; d++) {
+                        loadTile(input, inputOffset + (n * depthIn + d) * planeSize, height, width, startY, startX, tile);
+                        transformInputTile(tile);
+                        for (int xi = 0; xi < TILE_SIZE; xi++) {
+                            transformedInput[(xi * depthIn + d) * TILE_BLOCK + t] = tile[xi];
+                        }
+                    }
+                }
+
+                for (int xi = 0; xi < TILE_SIZE; xi++) {
+                    Gemm.multiply(false, false, depthOut, tileCount, depthIn,
+                            filters, xi * depthOut * depthIn, depthIn,
+                            transformedInput, xi * depthIn * TILE_BLOCK, TILE_BLOCK,
+                            transformedOutput, xi * depthOut * TILE_BLOCK, TILE_BLOCK,
+                            false);
+                }
+
+                for (int t = 0; t < tileCount; t++) {
+                    int n = (tileStart + t) / tilesPerImage;
+                    int tileInImage = (tileStart + t) % tilesPerImage;
+                    int startY = tileInImage / tilesX * 2;
+                    int startX = tileInImage % tilesX * 2;
+                    for (int k = 0; k < depthOut; k++) {
+                        for (int xi = 0; xi < TILE_SIZE; xi++) {
+                            tile[xi] = transformedOutput[(xi * depthOut + k) * TILE_BLOCK + t];
+                        }
+                        float bias = biases != null ? biases[biasesOffset + k] : 0.0f;
+                        storeTile(tile, bias, output, (n * depthOut + k) * planeSize, height, width, startY, startX);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void loadTile(float[] input, int planeOffset, int height, int width, int startY, int startX, float[] tile) {
+        if (startY >= 0 && startY + TILE <= height && startX >= 0 && startX + TILE <= width) {
+            int row = planeOffset + startY * width + startX;
+            for (int y = 0; y < TILE; y++, row += width) {
+                tile[y * TILE] = input[row];
+                tile[y * TILE + 1] = input[row + 1];
+                tile[y * TILE + 2] = input[row + 2];
+                tile[y * TILE + 3] = input[row + 3];
+            }
+            return;
+        }
+        for (int y = 0; y < TILE; y++) {
+            int inY = startY + y;
+            for (int x = 0; x < TILE; x++) {
+                int inX = startX + x;
+                boolean inside = inY >= 0 && inY < height && inX >= 0 && inX < width;
+                tile[y * TILE + x] = inside ? input[planeOffset + inY * width + inX] : 0.0f;
+            }
+        }
+    }
+
+    private static void transformInputTile(float[] d) {
+        for (int col = 0; col < TILE; col++) {
+            float d0 = d[col];
+            float d1 = d[TILE + col];
+            float d2 = d[2 * TILE + col];
+            float d3 = d[3 * TILE + col];
+            d[col] = d0 - d2;
+            d[TILE + col] = d1 + d2;
+            d[2 * TILE + col] = d2 - d1;
+            d[3 * TILE + col] = d1 - d3;
+        }
+        for (int row = 0; row < TILE; row++) {
+            int base = row * TILE;
+            float d0 = d[base];
+            float d1 = d[base + 1];
+            float d2 = d[base + 2];
+            float d3 = d[base + 3];
+            d[base] = d0 - d2;
+            d[base + 1] = d1 + d2;
+            d[base + 2] = d2 - d1;
+            d[base + 3] = d1 - d3;
+        }
+    }
+
+    private static void storeTile(float[] m, float bias, float[] output, int planeOffset, int height, int width, int startY, int startX) {
+        for (int row = 0; row < TILE; row++) {
+            int base = row * TILE;
+            float m0 = m[base];
+            float m1 = m[base + 1];
+            float m2 = m[base + 2];
+            float m3 = m[base + 3];
+            m[base] = m0 + m1 + m2;
+            m[base + 1] = m1 - m2 - m3;
+        }
+        for (int y = 0; y < 2 && startY + y < height; y++) {
+            int row = planeOffset + (startY + y) * width;
+            for (int x = 0; x < 2 && startX + x < width; x++) {
+                float value = y == 0
+                        ? m[x] + m[TILE + x] + m[2 * TILE + x]
+                        : m[TILE + x] - m[2 * TILE + x] - m[3 * TILE + x];
+                output[row + startX + x] = value + bias;
+            }
+        }
+    }
+
+    private static final class FilterTransforms {
+
+        private final int numKernels;
+        private final int depth;
+        private final float[] forward;
+        private final float[] backward;
+        private final float[] filter = new float[9];
+        private final float[] flipped = new float[9];
+        private final float[] transformed = new float[TILE_SIZE];
+        private final float[] work = new float[12];
+
+        private float[] parameters;
+        private int parametersOffset;
+        private volatile boolean valid;
+
+        FilterTransforms(int numKernels, int depth) {
+            this.numKernels = numKernels;
+            this.depth = depth;
+            this.forward = new float[TILE_SIZE * numKernels * depth];
+            this.backward = new float[TILE_SIZE * depth * numKernels];
+        }
+
+        void refresh(ConvolutionGeometry geometry, float[] parameters, int parametersOffset) {
+            transformFilters(geometry, parameters, parametersOffset, this);
+            this.parameters = parameters;
+            this.parametersOffset = parametersOffset;
+            this.valid = true;
+        }
+
+        boolean matches(ConvolutionGeometry geometry, float[] parameters, int parametersOffset) {
+            return this.parameters == parameters && this.parametersOffset == parametersOffset
+                    && numKernels == geometry.numKernels() && depth == geometry.inputDepth();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.karolbystrek.core;
+
+public class ActivationCache {
+
+    private Precision precision = Precision.FP32;
+
+    private Tensor tensor;
+    private short[] packed = new short[0];
+    private int batchSize;
+    private int depth;
+    private int height;
+    private int width;
+
+    public void store(Tensor tensor) {
+        if (precision == Precision.FP32) {
+            this.tensor = tensor;
+            return;
+        }
+
+        Tensor source = tensor.contiguous();
+        int size = source.getSize();
+        if (packed.length < size) {
+            packed = new short[size];
+        }
+        precision.encode(source.getData(), source.getOffset(), packed, 0, size);
+        this.batchSize = source.getBatchSize();
+        this.depth = source.getDepth();
+        this.height = source.getHeight();
+        this.width = source.getWidth();
+        this.tensor = null;
+    }
+
+    public void storeOwned(Tensor tensor) {
+        store(tensor);
+        if (precision != Precision.FP32) {
+            TensorArena.free(tensor);
+        }
+    }
+
+    public Tensor load() {
+        if (precision == Precision.FP32) {
+            return tensor;
+        }
+
+        Tensor loaded = TensorArena.allocate(batchSize, depth, height, width);
+        precision.decode(packed, 0, loaded.getData(), 0, loaded.getSize());
+        return loaded;
+    }
+
+    public void release(Tensor loaded) {
+        if (precision != Precision.FP32) {
+            TensorArena.free(loaded);
+        }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+        this.tensor = null;
+    }
+}
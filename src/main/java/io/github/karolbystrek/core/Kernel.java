@@ -2,58 +2,84 @@ package io.github.karolbystrek.core;
 
 public class Kernel {
 
-    private final float[][][] weights;
-    private float bias;
+    private final int depth;
+    private final int height;
+    private final int width;
 
-    public float[][][] weightsGradient;
-    public float biasGradient;
+    private float[] parameters;
+    private int weightsOffset;
+    private int biasOffset;
 
     public Kernel(int depth, int height, int width) {
-        weights = new float[depth][height][width];
-        bias = 0.0f;
+        this.depth = depth;
+        this.height = height;
+        this.width = width;
 
-        weightsGradient = new float[depth][height][width];
-        biasGradient = 0.0f;
+        parameters = new float[depth * height * width + 1];
+        weightsOffset = 0;
+        biasOffset = depth * height * width;
 
-        initializeWeights(depth, height, width);
+        initializeWeights();
     }
 
-    public void updateParameters(float learningRate) {
-        bias -= learningRate * biasGradient;
-        biasGradient = 0.0f;
+    public void bind(float[] parameters, int weightsOffset, int biasOffset) {
+        System.arraycopy(this.parameters, this.weightsOffset, parameters, weightsOffset, getSize());
+        parameters[biasOffset] = this.parameters[this.biasOffset];
 
-        for (int d = 0; d < weights.length; d++) {
-            for (int h = 0; h < weights[d].length; h++) {
-                for (int w = 0; w < weights[d][h].length; w++) {
-                    weights[d][h][w] -= learningRate * weightsGradient[d][h][w];
-                    weightsGradient[d][h][w] = 0.0f;
-                }
-            }
-        }
+        this.parameters = parameters;
+        this.weightsOffset = weightsOffset;
+        this.biasOffset = biasOffset;
     }
 
-    private void initializeWeights(int depth, int height, int width) {
+    private void initializeWeights() {
         float scale = (float) Math.sqrt(2.0 / (depth * height * width));
 
-        for (int d = 0; d < depth; d++) {
-            for (int h = 0; h < height; h++) {
-                for (int w = 0; w < width; w++) {
-                    weights[d][h][w] = (float) ((Math.random() * 2 - 1) * scale);
-                    weightsGradient[d][h][w] = 0.0f;
-                }
-            }
+        for (int i = 0; i < getSize(); i++) {
+            parameters[weightsOffset + i] = (float) ((Math.random() * 2 - 1) * scale);
         }
     }
 
-    public float[][][] getWeights() {
-        return weights;
+    public int index(int d, int h, int w) {
+        return (d * height + h) * width + w;
+    }
+
+    public int getSize() {
+        return depth * height * width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public float[] getParameters() {
+        return parameters;
+    }
+
+    public int getWeightsOffset() {
+        return weightsOffset;
+    }
+
+    public float getWeight(int index) {
+        return parameters[weightsOffset + index];
+    }
+
+    public void setWeight(int index, float weight) {
+        parameters[weightsOffset + index] = weight;
     }
 
     public float getBias() {
-        return bias;
+        return parameters[biasOffset];
     }
 
     public void setBias(float bias) {
-        this.bias = bias;
+        parameters[biasOffset] = bias;
     }
 }
@@ -0,0 +1,82 @@
+package io.github.karolbystrek.core;
+
+import io.github.karolbystrek.compute.VectorMath;
+
+import java.util.Arrays;
+
+public class ParameterStore {
+
+    private final float[] values;
+    private final float[] gradients;
+    private int size;
+
+    public ParameterStore(int capacity) {
+        this(new float[capacity]);
+    }
+
+    private ParameterStore(float[] values) {
+        this.values = values;
+        this.gradients = new float[values.length];
+    }
+
+    public int register(float[] source, int sourceOffset, int length) {
+        if (size + length > values.length) {
+            throw new IllegalStateException("Parameter store capacity of " + values.length + " exceeded");
+        }
+        int offset = size;
+        System.arraycopy(source, sourceOffset, values, offset, length);
+        size += length;
+        return offset;
+    }
+
+    public ParameterStore share() {
+        return new ParameterStore(values);
+    }
+
+    public void zeroGradients() {
+        Arrays.fill(gradients, 0, size, 0.0f);
+    }
+
+    public void accumulateGradients(ParameterStore replica) {
+        if (replica.values != values || replica.size != size) {
+            throw new IllegalArgumentException("Replica does not share this parameter store");
+        }
+        VectorMath.addAndClear(replica.gradients, gradients, 0, size);
+    }
+
+    public float[] snapshot() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public void restore(float[] snapshot) {
+        if (snapshot.length != size) {
+            throw new IllegalArgumentException("Snapshot holds " + snapshot.length + " parameters, expected " + size);
+        }
+        System.arraycopy(snapshot, 0, values, 0, size);
+    }
+
+    public short[] snapshot(Precision precision) {
+        short[] snapshot = new short[size];
+        precision.encode(values, 0, snapshot, 0, size);
+        return snapshot;
+    }
+
+    public void restore(short[] snapshot, Precision precision) {
+        if (snapshot.length != size) {
+            throw new IllegalArgumentException("Snapshot holds " + snapshot.length + " parameters, expected " + size);
+        }
+        precision.decode(snapshot, 0, values, 0, size);
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+
+    public float[] getGradients() {
+        return gradients;
+    }
+
+    public int size() {
+        return size;
+    }
+}
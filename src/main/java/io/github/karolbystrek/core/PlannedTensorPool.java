@@ -0,0 +1,161 @@
+package io.github.karolbystrek.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PlannedTensorPool extends TensorPool {
+
+    private final List<int[]> shapes = new ArrayList<>();
+    private final List<int[]> lifetimes = new ArrayList<>();
+    private final Map<Tensor, Integer> recorded = new IdentityHashMap<>();
+    private int clock;
+
+    private Tensor[] planned;
+    private float[][] buffers;
+    private int cursor;
+
+    public PlannedTensorPool() {
+        super(false);
+    }
+
+    @Override
+    public Tensor acquire(int batchSize, int depth, int height, int width) {
+        if (planned == null) {
+            Tensor tensor = new Tensor(batchSize, depth, height, width);
+            recorded.put(tensor, shapes.size());
+            shapes.add(new int[]{batchSize, depth, height, width});
+            lifetimes.add(new int[]{clock++, Integer.MAX_VALUE});
+            return tensor;
+        }
+
+        if (cursor == planned.length) {
+            throw new IllegalStateException("Allocation " + cursor + " is beyond the " + planned.length + " planned allocations");
+        }
+        Tensor tensor = planned[cursor];
+        if (!tensor.hasShape(batchSize, depth, height, width)) {
+            throw new IllegalStateException("Allocation " + cursor + " of shape " + Arrays.toString(new int[]{batchSize, depth, height, width})
+                    + " does not match the planned shape " + Arrays.toString(tensor.getShape()));
+        }
+        cursor++;
+        Arrays.fill(tensor.getData(), 0, tensor.getSize(), 0.0f);
+        return tensor;
+    }
+
+    @Override
+    public void release(Tensor tensor) {
+        if (planned != null) {
+            return;
+        }
+        Integer index = recorded.remove(tensor);
+        if (index == null) {
+            throw new IllegalArgumentException("Tensor was not acquired from this pool");
+        }
+        lifetimes.get(index)[1] = clock++;
+    }
+
+    public void plan() {
+        if (planned != null) {
+            throw new IllegalStateException("Pool has already been planned");
+        }
+
+        int count = shapes.size();
+        Integer[] bySize = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            bySize[i] = i;
+        }
+        Arrays.sort(bySize, (a, b) -> Integer.compare(sizeOf(b), sizeOf(a)));
+
+        List<List<Integer>> slots = new ArrayList<>();
+        List<Integer> capacities = new ArrayList<>();
+        int[] slotOf = new int[count];
+        for (int index : bySize) {
+            int bestSlot = -1;
+            for (int slot = 0; slot < slots.size(); slot++) {
+                if (overlapsAny(index, slots.get(slot))) {
+                    continue;
+                }
+                if (bestSlot < 0 || capacities.get(slot) < capacities.get(bestSlot)) {
+                    bestSlot = slot;
+                }
+            }
+            if (bestSlot < 0) {
+                bestSlot = slots.size();
+                slots.add(new ArrayList<>());
+                capacities.add(sizeOf(index));
+            }
+            slots.get(bestSlot).add(index);
+            slotOf[index] = bestSlot;
+        }
+
+        buffers = new float[slots.size()][];
+        for (int slot = 0; slot < slots.size(); slot++) {
+            buffers[slot] = new float[capacities.get(slot)];
+        }
+        planned = new Tensor[count];
+        for (int i = 0; i < count; i++) {
+            planned[i] = new Tensor(buffers[slotOf[i]], shapes.get(i));
+        }
+        recorded.clear();
+    }
+
+    private boolean overlapsAny(int index, List<Integer> others) {
+        int[] lifetime = lifetimes.get(index);
+        for (int other : others) {
+            int[] otherLifetime = lifetimes.get(other);
+            if (lifetime[0] < otherLifetime[1] && otherLifetime[0] < lifetime[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int sizeOf(int index) {
+        int[] shape = shapes.get(index);
+        return shape[0] * shape[1] * shape[2] * shape[3];
+    }
+
+    public void beginStep() {
+        if (planned == null) {
+            throw new IllegalStateException("Pool has not been planned yet");
+        }
+        cursor = 0;
+    }
+
+    @Override
+    public void clear() {
+        cursor = 0;
+    }
+
+    public boolean isPlanned() {
+        return planned != null;
+    }
+
+    public int getAllocationCount() {
+        return shapes.size();
+    }
+
+    public int getBufferCount() {
+        return buffers == null ? 0 : buffers.length;
+    }
+
+    public long getPlannedSize() {
+        long size = 0;
+        if (buffers != null) {
+            for (float[] buffer : buffers) {
+                size += buffer.length;
+            }
+        }
+        return size;
+    }
+
+    public long getRequestedSize() {
+        long size = 0;
+        for (int i = 0; i < shapes.size(); i++) {
+            size += sizeOf(i);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.karolbystrek.core;
+
+public enum Precision {
+    FP32,
+    BF16,
+    FP16;
+
+    public int getBytes() {
+        return this == FP32 ? Float.BYTES : Short.BYTES;
+    }
+
+    public short encode(float value) {
+        return switch (this) {
+            case BF16 -> toBfloat16(value);
+            case FP16 -> toHalf(value);
+            case FP32 -> throw new IllegalStateException("FP32 values are not packed into 16 bits");
+        };
+    }
+
+    public float decode(short value) {
+        return switch (this) {
+            case BF16 -> Float.intBitsToFloat((value & 0xffff) << 16);
+            case FP16 -> fromHalf(value);
+            case FP32 -> throw new IllegalStateException("FP32 values are not packed into 16 bits");
+        };
+    }
+
+    public void encode(float[] source, int sourceOffset, short[] target, int targetOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = encode(source[sourceOffset + i]);
+        }
+    }
+
+    public void decode(short[] source, int sourceOffset, float[] target, int targetOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = decode(source[sourceOffset + i]);
+        }
+    }
+
+    public float round(float value) {
+        return this == FP32 ? value : decode(encode(value));
+    }
+
+    private static short toBfloat16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        if (Float.isNaN(value)) {
+            return (short) ((bits >>> 16) | 0x40);
+        }
+        return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+    }
+
+    private static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int magnitude = bits & 0x7fffffff;
+
+        if (magnitude >= 0x7f800000) {
+            return (short) (sign | 0x7c00 | (magnitude > 0x7f800000 ? 0x200 : 0));
+        }
+        if (magnitude >= 0x477ff000) {
+            return (short) (sign | 0x7c00);
+        }
+        if (magnitude < 0x38800000) {
+            if (magnitude < 0x33000000) {
+                return (short) sign;
+            }
+            int shift = 126 - (magnitude >>> 23);
+            int mantissa = (magnitude & 0x7fffff) | 0x800000;
+            return (short) (sign | roundShift(mantissa, shift));
+        }
+        return (short) (sign | roundShift(magnitude - 0x38000000, 13));
+    }
+
+    private static int roundShift(int value, int shift) {
+        int result = value >>> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            result++;
+        }
+        return result;
+    }
+
+    private static float fromHalf(short value) {
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -1,39 +1,232 @@
 package io.github.karolbystrek.core;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class Tensor {
 
-    private final float[][][] data;
-    private final int depth;
-    private final int height;
-    private final int width;
+    private final float[] data;
+    private final int offset;
+    private final int[] shape;
+    private final int[] strides;
+
+    public Tensor(int... shape) {
+        this(new float[sizeOf(shape)], shape);
+    }
 
-    public Tensor(int depth, int height, int width) {
-        this.depth = depth;
-        this.height = height;
-        this.width = width;
-        this.data = new float[depth][height][width];
+    public Tensor(float[] data, int... shape) {
+        if (data.length < sizeOf(shape)) {
+            throw new IllegalArgumentException("Data length " + data.length + " is smaller than shape " + Arrays.toString(shape));
+        }
+        this.data = data;
+        this.offset = 0;
+        this.shape = shape.clone();
+        this.strides = contiguousStrides(shape);
     }
 
-    public Tensor(float[][][] data) {
-        this.depth = data.length;
-        this.height = data[0].length;
-        this.width = data[0][0].length;
+    private Tensor(float[] data, int offset, int[] shape, int[] strides) {
         this.data = data;
+        this.offset = offset;
+        this.shape = shape;
+        this.strides = strides;
+    }
+
+    public static Tensor stack(List<Tensor> samples) {
+        Tensor first = samples.get(0);
+        int sampleSize = first.getSize();
+        Tensor batch = new Tensor(samples.size(), first.getDepth(), first.getHeight(), first.getWidth());
+
+        for (int n = 0; n < samples.size(); n++) {
+            Tensor sample = samples.get(n).contiguous();
+            if (sample.getSize() != sampleSize) {
+                throw new IllegalArgumentException("All samples in a batch must have the same shape");
+            }
+            System.arraycopy(sample.data, sample.offset, batch.data, n * sampleSize, sampleSize);
+        }
+        return batch;
+    }
+
+    public Tensor asBatch() {
+        if (shape.length == 4) {
+            return this;
+        }
+        return reshape(1, getDepth(), getHeight(), getWidth());
+    }
+
+    public Tensor sample(int index) {
+        if (shape.length != 4) {
+            throw new IllegalStateException("Only a batch tensor has samples");
+        }
+        int[] sampleShape = {shape[1], shape[2], shape[3]};
+        int[] sampleStrides = {strides[1], strides[2], strides[3]};
+        return new Tensor(data, offset + index * strides[0], sampleShape, sampleStrides);
+    }
+
+    public Tensor reshape(int... newShape) {
+        if (sizeOf(newShape) != getSize()) {
+            throw new IllegalArgumentException("Cannot reshape " + Arrays.toString(shape) + " into " + Arrays.toString(newShape));
+        }
+        if (!isContiguous()) {
+            return contiguous().reshape(newShape);
+        }
+        return new Tensor(data, offset, newShape.clone(), contiguousStrides(newShape));
+    }
+
+    public Tensor slice(int dimension, int from, int to) {
+        if (from < 0 || to > shape[dimension] || from >= to) {
+            throw new IllegalArgumentException("Invalid slice [" + from + ", " + to + ") of dimension " + dimension);
+        }
+        int[] newShape = shape.clone();
+        newShape[dimension] = to - from;
+        return new Tensor(data, offset + from * strides[dimension], newShape, strides.clone());
+    }
+
+    public Tensor transpose(int dimensionA, int dimensionB) {
+        int[] newShape = shape.clone();
+        int[] newStrides = strides.clone();
+        newShape[dimensionA] = shape[dimensionB];
+        newShape[dimensionB] = shape[dimensionA];
+        newStrides[dimensionA] = strides[dimensionB];
+        newStrides[dimensionB] = strides[dimensionA];
+        return new Tensor(data, offset, newShape, newStrides);
+    }
+
+    public Tensor contiguous() {
+        return isContiguous() ? this : copy();
+    }
+
+    public Tensor copy() {
+        Tensor copy = new Tensor(shape);
+        if (isContiguous()) {
+            System.arraycopy(data, offset, copy.data, 0, getSize());
+        } else {
+            copyStrided(0, offset, copy.data, new int[]{0});
+        }
+        return copy;
+    }
+
+    private void copyStrided(int dimension, int sourceIndex, float[] target, int[] targetIndex) {
+        if (dimension == shape.length - 1) {
+            for (int i = 0; i < shape[dimension]; i++) {
+                target[targetIndex[0]++] = data[sourceIndex + i * strides[dimension]];
+            }
+            return;
+        }
+        for (int i = 0; i < shape[dimension]; i++) {
+            copyStrided(dimension + 1, sourceIndex + i * strides[dimension], target, targetIndex);
+        }
+    }
+
+    public boolean isContiguous() {
+        int expected = 1;
+        for (int i = shape.length - 1; i >= 0; i--) {
+            if (shape[i] != 1 && strides[i] != expected) {
+                return false;
+            }
+            expected *= shape[i];
+        }
+        return true;
+    }
+
+    public float get(int depth, int height, int width) {
+        return data[index(depth, height, width)];
+    }
+
+    public float get(int batch, int depth, int height, int width) {
+        return data[index(depth, height, width) + batch * strides[0]];
+    }
+
+    public void set(int depth, int height, int width, float value) {
+        data[index(depth, height, width)] = value;
+    }
+
+    public void set(int batch, int depth, int height, int width, float value) {
+        data[index(depth, height, width) + batch * strides[0]] = value;
+    }
+
+    public int index(int depth, int height, int width) {
+        int rank = shape.length;
+        return offset + depth * strideOf(rank - 3) + height * strideOf(rank - 2) + width * strides[rank - 1];
+    }
+
+    private int strideOf(int dimension) {
+        return dimension >= 0 ? strides[dimension] : 0;
+    }
+
+    private int dimensionOf(int dimension) {
+        return dimension >= 0 ? shape[dimension] : 1;
+    }
+
+    public boolean hasShape(int batchSize, int depth, int height, int width) {
+        return shape.length == 4 && shape[0] == batchSize && shape[1] == depth && shape[2] == height && shape[3] == width;
+    }
+
+    public int getRank() {
+        return shape.length;
+    }
+
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    public int getDimension(int dimension) {
+        return shape[dimension];
+    }
+
+    public int getStride(int dimension) {
+        return strides[dimension];
+    }
+
+    public int getBatchSize() {
+        return shape.length == 4 ? shape[0] : 1;
+    }
+
+    public int getSampleSize() {
+        return getDepth() * getHeight() * getWidth();
+    }
+
+    public int getSize() {
+        return sizeOf(shape);
     }
 
     public int getDepth() {
-        return depth;
+        return dimensionOf(shape.length - 3);
     }
 
     public int getHeight() {
-        return height;
+        return dimensionOf(shape.length - 2);
     }
 
     public int getWidth() {
-        return width;
+        return dimensionOf(shape.length - 1);
+    }
+
+    public int getOffset() {
+        return offset;
     }
 
-    public float[][][] getData() {
+    public float[] getData() {
         return data;
     }
+
+    private static int sizeOf(int[] shape) {
+        int size = 1;
+        for (int dimension : shape) {
+            if (dimension < 0) {
+                throw new IllegalArgumentException("Negative dimension in shape " + Arrays.toString(shape));
+            }
+            size *= dimension;
+        }
+        return size;
+    }
+
+    private static int[] contiguousStrides(int[] shape) {
+        int[] strides = new int[shape.length];
+        int stride = 1;
+        for (int i = shape.length - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= shape[i];
+        }
+        return strides;
+    }
 }
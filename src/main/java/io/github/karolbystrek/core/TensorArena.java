@@ -0,0 +1,118 @@
+package io.github.karolbystrek.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TensorArena {
+
+    private static final ThreadLocal<TensorArena> CURRENT = new ThreadLocal<>();
+
+    private final TensorPool pool;
+    private final List<Tensor> borrowed = new ArrayList<>();
+
+    public TensorArena() {
+        this(new TensorPool());
+    }
+
+    public TensorArena(TensorPool pool) {
+        this.pool = pool;
+    }
+
+    public static TensorArena current() {
+        return CURRENT.get();
+    }
+
+    public static TensorArena bind(TensorArena arena) {
+        TensorArena previous = CURRENT.get();
+        CURRENT.set(arena);
+        return previous;
+    }
+
+    public static Tensor allocate(int batchSize, int depth, int height, int width) {
+        TensorArena arena = CURRENT.get();
+        if (arena == null) {
+            return new Tensor(batchSize, depth, height, width);
+        }
+        return arena.acquire(batchSize, depth, height, width);
+    }
+
+    public static void free(Tensor tensor) {
+        TensorArena arena = CURRENT.get();
+        if (arena != null && arena.indexOf(tensor) >= 0) {
+            arena.release(tensor);
+        }
+    }
+
+    public Tensor acquire(int batchSize, int depth, int height, int width) {
+        Tensor tensor = pool.acquire(batchSize, depth, height, width);
+        borrowed.add(tensor);
+        return tensor;
+    }
+
+    public void release(Tensor tensor) {
+        int index = indexOf(tensor);
+        if (index < 0) {
+            throw new IllegalStateException("Tensor is not borrowed from this arena");
+        }
+        borrowed.set(index, null);
+        pool.release(tensor);
+    }
+
+    public int mark() {
+        return borrowed.size();
+    }
+
+    public void rewind(int mark) {
+        for (int i = borrowed.size() - 1; i >= mark; i--) {
+            Tensor tensor = borrowed.remove(i);
+            if (tensor != null) {
+                pool.release(tensor);
+            }
+        }
+    }
+
+    public void rewind(int mark, Tensor retained) {
+        Tensor owner = null;
+        for (int i = borrowed.size() - 1; i >= mark; i--) {
+            Tensor tensor = borrowed.remove(i);
+            if (tensor == null) {
+                continue;
+            }
+            if (tensor.getData() == retained.getData()) {
+                owner = tensor;
+            } else {
+                pool.release(tensor);
+            }
+        }
+        if (owner != null) {
+            borrowed.add(owner);
+        }
+    }
+
+    public void reset() {
+        rewind(0);
+    }
+
+    private int indexOf(Tensor tensor) {
+        for (int i = borrowed.size() - 1; i >= 0; i--) {
+            if (borrowed.get(i) == tensor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public TensorPool getPool() {
+        return pool;
+    }
+
+    public int getBorrowedCount() {
+        int count = 0;
+        for (int i = 0; i < borrowed.size(); i++) {
+            if (borrowed.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
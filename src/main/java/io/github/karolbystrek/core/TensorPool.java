@@ -0,0 +1,124 @@
+package io.github.karolbystrek.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TensorPool {
+
+    private static final String DEBUG_PROPERTY = "cnn.arena.debug";
+
+    private final boolean debug;
+    private final List<Tensor> free = new ArrayList<>();
+    private final List<Tensor> views = new ArrayList<>();
+    private final Map<float[], Tensor> lent = new IdentityHashMap<>();
+    private long allocations;
+
+    public TensorPool() {
+        this(Boolean.getBoolean(DEBUG_PROPERTY));
+    }
+
+    public TensorPool(boolean debug) {
+        this.debug = debug;
+    }
+
+    public Tensor acquire(int batchSize, int depth, int height, int width) {
+        int size = batchSize * depth * height * width;
+        int bestFit = -1;
+        for (int i = free.size() - 1; i >= 0; i--) {
+            Tensor tensor = free.get(i);
+            if (tensor.hasShape(batchSize, depth, height, width)) {
+                free.remove(i);
+                if (debug) {
+                    checkPoisoned(tensor);
+                }
+                Arrays.fill(tensor.getData(), 0.0f);
+                return tensor;
+            }
+            if (tensor.getSize() >= size && (bestFit < 0 || tensor.getSize() < free.get(bestFit).getSize())) {
+                bestFit = i;
+            }
+        }
+
+        for (int i = views.size() - 1; i >= 0; i--) {
+            Tensor view = views.get(i);
+            int owner = view.hasShape(batchSize, depth, height, width) ? indexOfFree(view.getData()) : -1;
+            if (owner >= 0) {
+                return lend(free.remove(owner), view);
+            }
+        }
+
+        if (bestFit >= 0) {
+            Tensor owner = free.remove(bestFit);
+            Tensor view = new Tensor(owner.getData(), batchSize, depth, height, width);
+            views.add(view);
+            return lend(owner, view);
+        }
+
+        allocations++;
+        return new Tensor(batchSize, depth, height, width);
+    }
+
+    private Tensor lend(Tensor owner, Tensor view) {
+        if (debug) {
+            checkPoisoned(owner);
+        }
+        Arrays.fill(owner.getData(), 0, view.getSize(), 0.0f);
+        lent.put(owner.getData(), owner);
+        return view;
+    }
+
+    private int indexOfFree(float[] data) {
+        for (int i = 0; i < free.size(); i++) {
+            if (free.get(i).getData() == data) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void release(Tensor tensor) {
+        Tensor owner = lent.remove(tensor.getData());
+        if (owner == null) {
+            if (tensor.getRank() != 4 || tensor.getOffset() != 0 || tensor.getData().length != tensor.getSize()) {
+                throw new IllegalArgumentException("Only whole batch tensors can be returned to the pool");
+            }
+            owner = tensor;
+        }
+        if (indexOfFree(owner.getData()) >= 0) {
+            throw new IllegalStateException("Tensor was released twice");
+        }
+        if (debug) {
+            Arrays.fill(owner.getData(), Float.NaN);
+        }
+        free.add(owner);
+    }
+
+    private void checkPoisoned(Tensor tensor) {
+        for (float value : tensor.getData()) {
+            if (!Float.isNaN(value)) {
+                throw new IllegalStateException("Tensor of shape " + Arrays.toString(tensor.getShape()) + " was written after it was released");
+            }
+        }
+    }
+
+    public void clear() {
+        free.clear();
+        views.clear();
+        lent.clear();
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public long getAllocations() {
+        return allocations;
+    }
+
+    public int getFreeCount() {
+        return free.size();
+    }
+}
@@ -0,0 +1,341 @@
+package io.github.karolbystrek.io;
+
+import io.github.karolbystrek.core.Kernel;
+import io.github.karolbystrek.layers.*;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.quantization.QuantizedConvolutionalLayer;
+import io.github.karolbystrek.quantization.QuantizedDenseLayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+class BinaryNetworkFormat {
+
+    static final int MAGIC = 0x424E4E43;
+    static final int VERSION = 3;
+
+    private static final int BLOCK_ALIGNMENT = 64;
+    private static final int CHECKSUM_SIZE = Long.BYTES;
+
+    private static final int CONVOLUTIONAL_LAYER = 1;
+    private static final int POOLING_LAYER = 2;
+    private static final int FLATTEN_LAYER = 3;
+    private static final int FULLY_CONNECTED_LAYER = 4;
+    private static final int QUANTIZED_CONVOLUTIONAL_LAYER = 5;
+    private static final int QUANTIZED_DENSE_LAYER = 6;
+
+    private BinaryNetworkFormat() {}
+
+    static void save(NeuralNetwork model, String filePath) throws IOException {
+        List<Layer> layers = NeuralNetworkFileIO.persistedLayers(model);
+
+        int headerSize = 3 * Integer.BYTES;
+        int numBlocks = 0;
+        long dataSize = 0;
+        for (Layer layer : layers) {
+            headerSize += headerSizeOf(layer);
+            for (int blockSize : blockSizesOf(layer)) {
+                dataSize += align(blockSize);
+                numBlocks++;
+            }
+        }
+
+        long dataStart = align(headerSize);
+        long fileSize = dataStart + dataSize + CHECKSUM_SIZE;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Network is too large for the binary format: " + fileSize + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(layers.size());
+
+        long blockOffset = dataStart;
+        long[] blockOffsets = new long[numBlocks];
+        int blockIndex = 0;
+        for (Layer layer : layers) {
+            for (int blockSize : blockSizesOf(layer)) {
+                blockOffsets[blockIndex++] = blockOffset;
+                blockOffset += align(blockSize);
+            }
+        }
+
+        blockIndex = 0;
+        for (Layer layer : layers) {
+            if (layer instanceof ConvolutionalLayer convolutionalLayer) {
+                Kernel[] kernels = convolutionalLayer.getKernels();
+                buffer.putInt(CONVOLUTIONAL_LAYER)
+                        .putInt(kernels.length)
+                        .putInt(kernels[0].getDepth())
+                        .putInt(kernels[0].getHeight())
+                        .putInt(convolutionalLayer.getStride())
+                        .putInt(convolutionalLayer.getPadding());
+                long offset = blockOffsets[blockIndex++];
+                buffer.putLong(offset);
+                writeParameters(buffer, (int) offset, convolutionalLayer.getParameters(),
+                        convolutionalLayer.getParametersOffset(), convolutionalLayer.getParameterCount());
+            } else if (layer instanceof PoolingLayer poolingLayer) {
+                buffer.putInt(POOLING_LAYER)
+                        .putInt(poolingLayer.getPoolSize())
+                        .putInt(poolingLayer.getStride())
+                        .putInt(poolingLayer.getMode().ordinal());
+            } else if (layer instanceof FlattenLayer) {
+                buffer.putInt(FLATTEN_LAYER);
+            } else if (layer instanceof FullyConnectedLayer fullyConnectedLayer) {
+                int[] layerSizes = fullyConnectedLayer.getLayerSizes();
+                buffer.putInt(FULLY_CONNECTED_LAYER).putInt(layerSizes.length);
+                for (int size : layerSizes) {
+                    buffer.putInt(size);
+                }
+                for (Layer denseLayer : fullyConnectedLayer.getLayers()) {
+                    long offset = blockOffsets[blockIndex++];
+                    buffer.putLong(offset);
+                    writeParameters(buffer, (int) offset, parametersOf(denseLayer),
+                            parametersOffsetOf(denseLayer), denseLayer.getParameterCount());
+                }
+            } else if (layer instanceof QuantizedConvolutionalLayer quantizedLayer) {
+                buffer.putInt(QUANTIZED_CONVOLUTIONAL_LAYER)
+                        .putInt(quantizedLayer.getNumKernels())
+                        .putInt(quantizedLayer.getKernelDepth())
+                        .putInt(quantizedLayer.getKernelSize())
+                        .putInt(quantizedLayer.getStride())
+                        .putInt(quantizedLayer.getPadding())
+                        .putFloat(quantizedLayer.getInputScale());
+                writeQuantizedParameters(buffer, blockOffsets[blockIndex++], blockOffsets[blockIndex++],
+                        quantizedLayer.getWeights(), quantizedLayer.getWeightScales(), quantizedLayer.getBiases());
+            } else if (layer instanceof QuantizedDenseLayer quantizedLayer) {
+                buffer.putInt(QUANTIZED_DENSE_LAYER)
+                        .putInt(quantizedLayer.getNumNodesIn())
+                        .putInt(quantizedLayer.getNumNodesOut())
+                        .putInt(quantizedLayer.isSoftmax() ? 1 : 0)
+                        .putFloat(quantizedLayer.getInputScale());
+                writeQuantizedParameters(buffer, blockOffsets[blockIndex++], blockOffsets[blockIndex++],
+                        quantizedLayer.getWeights(), quantizedLayer.getWeightScales(), quantizedLayer.getBiases());
+            } else {
+                throw new IOException("Unsupported layer type: " + layer.getClass().getSimpleName());
+            }
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, (int) fileSize - CHECKSUM_SIZE);
+        buffer.putLong((int) fileSize - CHECKSUM_SIZE, checksum.getValue());
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    static NeuralNetwork load(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 3 * Integer.BYTES + CHECKSUM_SIZE) {
+                throw new IOException("File is too small to be a binary network: " + filePath);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary network file: " + filePath);
+            }
+            int version = buffer.getInt(Integer.BYTES);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported binary network version " + version + " in " + filePath);
+            }
+
+            int payloadSize = (int) fileSize - CHECKSUM_SIZE;
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.slice(0, payloadSize));
+            if (checksum.getValue() != buffer.getLong(payloadSize)) {
+                throw new IOException("Checksum mismatch in binary network file: " + filePath);
+            }
+
+            buffer.position(2 * Integer.BYTES);
+            int numLayers = buffer.getInt();
+
+            NeuralNetwork model = new NeuralNetwork();
+            for (int layerIndex = 0; layerIndex < numLayers; layerIndex++) {
+                int layerType = buffer.getInt();
+
+                Layer layer = switch (layerType) {
+                    case CONVOLUTIONAL_LAYER -> readConvolutionalLayer(buffer);
+                    case POOLING_LAYER -> readPoolingLayer(buffer, version);
+                    case FLATTEN_LAYER -> new FlattenLayer();
+                    case FULLY_CONNECTED_LAYER -> readFullyConnectedLayer(buffer);
+                    case QUANTIZED_CONVOLUTIONAL_LAYER -> readQuantizedConvolutionalLayer(buffer);
+                    case QUANTIZED_DENSE_LAYER -> readQuantizedDenseLayer(buffer);
+                    default -> throw new IOException("Unknown layer type " + layerType + " in " + filePath);
+                };
+
+                model.addLayer(layer);
+            }
+            return model;
+        }
+    }
+
+    private static PoolingLayer readPoolingLayer(ByteBuffer buffer, int version) {
+        int poolSize = buffer.getInt();
+        int stride = buffer.getInt();
+        PoolingMode mode = version >= 2 ? PoolingMode.values()[buffer.getInt()] : PoolingMode.MAX;
+        return new PoolingLayer(mode, poolSize, stride);
+    }
+
+    private static ConvolutionalLayer readConvolutionalLayer(ByteBuffer buffer) {
+        int numKernels = buffer.getInt();
+        int kernelDepth = buffer.getInt();
+        int kernelSize = buffer.getInt();
+        int stride = buffer.getInt();
+        int padding = buffer.getInt();
+        int offset = (int) buffer.getLong();
+
+        ConvolutionalLayer convolutionalLayer = new ConvolutionalLayer(numKernels, kernelDepth, kernelSize, stride, padding);
+        int count = convolutionalLayer.getParameterCount();
+        floatsAt(buffer, offset, count).get(convolutionalLayer.getParameters(), convolutionalLayer.getParametersOffset(), count);
+
+        return convolutionalLayer;
+    }
+
+    private static FullyConnectedLayer readFullyConnectedLayer(ByteBuffer buffer) {
+        int sizesLength = buffer.getInt();
+        int[] sizes = new int[sizesLength];
+        for (int i = 0; i < sizesLength; i++) {
+            sizes[i] = buffer.getInt();
+        }
+
+        FullyConnectedLayer fullyConnectedLayer = new FullyConnectedLayer(sizes);
+        for (Layer layer : fullyConnectedLayer.getLayers()) {
+            int offset = (int) buffer.getLong();
+            int count = layer.getParameterCount();
+            floatsAt(buffer, offset, count).get(parametersOf(layer), parametersOffsetOf(layer), count);
+        }
+
+        return fullyConnectedLayer;
+    }
+
+    private static QuantizedConvolutionalLayer readQuantizedConvolutionalLayer(ByteBuffer buffer) {
+        int numKernels = buffer.getInt();
+        int kernelDepth = buffer.getInt();
+        int kernelSize = buffer.getInt();
+        int stride = buffer.getInt();
+        int padding = buffer.getInt();
+        float inputScale = buffer.getFloat();
+
+        byte[] weights = new byte[numKernels * kernelDepth * kernelSize * kernelSize];
+        float[] weightScales = new float[numKernels];
+        int[] biases = new int[numKernels];
+        readQuantizedParameters(buffer, weights, weightScales, biases);
+
+        return new QuantizedConvolutionalLayer(numKernels, kernelDepth, kernelSize, stride, padding,
+                inputScale, weights, weightScales, biases);
+    }
+
+    private static QuantizedDenseLayer readQuantizedDenseLayer(ByteBuffer buffer) {
+        int numNodesIn = buffer.getInt();
+        int numNodesOut = buffer.getInt();
+        boolean softmax = buffer.getInt() != 0;
+        float inputScale = buffer.getFloat();
+
+        byte[] weights = new byte[numNodesOut * numNodesIn];
+        float[] weightScales = new float[numNodesOut];
+        int[] biases = new int[numNodesOut];
+        readQuantizedParameters(buffer, weights, weightScales, biases);
+
+        return new QuantizedDenseLayer(numNodesIn, numNodesOut, softmax, inputScale, weights, weightScales, biases);
+    }
+
+    private static void readQuantizedParameters(ByteBuffer buffer, byte[] weights, float[] weightScales, int[] biases) {
+        int weightsOffset = (int) buffer.getLong();
+        int channelsOffset = (int) buffer.getLong();
+        buffer.get(weightsOffset, weights);
+        floatsAt(buffer, channelsOffset, weightScales.length).get(weightScales);
+        intsAt(buffer, channelsOffset + weightScales.length * Float.BYTES, biases.length).get(biases);
+    }
+
+    private static void writeQuantizedParameters(ByteBuffer buffer, long weightsOffset, long channelsOffset,
+                                                 byte[] weights, float[] weightScales, int[] biases) {
+        buffer.putLong(weightsOffset).putLong(channelsOffset);
+        buffer.put((int) weightsOffset, weights);
+        floatsAt(buffer, (int) channelsOffset, weightScales.length).put(weightScales);
+        intsAt(buffer, (int) channelsOffset + weightScales.length * Float.BYTES, biases.length).put(biases);
+    }
+
+    private static IntBuffer intsAt(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, count * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static FloatBuffer floatsAt(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, count * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    private static void writeParameters(ByteBuffer buffer, int offset, float[] parameters, int parametersOffset, int count) {
+        floatsAt(buffer, offset, count).put(parameters, parametersOffset, count);
+    }
+
+    private static int headerSizeOf(Layer layer) {
+        if (layer instanceof ConvolutionalLayer) {
+            return 6 * Integer.BYTES + Long.BYTES;
+        } else if (layer instanceof PoolingLayer) {
+            return 4 * Integer.BYTES;
+        } else if (layer instanceof FullyConnectedLayer fullyConnectedLayer) {
+            int numSizes = fullyConnectedLayer.getLayerSizes().length;
+            return (2 + numSizes) * Integer.BYTES + (numSizes - 1) * Long.BYTES;
+        } else if (layer instanceof QuantizedConvolutionalLayer) {
+            return 6 * Integer.BYTES + Float.BYTES + 2 * Long.BYTES;
+        } else if (layer instanceof QuantizedDenseLayer) {
+            return 4 * Integer.BYTES + Float.BYTES + 2 * Long.BYTES;
+        }
+        return Integer.BYTES;
+    }
+
+    private static int[] blockSizesOf(Layer layer) {
+        if (layer instanceof ConvolutionalLayer convolutionalLayer) {
+            return new int[]{convolutionalLayer.getParameterCount() * Float.BYTES};
+        } else if (layer instanceof FullyConnectedLayer fullyConnectedLayer) {
+            Layer[] denseLayers = fullyConnectedLayer.getLayers();
+            int[] sizes = new int[denseLayers.length];
+            for (int i = 0; i < denseLayers.length; i++) {
+                sizes[i] = denseLayers[i].getParameterCount() * Float.BYTES;
+            }
+            return sizes;
+        } else if (layer instanceof QuantizedConvolutionalLayer quantizedLayer) {
+            return new int[]{quantizedLayer.getWeights().length, quantizedLayer.getNumKernels() * (Float.BYTES + Integer.BYTES)};
+        } else if (layer instanceof QuantizedDenseLayer quantizedLayer) {
+            return new int[]{quantizedLayer.getWeights().length, quantizedLayer.getNumNodesOut() * (Float.BYTES + Integer.BYTES)};
+        }
+        return new int[0];
+    }
+
+    private static float[] parametersOf(Layer layer) {
+        if (layer instanceof HiddenLayer hiddenLayer) {
+            return hiddenLayer.getParameters();
+        } else if (layer instanceof OutputLayer outputLayer) {
+            return outputLayer.getParameters();
+        }
+        return new float[0];
+    }
+
+    private static int parametersOffsetOf(Layer layer) {
+        if (layer instanceof HiddenLayer hiddenLayer) {
+            return hiddenLayer.getWeightsOffset();
+        } else if (layer instanceof OutputLayer outputLayer) {
+            return outputLayer.getWeightsOffset();
+        }
+        return 0;
+    }
+
+    private static long align(long size) {
+        return (size + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+    }
+}
@@ -3,8 +3,11 @@ package io.github.karolbystrek.io;
 import io.github.karolbystrek.core.Kernel;
 import io.github.karolbystrek.layers.*;
 import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.quantization.QuantizedConvolutionalLayer;
+import io.github.karolbystrek.quantization.QuantizedDenseLayer;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 
@@ -27,6 +30,8 @@ public class NeuralNetworkFileIO {
                     case "PoolingLayer" -> loadPoolingLayer(tokenizer);
                     case "FlattenLayer" -> loadFlattenLayer();
                     case "FullyConnectedLayer" -> loadFullyConnectedLayer(in, tokenizer);
+                    case "QuantizedConvolutionalLayer" -> loadQuantizedConvolutionalLayer(in, tokenizer);
+                    case "QuantizedDenseLayer" -> loadQuantizedDenseLayer(in, tokenizer);
                     default -> null;
                 };
 
@@ -38,7 +43,7 @@ public class NeuralNetworkFileIO {
 
     public static void saveNetwork(NeuralNetwork model, String filePath) throws IOException {
         try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filePath)))) {
-            List<Layer> layers = model.getLayers();
+            List<Layer> layers = persistedLayers(model);
             out.println(layers.size());
 
             for (Layer layer : layers) {
@@ -50,11 +55,44 @@ public class NeuralNetworkFileIO {
                     saveFlattenLayer(out);
                 } else if (layer instanceof FullyConnectedLayer) {
                     saveFullyConnectedLayer(out, (FullyConnectedLayer) layer);
+                } else if (layer instanceof QuantizedConvolutionalLayer) {
+                    saveQuantizedConvolutionalLayer(out, (QuantizedConvolutionalLayer) layer);
+                } else if (layer instanceof QuantizedDenseLayer) {
+                    saveQuantizedDenseLayer(out, (QuantizedDenseLayer) layer);
                 }
             }
         }
     }
 
+    static List<Layer> persistedLayers(NeuralNetwork model) {
+        List<Layer> layers = new ArrayList<>();
+        for (Layer layer : model.getLayers()) {
+            if (layer instanceof FusedConvolutionPoolingLayer fusedLayer) {
+                layers.add(fusedLayer.getConvolutionalLayer());
+                layers.add(fusedLayer.getPoolingLayer());
+            } else {
+                layers.add(layer);
+            }
+        }
+        return layers;
+    }
+
+    public static NeuralNetwork loadNetworkBinary(String filePath) throws IOException {
+        return BinaryNetworkFormat.load(filePath);
+    }
+
+    public static void saveNetworkBinary(NeuralNetwork model, String filePath) throws IOException {
+        BinaryNetworkFormat.save(model, filePath);
+    }
+
+    public static void convertTextToBinary(String textFilePath, String binaryFilePath) throws IOException {
+        saveNetworkBinary(loadNetwork(textFilePath), binaryFilePath);
+    }
+
+    public static void convertBinaryToText(String binaryFilePath, String textFilePath) throws IOException {
+        saveNetwork(loadNetworkBinary(binaryFilePath), textFilePath);
+    }
+
     private static FullyConnectedLayer loadFullyConnectedLayer(BufferedReader in, StringTokenizer tokenizer) throws IOException {
         int sizesLength = Integer.parseInt(tokenizer.nextToken());
         int[] sizes = new int[sizesLength];
@@ -64,28 +102,31 @@ public class NeuralNetworkFileIO {
 
         FullyConnectedLayer fullyConnectedLayer = new FullyConnectedLayer(sizes);
         Layer[] layers = fullyConnectedLayer.getLayers();
-        for (Layer layer : layers) {
-            float[][] weights = new float[0][0];
-            float[] bias = new float[0];
-
-            if (layer instanceof HiddenLayer hiddenLayer) {
-                weights = hiddenLayer.getWeights();
-                bias = hiddenLayer.getBiases();
-            } else if (layer instanceof OutputLayer outputLayer) {
-                weights = outputLayer.getWeights();
-                bias = outputLayer.getBiases();
+        for (int layerIndex = 0; layerIndex < layers.length; layerIndex++) {
+            float[] parameters = new float[0];
+            int weightsOffset = 0;
+            int biasesOffset = 0;
+
+            if (layers[layerIndex] instanceof HiddenLayer hiddenLayer) {
+                parameters = hiddenLayer.getParameters();
+                weightsOffset = hiddenLayer.getWeightsOffset();
+                biasesOffset = hiddenLayer.getBiasesOffset();
+            } else if (layers[layerIndex] instanceof OutputLayer outputLayer) {
+                parameters = outputLayer.getParameters();
+                weightsOffset = outputLayer.getWeightsOffset();
+                biasesOffset = outputLayer.getBiasesOffset();
             }
 
-            int numNodesOut = weights.length;
-            int numNodesIn = weights[0].length;
+            int numNodesOut = sizes[layerIndex + 1];
+            int numNodesIn = sizes[layerIndex];
 
             for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
                 String line = in.readLine();
                 tokenizer = new StringTokenizer(line);
 
-                bias[nodeOut] = Float.parseFloat(tokenizer.nextToken());
+                parameters[biasesOffset + nodeOut] = Float.parseFloat(tokenizer.nextToken());
                 for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                    weights[nodeOut][nodeIn] = Float.parseFloat(tokenizer.nextToken());
+                    parameters[weightsOffset + nodeOut * numNodesIn + nodeIn] = Float.parseFloat(tokenizer.nextToken());
                 }
             }
         }
@@ -100,7 +141,8 @@ public class NeuralNetworkFileIO {
     private static PoolingLayer loadPoolingLayer(StringTokenizer tokenizer) {
         int poolSize = Integer.parseInt(tokenizer.nextToken());
         int stride = Integer.parseInt(tokenizer.nextToken());
-        return new PoolingLayer(poolSize, stride);
+        PoolingMode mode = tokenizer.hasMoreTokens() ? PoolingMode.valueOf(tokenizer.nextToken()) : PoolingMode.MAX;
+        return new PoolingLayer(mode, poolSize, stride);
     }
 
     private static ConvolutionalLayer loadConvolutionalLayer(BufferedReader in, StringTokenizer tokenizer) throws IOException {
@@ -119,15 +161,10 @@ public class NeuralNetworkFileIO {
             tokenizer = new StringTokenizer(line);
 
             Kernel kernel = kernels[k];
-            float[][][] kernelWeights = kernel.getWeights();
 
             kernel.setBias(Float.parseFloat(tokenizer.nextToken()));
-            for (int d = 0; d < kernelDepth; d++) {
-                for (int h = 0; h < kernelSize; h++) {
-                    for (int w = 0; w < kernelSize; w++) {
-                        kernelWeights[d][h][w] = Float.parseFloat(tokenizer.nextToken());
-                    }
-                }
+            for (int i = 0; i < kernel.getSize(); i++) {
+                kernel.setWeight(i, Float.parseFloat(tokenizer.nextToken()));
             }
 
         }
@@ -135,6 +172,50 @@ public class NeuralNetworkFileIO {
         return convolutionalLayer;
     }
 
+    private static QuantizedConvolutionalLayer loadQuantizedConvolutionalLayer(BufferedReader in, StringTokenizer tokenizer) throws IOException {
+        int numKernels = Integer.parseInt(tokenizer.nextToken());
+        int kernelDepth = Integer.parseInt(tokenizer.nextToken());
+        int kernelSize = Integer.parseInt(tokenizer.nextToken());
+        int stride = Integer.parseInt(tokenizer.nextToken());
+        int padding = Integer.parseInt(tokenizer.nextToken());
+        float inputScale = Float.parseFloat(tokenizer.nextToken());
+
+        byte[] weights = new byte[numKernels * kernelDepth * kernelSize * kernelSize];
+        float[] weightScales = new float[numKernels];
+        int[] biases = new int[numKernels];
+        loadQuantizedRows(in, weights, weightScales, biases);
+
+        return new QuantizedConvolutionalLayer(numKernels, kernelDepth, kernelSize, stride, padding,
+                inputScale, weights, weightScales, biases);
+    }
+
+    private static QuantizedDenseLayer loadQuantizedDenseLayer(BufferedReader in, StringTokenizer tokenizer) throws IOException {
+        int numNodesIn = Integer.parseInt(tokenizer.nextToken());
+        int numNodesOut = Integer.parseInt(tokenizer.nextToken());
+        boolean softmax = Boolean.parseBoolean(tokenizer.nextToken());
+        float inputScale = Float.parseFloat(tokenizer.nextToken());
+
+        byte[] weights = new byte[numNodesOut * numNodesIn];
+        float[] weightScales = new float[numNodesOut];
+        int[] biases = new int[numNodesOut];
+        loadQuantizedRows(in, weights, weightScales, biases);
+
+        return new QuantizedDenseLayer(numNodesIn, numNodesOut, softmax, inputScale, weights, weightScales, biases);
+    }
+
+    private static void loadQuantizedRows(BufferedReader in, byte[] weights, float[] weightScales, int[] biases) throws IOException {
+        int rowLength = weights.length / weightScales.length;
+        for (int row = 0; row < weightScales.length; row++) {
+            StringTokenizer tokenizer = new StringTokenizer(in.readLine());
+
+            weightScales[row] = Float.parseFloat(tokenizer.nextToken());
+            biases[row] = Integer.parseInt(tokenizer.nextToken());
+            for (int i = 0; i < rowLength; i++) {
+                weights[row * rowLength + i] = Byte.parseByte(tokenizer.nextToken());
+            }
+        }
+    }
+
     private static void saveFullyConnectedLayer(PrintWriter out, FullyConnectedLayer fullyConnectedLayer) {
         int[] layerSizes = fullyConnectedLayer.getLayerSizes();
 
@@ -145,26 +226,29 @@ public class NeuralNetworkFileIO {
         out.println();
 
         Layer[] layers = fullyConnectedLayer.getLayers();
-        for (Layer layer : layers) {
-            float[][] weights = new float[0][0];
-            float[] biases = new float[0];
-
-            if (layer instanceof HiddenLayer hiddenLayer) {
-                weights = hiddenLayer.getWeights();
-                biases = hiddenLayer.getBiases();
-            } else if (layer instanceof OutputLayer outputLayer) {
-                weights = outputLayer.getWeights();
-                biases = outputLayer.getBiases();
+        for (int layerIndex = 0; layerIndex < layers.length; layerIndex++) {
+            float[] parameters = new float[0];
+            int weightsOffset = 0;
+            int biasesOffset = 0;
+
+            if (layers[layerIndex] instanceof HiddenLayer hiddenLayer) {
+                parameters = hiddenLayer.getParameters();
+                weightsOffset = hiddenLayer.getWeightsOffset();
+                biasesOffset = hiddenLayer.getBiasesOffset();
+            } else if (layers[layerIndex] instanceof OutputLayer outputLayer) {
+                parameters = outputLayer.getParameters();
+                weightsOffset = outputLayer.getWeightsOffset();
+                biasesOffset = outputLayer.getBiasesOffset();
             }
 
-            int numNodesOut = weights.length;
-            int numNodesIn = weights[0].length;
+            int numNodesOut = layerSizes[layerIndex + 1];
+            int numNodesIn = layerSizes[layerIndex];
 
             StringBuilder stringBuilder = new StringBuilder();
             for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-                stringBuilder.append(biases[nodeOut]).append(" ");
+                stringBuilder.append(parameters[biasesOffset + nodeOut]).append(" ");
                 for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                    stringBuilder.append(weights[nodeOut][nodeIn]).append(" ");
+                    stringBuilder.append(parameters[weightsOffset + nodeOut * numNodesIn + nodeIn]).append(" ");
                 }
                 out.println(stringBuilder);
                 stringBuilder.setLength(0);
@@ -172,19 +256,45 @@ public class NeuralNetworkFileIO {
         }
     }
 
+    private static void saveQuantizedConvolutionalLayer(PrintWriter out, QuantizedConvolutionalLayer quantizedLayer) {
+        out.println("QuantizedConvolutionalLayer " + quantizedLayer.getNumKernels() + " " + quantizedLayer.getKernelDepth()
+                + " " + quantizedLayer.getKernelSize() + " " + quantizedLayer.getStride() + " " + quantizedLayer.getPadding()
+                + " " + quantizedLayer.getInputScale());
+        saveQuantizedRows(out, quantizedLayer.getWeights(), quantizedLayer.getWeightScales(), quantizedLayer.getBiases());
+    }
+
+    private static void saveQuantizedDenseLayer(PrintWriter out, QuantizedDenseLayer quantizedLayer) {
+        out.println("QuantizedDenseLayer " + quantizedLayer.getNumNodesIn() + " " + quantizedLayer.getNumNodesOut()
+                + " " + quantizedLayer.isSoftmax() + " " + quantizedLayer.getInputScale());
+        saveQuantizedRows(out, quantizedLayer.getWeights(), quantizedLayer.getWeightScales(), quantizedLayer.getBiases());
+    }
+
+    private static void saveQuantizedRows(PrintWriter out, byte[] weights, float[] weightScales, int[] biases) {
+        int rowLength = weights.length / weightScales.length;
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int row = 0; row < weightScales.length; row++) {
+            stringBuilder.append(weightScales[row]).append(" ").append(biases[row]).append(" ");
+            for (int i = 0; i < rowLength; i++) {
+                stringBuilder.append(weights[row * rowLength + i]).append(" ");
+            }
+            out.println(stringBuilder);
+            stringBuilder.setLength(0);
+        }
+    }
+
     private static void saveFlattenLayer(PrintWriter out) {
         out.println("FlattenLayer");
     }
 
     private static void savePoolingLayer(PrintWriter out, PoolingLayer poolingLayer) {
-        out.println("PoolingLayer " + poolingLayer.getPoolSize() + " " + poolingLayer.getStride());
+        out.println("PoolingLayer " + poolingLayer.getPoolSize() + " " + poolingLayer.getStride() + " " + poolingLayer.getMode());
     }
 
     private static void saveConvolutionalLayer(PrintWriter out, ConvolutionalLayer convolutionalLayer) {
         Kernel[] kernels = convolutionalLayer.getKernels();
         int numKernels = kernels.length;
-        int kernelDepth = kernels[0].getWeights().length;
-        int kernelSize = kernels[0].getWeights()[0].length;
+        int kernelDepth = kernels[0].getDepth();
+        int kernelSize = kernels[0].getHeight();
 
         int stride = convolutionalLayer.getStride();
         int padding = convolutionalLayer.getPadding();
@@ -192,16 +302,11 @@ public class NeuralNetworkFileIO {
         out.println("ConvolutionalLayer " + numKernels + " " + kernelDepth + " " + kernelSize + " " + stride + " " + padding);
 
         for (Kernel kernel : kernels) {
-            float[][][] kernelWeights = kernel.getWeights();
             StringBuilder stringBuilder = new StringBuilder();
 
             stringBuilder.append(kernel.getBias()).append(" ");
-            for (int d = 0; d < kernelDepth; d++) {
-                for (int h = 0; h < kernelSize; h++) {
-                    for (int w = 0; w < kernelSize; w++) {
-                        stringBuilder.append(kernelWeights[d][h][w]).append(" ");
-                    }
-                }
+            for (int i = 0; i < kernel.getSize(); i++) {
+                stringBuilder.append(kernel.getWeight(i)).append(" ");
             }
             out.println(stringBuilder);
         }
@@ -1,144 +1,236 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.convolution.ConvolutionEngine;
+import io.github.karolbystrek.convolution.ConvolutionGeometry;
+import io.github.karolbystrek.convolution.FftConvolution;
+import io.github.karolbystrek.convolution.Im2colConvolution;
+import io.github.karolbystrek.convolution.WinogradConvolution;
+import io.github.karolbystrek.core.ActivationCache;
 import io.github.karolbystrek.core.Kernel;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
-
-import java.util.stream.IntStream;
+import io.github.karolbystrek.core.TensorArena;
 
 public class ConvolutionalLayer implements Layer {
+    private static final int FFT_MIN_KERNEL_SIZE = 7;
+
     private final Kernel[] kernels;
     private final int stride;
     private final int padding;
 
-    private Tensor lastInput;
-    private Tensor lastWeightedInput;
+    private ConvolutionEngine engine;
+    private ComputeExecutor executor = ForkJoinExecutor.common();
+
+    private float[] parameters;
+    private float[] gradients;
+    private int parametersOffset;
+
+    private final ActivationCache inputCache = new ActivationCache();
+    private final ActivationCache weightedInputCache = new ActivationCache();
+    private ConvolutionGeometry lastGeometry;
+    private volatile ConvolutionGeometry cachedGeometry;
+    private volatile ConvolutionGeometry previousGeometry;
 
     public ConvolutionalLayer(Kernel[] kernels, int stride, int padding) {
         this.kernels = kernels;
         this.stride = stride;
         this.padding = padding;
+        this.engine = defaultEngine(kernels[0], stride, padding);
+
+        this.parameters = new float[kernels.length * (kernels[0].getSize() + 1)];
+        this.gradients = new float[parameters.length];
+        this.parametersOffset = 0;
+        bindKernels();
+    }
+
+    private ConvolutionalLayer(ConvolutionalLayer master) {
+        this.kernels = master.kernels;
+        this.stride = master.stride;
+        this.padding = master.padding;
+        this.engine = master.engine;
+        this.executor = master.executor;
+        setActivationPrecision(master.inputCache.getPrecision());
+
+        this.parameters = master.parameters;
+        this.gradients = new float[master.gradients.length];
+        this.parametersOffset = master.parametersOffset;
     }
 
     public ConvolutionalLayer(int numKernels, int kernelDepth, int kernelSize, int stride, int padding) {
-        this.kernels = new Kernel[numKernels];
-        this.stride = stride;
-        this.padding = padding;
+        this(createKernels(numKernels, kernelDepth, kernelSize), stride, padding);
+    }
+
+    private static ConvolutionEngine defaultEngine(Kernel kernel, int stride, int padding) {
+        if (kernel.getHeight() == 3 && kernel.getWidth() == 3 && stride == 1 && padding == 1) {
+            return new WinogradConvolution();
+        }
+        if (kernel.getHeight() >= FFT_MIN_KERNEL_SIZE && kernel.getWidth() >= FFT_MIN_KERNEL_SIZE && stride == 1) {
+            return new FftConvolution();
+        }
+        return new Im2colConvolution();
+    }
 
+    private static Kernel[] createKernels(int numKernels, int kernelDepth, int kernelSize) {
+        Kernel[] kernels = new Kernel[numKernels];
         for (int k = 0; k < kernels.length; k++) {
-            this.kernels[k] = new Kernel(kernelDepth, kernelSize, kernelSize);
+            kernels[k] = new Kernel(kernelDepth, kernelSize, kernelSize);
         }
+        return kernels;
     }
 
     @Override
-    public Tensor forward(Tensor input) {
-        this.lastInput = input;
-
-        int inputDepth = input.getDepth();
-        int inputHeight = input.getHeight();
-        int inputWidth = input.getWidth();
-        float[][][] paddedInputData = padInputData(input.getData(), padding);
-
-        int numKernels = kernels.length;
-        int kernelHeight = kernels[0].getWeights()[0].length;
-        int kernelWidth = kernels[0].getWeights()[0][0].length;
-
-        int outputHeight = (inputHeight + 2 * padding - kernelHeight) / stride + 1;
-        int outputWidth = (inputWidth + 2 * padding - kernelWidth) / stride + 1;
-
-
-        lastWeightedInput = new Tensor(numKernels, outputHeight, outputWidth);
-        float[][][] lastWeightedInputData = lastWeightedInput.getData();
-
-        Tensor output = new Tensor(numKernels, outputHeight, outputWidth);
-        float[][][] outputData = output.getData();
-
-        IntStream.range(0, numKernels).parallel().forEach( k -> {
-            Kernel kernel = kernels[k];
-            float[][][] kernelWeights = kernel.getWeights();
-            float bias = kernel.getBias();
-
-            for (int outY = 0; outY < outputHeight; outY++) {
-                for (int outX = 0; outX < outputWidth; outX++) {
-                    float sum = 0.0f;
-                    for (int d = 0; d < inputDepth; d++) {
-                        for (int kY = 0; kY < kernelHeight; kY++) {
-                            for (int kX = 0; kX < kernelWidth; kX++) {
-                                int inY = outY * stride + kY;
-                                int inX = outX * stride + kX;
-                                sum += paddedInputData[d][inY][inX] * kernelWeights[d][kY][kX];
-                            }
-                        }
-                    }
-                    sum += bias;
-                    lastWeightedInputData[k][outY][outX] = sum;
-                    float activated = activation(sum);
-                    outputData[k][outY][outX] = activated;
-                }
-            }
-        });
+    public Tensor forwardBatch(Tensor input) {
+        input = input.contiguous();
+        inputCache.store(input);
+
+        ConvolutionGeometry geometry = geometryFor(input);
+        this.lastGeometry = geometry;
+
+        Tensor weightedInput = TensorArena.allocate(geometry.batchSize(), geometry.numKernels(), geometry.outputHeight(), geometry.outputWidth());
+        float[] weightedInputData = weightedInput.getData();
+        engine.forward(executor, geometry, input.getData(), input.getOffset(), parameters, parametersOffset, weightedInputData);
+
+        Tensor output = TensorArena.allocate(geometry.batchSize(), geometry.numKernels(), geometry.outputHeight(), geometry.outputWidth());
+        float[] outputData = output.getData();
+        for (int i = 0; i < output.getSize(); i++) {
+            outputData[i] = activation(weightedInputData[i]);
+        }
+        weightedInputCache.storeOwned(weightedInput);
+
+        return output;
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        ConvolutionGeometry geometry = geometryFor(input);
+
+        Tensor output = new Tensor(geometry.batchSize(), geometry.numKernels(), geometry.outputHeight(), geometry.outputWidth());
+        float[] outputData = output.getData();
+        engine.forward(executor, geometry, input.getData(), input.getOffset(), parameters, parametersOffset, outputData);
+        for (int i = 0; i < output.getSize(); i++) {
+            outputData[i] = activation(outputData[i]);
+        }
 
         return output;
     }
 
+    ConvolutionGeometry geometryFor(Tensor input) {
+        ConvolutionGeometry geometry = cachedGeometry;
+        if (hasInput(geometry, input)) {
+            return geometry;
+        }
+        ConvolutionGeometry previous = previousGeometry;
+        if (hasInput(previous, input)) {
+            previousGeometry = geometry;
+            cachedGeometry = previous;
+            return previous;
+        }
+        Kernel kernel = kernels[0];
+        ConvolutionGeometry created = ConvolutionGeometry.of(input.getBatchSize(),
+                input.getDepth(), input.getHeight(), input.getWidth(),
+                kernels.length, kernel.getDepth(), kernel.getHeight(), kernel.getWidth(),
+                stride, padding);
+        previousGeometry = geometry;
+        cachedGeometry = created;
+        return created;
+    }
+
+    private static boolean hasInput(ConvolutionGeometry geometry, Tensor input) {
+        return geometry != null && geometry.hasInput(input.getBatchSize(), input.getDepth(), input.getHeight(), input.getWidth());
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradOutput) {
+        gradOutput = gradOutput.contiguous();
+        ConvolutionGeometry geometry = lastGeometry;
+
+        float[] gradOutputData = gradOutput.getData();
+        int gradOutputOffset = gradOutput.getOffset();
+        Tensor weightedInput = weightedInputCache.load();
+        float[] weightedInputData = weightedInput.getData();
+
+        Tensor deltaTensor = TensorArena.allocate(geometry.batchSize(), geometry.numKernels(), geometry.outputHeight(), geometry.outputWidth());
+        float[] delta = deltaTensor.getData();
+        for (int i = 0; i < deltaTensor.getSize(); i++) {
+            float dActivation = (weightedInputData[i] > 0) ? 1.0f : 0.0f;
+            delta[i] = gradOutputData[gradOutputOffset + i] * dActivation;
+        }
+
+        weightedInputCache.release(weightedInput);
+
+        Tensor input = inputCache.load();
+        Tensor gradInput = TensorArena.allocate(geometry.batchSize(), geometry.inputDepth(), geometry.inputHeight(), geometry.inputWidth());
+        engine.backward(executor, geometry, input.getData(), input.getOffset(), delta,
+                parameters, gradients, parametersOffset, gradInput.getData());
+        TensorArena.free(deltaTensor);
+        inputCache.release(input);
+
+        return gradInput;
+    }
+
     @Override
-    public Tensor backward(Tensor gradOutput) {
-        int inputDepth = lastInput.getDepth();
-        int inputHeight = lastInput.getHeight();
-        int inputWidth = lastInput.getWidth();
-
-        int numKernels = kernels.length;
-        int kernelHeight = kernels[0].getWeights()[0].length;
-        int kernelWidth = kernels[0].getWeights()[0][0].length;
-
-        int outputHeight = gradOutput.getHeight();
-        int outputWidth = gradOutput.getWidth();
-
-        float[][][] gradOutputData = gradOutput.getData();
-        float[][][] lastInputData = lastInput.getData();
-        float[][][] lastWeightedInputData = lastWeightedInput.getData();
-        float[][][] gradInputData = new float[inputDepth][inputHeight][inputWidth];
-
-        for (int k = 0; k < numKernels; k++) {
-            Kernel kernel = kernels[k];
-            float[][][] kernelWeights = kernel.getWeights();
-
-            for (int outY = 0; outY < outputHeight; outY++) {
-                for (int outX = 0; outX < outputWidth; outX++) {
-                    float dActivation = (lastWeightedInputData[k][outY][outX] > 0) ? 1.0f : 0.0f;
-                    float delta = gradOutputData[k][outY][outX] * dActivation;
-
-                    kernel.biasGradient += delta;
-
-                    for (int d = 0; d < inputDepth; d++) {
-                        for (int kY = 0; kY < kernelHeight; kY++) {
-                            for (int kX = 0; kX < kernelWidth; kX++) {
-                                int inY = outY * stride - padding + kY;
-                                int inX = outX * stride - padding + kX;
-
-                                if (inY >= 0 && inY < inputHeight && inX >= 0 && inX < inputWidth) {
-                                    float inputValue = lastInputData[d][inY][inX];
-
-                                    kernel.weightsGradient[d][kY][kX] += inputValue * delta;
-
-                                    gradInputData[d][inY][inX] += kernelWeights[d][kY][kX] * delta;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+    public int[] outputShape(int[] inputShape) {
+        Kernel kernel = kernels[0];
+        if (inputShape[0] != kernel.getDepth()) {
+            throw new IllegalArgumentException("Input depth " + inputShape[0] + " does not match kernel depth " + kernel.getDepth());
         }
+        int outputHeight = (inputShape[1] + 2 * padding - kernel.getHeight()) / stride + 1;
+        int outputWidth = (inputShape[2] + 2 * padding - kernel.getWidth()) / stride + 1;
+        if (outputHeight < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("Kernel of size " + kernel.getHeight() + " does not fit input of size "
+                    + inputShape[1] + "x" + inputShape[2]);
+        }
+        return new int[]{kernels.length, outputHeight, outputWidth};
+    }
 
-        return new Tensor(gradInputData);
+    @Override
+    public Layer replicate() {
+        return new ConvolutionalLayer(this);
     }
 
     @Override
-    public void updateParameters(float learningRate) {
-        for (Kernel kernel : kernels) {
-            kernel.updateParameters(learningRate);
+    public int getParameterCount() {
+        return kernels.length * (kernels[0].getSize() + 1);
+    }
+
+    @Override
+    public void bindParameters(ParameterStore store) {
+        this.parametersOffset = store.register(parameters, parametersOffset, getParameterCount());
+        this.parameters = store.getValues();
+        this.gradients = store.getGradients();
+        bindKernels();
+        engine.invalidate();
+    }
+
+    @Override
+    public void parametersUpdated() {
+        engine.invalidate();
+    }
+
+    private void bindKernels() {
+        int kernelSize = kernels[0].getSize();
+        int biasesOffset = parametersOffset + kernels.length * kernelSize;
+        for (int k = 0; k < kernels.length; k++) {
+            kernels[k].bind(parameters, parametersOffset + k * kernelSize, biasesOffset + k);
         }
     }
 
+    public float[] getParameters() {
+        return parameters;
+    }
+
+    float[] getGradients() {
+        return gradients;
+    }
+
+    public int getParametersOffset() {
+        return parametersOffset;
+    }
+
     private float activation(float input) {
         return Math.max(0.0f, input);
     }
@@ -155,19 +247,26 @@ public class ConvolutionalLayer implements Layer {
         return padding;
     }
 
-    private float[][][] padInputData(float[][][] inputData, int padding) {
-        int depth = inputData.length;
-        int inputHeight = inputData[0].length;
-        int inputWidth = inputData[0][0].length;
-        int paddedHeight = inputHeight + 2 * padding;
-        int paddedWidth = inputWidth + 2 * padding;
-        float[][][] paddedData = new float[depth][paddedHeight][paddedWidth];
+    @Override
+    public void setActivationPrecision(Precision precision) {
+        inputCache.setPrecision(precision);
+        weightedInputCache.setPrecision(precision);
+    }
+
+    @Override
+    public void setExecutor(ComputeExecutor executor) {
+        this.executor = executor;
+    }
 
-        for (int d = 0; d < depth; d++) {
-            for (int y = 0; y < inputHeight; y++) {
-                System.arraycopy(inputData[d][y], 0, paddedData[d][y + padding], padding, inputWidth);
-            }
-        }
-        return paddedData;
+    public ComputeExecutor getExecutor() {
+        return executor;
+    }
+
+    public ConvolutionEngine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(ConvolutionEngine engine) {
+        this.engine = engine;
     }
 }
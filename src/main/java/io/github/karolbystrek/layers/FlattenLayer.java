@@ -8,43 +8,37 @@ public class FlattenLayer implements Layer {
     private int originalHeight;
     private int originalWidth;
 
+    private final ViewCache outputViews = new ViewCache();
+    private final ViewCache gradInputViews = new ViewCache();
+
     @Override
-    public Tensor forward(Tensor input) {
+    public Tensor forwardBatch(Tensor input) {
+        int batchSize = input.getBatchSize();
         this.originalDepth = input.getDepth();
         this.originalHeight = input.getHeight();
         this.originalWidth = input.getWidth();
 
-        float[][][] data = input.getData();
-        float[][][] flatData = new float[1][1][originalDepth * originalHeight * originalWidth];
-
-        int index = 0;
-        for (int d = 0; d < originalDepth; d++) {
-            for (int h = 0; h < originalHeight; h++) {
-                for (int w = 0; w < originalWidth; w++) {
-                    flatData[0][0][index++] = data[d][h][w];
-                }
-            }
-        }
-        return new Tensor(flatData);
+        return outputViews.reshape(input, batchSize, 1, 1, originalDepth * originalHeight * originalWidth);
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        return input.reshape(input.getBatchSize(), 1, 1, input.getSampleSize());
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradOutput) {
+        return gradInputViews.reshape(gradOutput, gradOutput.getBatchSize(), originalDepth, originalHeight, originalWidth);
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput) {
-        float[][][] gradData = gradOutput.getData();
-        float[][][] unflatData = new float[originalDepth][originalHeight][originalWidth];
-
-        int index = 0;
-        for (int d = 0; d < originalDepth; d++) {
-            for (int h = 0; h < originalHeight; h++) {
-                for (int w = 0; w < originalWidth; w++) {
-                    unflatData[d][h][w] = gradData[0][0][index++];
-                }
-            }
-        }
-        return new Tensor(unflatData);
+    public int[] outputShape(int[] inputShape) {
+        return new int[]{1, 1, inputShape[0] * inputShape[1] * inputShape[2]};
     }
 
     @Override
-    public void updateParameters(float learningRate) {}
+    public Layer replicate() {
+        return new FlattenLayer();
+    }
 
 }
@@ -1,6 +1,10 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
 
 public class FullyConnectedLayer implements Layer {
 
@@ -21,28 +25,87 @@ public class FullyConnectedLayer implements Layer {
         layers[layerIndex] = new OutputLayer(layerSizes[layerIndex], layerSizes[layerIndex + 1]);
     }
 
+    private FullyConnectedLayer(int[] layerSizes, Layer[] layers) {
+        this.layerSizes = layerSizes;
+        this.layers = layers;
+    }
+
     @Override
-    public Tensor forward(Tensor input) {
+    public Tensor forwardBatch(Tensor input) {
         Tensor output = input;
         for (Layer layer : layers) {
-            output = layer.forward(output);
+            output = layer.forwardBatch(output);
         }
         return output;
     }
 
     @Override
-    public Tensor backward(Tensor gradientOutput) {
+    public Tensor inferBatch(Tensor input) {
+        Tensor output = input;
+        for (Layer layer : layers) {
+            output = layer.inferBatch(output);
+        }
+        return output;
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradientOutput) {
         Tensor grad = gradientOutput;
         for (int layerIndex = layers.length - 1; layerIndex >= 0; layerIndex--) {
-            grad = layers[layerIndex].backward(grad);
+            Tensor gradInput = layers[layerIndex].backwardBatch(grad);
+            if (layerIndex < layers.length - 1 && gradInput.getData() != grad.getData()) {
+                TensorArena.free(grad);
+            }
+            grad = gradInput;
         }
         return grad;
     }
 
     @Override
-    public void updateParameters(float learningRate) {
+    public int[] outputShape(int[] inputShape) {
+        int[] shape = inputShape;
+        for (Layer layer : layers) {
+            shape = layer.outputShape(shape);
+        }
+        return shape;
+    }
+
+    @Override
+    public Layer replicate() {
+        Layer[] replicas = new Layer[layers.length];
+        for (int layerIndex = 0; layerIndex < layers.length; layerIndex++) {
+            replicas[layerIndex] = layers[layerIndex].replicate();
+        }
+        return new FullyConnectedLayer(layerSizes, replicas);
+    }
+
+    @Override
+    public int getParameterCount() {
+        int count = 0;
+        for (Layer layer : layers) {
+            count += layer.getParameterCount();
+        }
+        return count;
+    }
+
+    @Override
+    public void bindParameters(ParameterStore store) {
+        for (Layer layer : layers) {
+            layer.bindParameters(store);
+        }
+    }
+
+    @Override
+    public void setActivationPrecision(Precision precision) {
+        for (Layer layer : layers) {
+            layer.setActivationPrecision(precision);
+        }
+    }
+
+    @Override
+    public void setExecutor(ComputeExecutor executor) {
         for (Layer layer : layers) {
-            layer.updateParameters(learningRate);
+            layer.setExecutor(executor);
         }
     }
 
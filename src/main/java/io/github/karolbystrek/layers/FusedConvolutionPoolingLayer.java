@@ -0,0 +1,296 @@
+package io.github.karolbystrek.layers;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.ScratchBuffer;
+import io.github.karolbystrek.compute.SequentialExecutor;
+import io.github.karolbystrek.convolution.ConvolutionEngine;
+import io.github.karolbystrek.convolution.ConvolutionGeometry;
+import io.github.karolbystrek.core.ActivationCache;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+
+public class FusedConvolutionPoolingLayer implements Layer {
+
+    private static final int MAX_WINDOW = 256;
+
+    private final ConvolutionalLayer convolution;
+    private final PoolingLayer pooling;
+    private final int poolSize;
+    private final int poolStride;
+
+    private final ScratchBuffer weightedInputBuffer = new ScratchBuffer();
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+    private ComputeExecutor executor = ForkJoinExecutor.common();
+
+    private final ActivationCache inputCache = new ActivationCache();
+    private final ActivationCache outputCache = new ActivationCache();
+    private byte[] lastArgmax = new byte[0];
+    private ConvolutionGeometry lastGeometry;
+    private volatile ConvolutionGeometry sampleGeometry;
+
+    public FusedConvolutionPoolingLayer(ConvolutionalLayer convolution, PoolingLayer pooling) {
+        if (pooling.getMode() != PoolingMode.MAX) {
+            throw new IllegalArgumentException("Only max pooling can be fused with a convolution");
+        }
+        if (pooling.getPoolSize() * pooling.getPoolSize() > MAX_WINDOW) {
+            throw new IllegalArgumentException("Pooling window of size " + pooling.getPoolSize() + " is too large to fuse");
+        }
+        this.convolution = convolution;
+        this.pooling = pooling;
+        this.poolSize = pooling.getPoolSize();
+        this.poolStride = pooling.getStride();
+    }
+
+    @Override
+    public Tensor forwardBatch(Tensor input) {
+        input = input.contiguous();
+        inputCache.store(input);
+
+        ConvolutionGeometry geometry = convolution.geometryFor(input);
+        this.lastGeometry = geometry;
+
+        Tensor output = TensorArena.allocate(geometry.batchSize(), geometry.numKernels(),
+                pooledSize(geometry.outputHeight()), pooledSize(geometry.outputWidth()));
+        if (lastArgmax.length < output.getSize()) {
+            lastArgmax = new byte[output.getSize()];
+        }
+
+        convolvePool(geometry, input, output, lastArgmax);
+        outputCache.store(output);
+        return output;
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        ConvolutionGeometry geometry = convolution.geometryFor(input);
+
+        Tensor output = new Tensor(geometry.batchSize(), geometry.numKernels(),
+                pooledSize(geometry.outputHeight()), pooledSize(geometry.outputWidth()));
+        convolvePool(geometry, input, output, null);
+        return output;
+    }
+
+    private void convolvePool(ConvolutionGeometry geometry, Tensor input, Tensor output, byte[] argmax) {
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.input = input.getData();
+        call.inputOffset = input.getOffset();
+        call.output = output.getData();
+        call.pooledSize = output.getSampleSize();
+        call.argmax = argmax;
+        int batchSize = geometry.batchSize();
+
+        if (batchSize < executor.getParallelism()) {
+            call.weightedInputs = weightedInputBuffer.get(batchSize * geometry.outputSize());
+            convolution.getEngine().forward(executor, geometry, call.input, call.inputOffset,
+                    convolution.getParameters(), convolution.getParametersOffset(), call.weightedInputs);
+            executor.forRange(batchSize, geometry.outputSize(), call.reluPoolSamples);
+            return;
+        }
+
+        call.sampleGeometry = sampleGeometryFor(geometry);
+        long cost = (long) geometry.outputSize() * geometry.patchSize();
+        executor.forRange(batchSize, cost, call.convolvePoolSamples);
+    }
+
+    private ConvolutionGeometry sampleGeometryFor(ConvolutionGeometry geometry) {
+        ConvolutionGeometry sample = sampleGeometry;
+        if (sample == null || !sample.sameShapeAs(geometry)) {
+            sample = geometry.withBatchSize(1);
+            sampleGeometry = sample;
+        }
+        return sample;
+    }
+
+    private void reluPool(ConvolutionGeometry geometry, float[] weightedInputs, int weightedInputOffset,
+                          float[] output, int outputOffset, byte[] argmax) {
+        int height = geometry.outputHeight();
+        int width = geometry.outputWidth();
+        int pooledHeight = pooledSize(height);
+        int pooledWidth = pooledSize(width);
+
+        int index = outputOffset;
+        for (int k = 0; k < geometry.numKernels(); k++) {
+            int plane = weightedInputOffset + k * height * width;
+            for (int outY = 0; outY < pooledHeight; outY++) {
+                for (int outX = 0; outX < pooledWidth; outX++) {
+                    float maxValue = Float.NEGATIVE_INFINITY;
+                    int maxPosition = 0;
+
+                    for (int pY = 0; pY < poolSize; pY++) {
+                        int row = plane + (outY * poolStride + pY) * width + outX * poolStride;
+                        for (int pX = 0; pX < poolSize; pX++) {
+                            float value = Math.max(0.0f, weightedInputs[row + pX]);
+                            if (value > maxValue) {
+                                maxValue = value;
+                                maxPosition = pY * poolSize + pX;
+                            }
+                        }
+                    }
+
+                    output[index] = maxValue;
+                    if (argmax != null) {
+                        argmax[index] = (byte) maxPosition;
+                    }
+                    index++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradOutput) {
+        gradOutput = gradOutput.contiguous();
+        ConvolutionGeometry geometry = lastGeometry;
+
+        Tensor lastOutput = outputCache.load();
+        int height = geometry.outputHeight();
+        int width = geometry.outputWidth();
+        int pooledHeight = lastOutput.getHeight();
+        int pooledWidth = lastOutput.getWidth();
+
+        Tensor deltaTensor = TensorArena.allocate(geometry.batchSize(), geometry.numKernels(), height, width);
+        float[] delta = deltaTensor.getData();
+
+        Call call = calls.get();
+        call.geometry = geometry;
+        call.gradOutput = gradOutput.getData();
+        call.gradOutputOffset = gradOutput.getOffset();
+        call.output = lastOutput.getData();
+        call.argmax = lastArgmax;
+        call.delta = delta;
+        call.pooledHeight = pooledHeight;
+        call.pooledWidth = pooledWidth;
+        executor.forRange(geometry.batchSize() * geometry.numKernels(), (long) pooledHeight * pooledWidth, call.unpoolPlanes);
+
+        outputCache.release(lastOutput);
+
+        Tensor lastInput = inputCache.load();
+        Tensor gradInput = TensorArena.allocate(geometry.batchSize(), geometry.inputDepth(), geometry.inputHeight(), geometry.inputWidth());
+        convolution.getEngine().backward(executor, geometry, lastInput.getData(), lastInput.getOffset(), delta,
+                convolution.getParameters(), convolution.getGradients(), convolution.getParametersOffset(), gradInput.getData());
+        TensorArena.free(deltaTensor);
+        inputCache.release(lastInput);
+
+        return gradInput;
+    }
+
+    private int pooledSize(int size) {
+        return (size - poolSize) / poolStride + 1;
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return pooling.outputShape(convolution.outputShape(inputShape));
+    }
+
+    @Override
+    public Layer replicate() {
+        FusedConvolutionPoolingLayer replica = new FusedConvolutionPoolingLayer(
+                (ConvolutionalLayer) convolution.replicate(), (PoolingLayer) pooling.replicate());
+        replica.setExecutor(executor);
+        replica.setActivationPrecision(inputCache.getPrecision());
+        return replica;
+    }
+
+    @Override
+    public int getParameterCount() {
+        return convolution.getParameterCount();
+    }
+
+    @Override
+    public void bindParameters(ParameterStore store) {
+        convolution.bindParameters(store);
+    }
+
+    @Override
+    public void parametersUpdated() {
+        convolution.parametersUpdated();
+    }
+
+    @Override
+    public void setActivationPrecision(Precision precision) {
+        inputCache.setPrecision(precision);
+        outputCache.setPrecision(precision);
+        convolution.setActivationPrecision(precision);
+    }
+
+    @Override
+    public void setExecutor(ComputeExecutor executor) {
+        this.executor = executor;
+        convolution.setExecutor(executor);
+        pooling.setExecutor(executor);
+    }
+
+    public ConvolutionalLayer getConvolutionalLayer() {
+        return convolution;
+    }
+
+    public PoolingLayer getPoolingLayer() {
+        return pooling;
+    }
+
+    private final class Call {
+
+        private ConvolutionGeometry geometry;
+        private ConvolutionGeometry sampleGeometry;
+        private float[] input;
+        private int inputOffset;
+        private float[] weightedInputs;
+        private float[] output;
+        private int pooledSize;
+        private byte[] argmax;
+        private float[] gradOutput;
+        private int gradOutputOffset;
+        private float[] delta;
+        private int pooledHeight;
+        private int pooledWidth;
+
+        private final ComputeExecutor.RangeTask reluPoolSamples = this::reluPoolSamples;
+        private final ComputeExecutor.RangeTask convolvePoolSamples = this::convolvePoolSamples;
+        private final ComputeExecutor.RangeTask unpoolPlanes = this::unpoolPlanes;
+
+        private void reluPoolSamples(int from, int to) {
+            for (int n = from; n < to; n++) {
+                reluPool(geometry, weightedInputs, n * geometry.outputSize(), output, n * pooledSize, argmax);
+            }
+        }
+
+        private void convolvePoolSamples(int from, int to) {
+            ConvolutionEngine engine = convolution.getEngine();
+            float[] parameters = convolution.getParameters();
+            int parametersOffset = convolution.getParametersOffset();
+            float[] sampleWeightedInputs = weightedInputBuffer.get(sampleGeometry.outputSize());
+            for (int n = from; n < to; n++) {
+                engine.forward(SequentialExecutor.INSTANCE, sampleGeometry, input, inputOffset + n * geometry.inputSize(),
+                        parameters, parametersOffset, sampleWeightedInputs);
+                reluPool(geometry, sampleWeightedInputs, 0, output, n * pooledSize, argmax);
+            }
+        }
+
+        private void unpoolPlanes(int from, int to) {
+            int height = geometry.outputHeight();
+            int width = geometry.outputWidth();
+            for (int plane = from; plane < to; plane++) {
+                int deltaPlane = plane * height * width;
+                int index = plane * pooledHeight * pooledWidth;
+
+                for (int outY = 0; outY < pooledHeight; outY++) {
+                    for (int outX = 0; outX < pooledWidth; outX++, index++) {
+                        if (output[index] <= 0.0f) {
+                            continue;
+                        }
+                        int position = argmax[index] & 0xFF;
+                        int inY = outY * poolStride + position / poolSize;
+                        int inX = outX * poolStride + position % poolSize;
+                        delta[deltaPlane + inY * width + inX] += gradOutput[gradOutputOffset + index];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,115 +1,167 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.ActivationCache;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
 
 public class HiddenLayer implements Layer {
 
     private final int numNodesIn;
     private final int numNodesOut;
 
-    private Tensor lastInput;
-    private final float[] lastWeightedInput;
+    private final ActivationCache inputCache = new ActivationCache();
+    private final ActivationCache weightedInputCache = new ActivationCache();
 
-    private float[][] weightsGradient;
-    private float[] biasesGradient;
-
-    private float[][] weights;
-    private float[] biases;
+    private float[] parameters;
+    private float[] gradients;
+    private int parametersOffset;
 
     public HiddenLayer(int numNodesIn, int numNodesOut) {
         this.numNodesIn = numNodesIn;
         this.numNodesOut = numNodesOut;
 
-        this.lastWeightedInput = new float[numNodesOut];
+        initializeParameters();
+    }
+
+    private HiddenLayer(HiddenLayer master) {
+        this.numNodesIn = master.numNodesIn;
+        this.numNodesOut = master.numNodesOut;
 
-        initializeWeights();
-        initializeBiases();
+        this.parameters = master.parameters;
+        this.gradients = new float[master.gradients.length];
+        this.parametersOffset = master.parametersOffset;
+        setActivationPrecision(master.inputCache.getPrecision());
     }
 
     @Override
-    public Tensor forward(Tensor input) {
+    public Tensor forwardBatch(Tensor input) {
+        input = input.contiguous();
+        inputCache.store(input);
+
+        Tensor weightedInput = TensorArena.allocate(input.getBatchSize(), 1, 1, numNodesOut);
+        Tensor output = TensorArena.allocate(input.getBatchSize(), 1, 1, numNodesOut);
+        propagate(input, weightedInput.getData(), output);
+        weightedInputCache.storeOwned(weightedInput);
+        return output;
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        return propagate(input, null, new Tensor(input.getBatchSize(), 1, 1, numNodesOut));
+    }
+
+    private Tensor propagate(Tensor input, float[] weightedInputs, Tensor output) {
         if (input.getWidth() != numNodesIn) {
             throw new IllegalArgumentException("Input width must be the number of input nodes");
         }
 
-        lastInput = input;
-        float[][][] inputData = input.getData();
+        float[] inputData = input.getData();
+        int inputOffset = input.getOffset();
+        int batchSize = input.getBatchSize();
 
-        float[][][] outputData = new float[1][1][numNodesOut];
+        float[] outputData = output.getData();
+        int biasesOffset = getBiasesOffset();
 
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            lastWeightedInput[nodeOut] = biases[nodeOut];
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                lastWeightedInput[nodeOut] += weights[nodeOut][nodeIn] * inputData[0][0][nodeIn];
+            int row = parametersOffset + nodeOut * numNodesIn;
+            for (int n = 0; n < batchSize; n++) {
+                int inputRow = inputOffset + n * numNodesIn;
+                float weightedInput = parameters[biasesOffset + nodeOut] + VectorMath.dot(parameters, row, inputData, inputRow, numNodesIn);
+
+                if (weightedInputs != null) {
+                    weightedInputs[n * numNodesOut + nodeOut] = weightedInput;
+                }
+                outputData[n * numNodesOut + nodeOut] = activation(weightedInput);
             }
-
-            outputData[0][0][nodeOut] = activation(lastWeightedInput[nodeOut]);
         }
 
-        return new Tensor(outputData);
+        return output;
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput) {
-        float[][][] gradOutputData = gradOutput.getData();
-        float[][][] lastInputData = lastInput.getData();
-
-        float[][][] gradInputData = new float[1][1][numNodesIn];
-
-        float[] delta = new float[numNodesOut];
+    public Tensor backwardBatch(Tensor gradOutput) {
+        gradOutput = gradOutput.contiguous();
+        float[] gradOutputData = gradOutput.getData();
+        int gradOutputOffset = gradOutput.getOffset();
+        Tensor lastInput = inputCache.load();
+        Tensor lastWeightedInput = weightedInputCache.load();
+        float[] lastInputData = lastInput.getData();
+        int lastInputOffset = lastInput.getOffset();
+        float[] lastWeightedInputData = lastWeightedInput.getData();
+        int batchSize = lastInput.getBatchSize();
+
+        Tensor gradInput = TensorArena.allocate(batchSize, 1, 1, numNodesIn);
+        float[] gradInputData = gradInput.getData();
+        int biasesOffset = getBiasesOffset();
 
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            float dActivation = (lastWeightedInput[nodeOut] > 0) ? 1.0f : 0.0f;
-            delta[nodeOut] = gradOutputData[0][0][nodeOut] * dActivation;
-            biasesGradient[nodeOut] += delta[nodeOut];
-
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                float inputValue = lastInputData[0][0][nodeIn];
-                weightsGradient[nodeOut][nodeIn] += delta[nodeOut] * inputValue;
-
-                gradInputData[0][0][nodeIn] += weights[nodeOut][nodeIn] * delta[nodeOut];
+            int row = parametersOffset + nodeOut * numNodesIn;
+
+            for (int n = 0; n < batchSize; n++) {
+                int outputIndex = n * numNodesOut + nodeOut;
+                float dActivation = (lastWeightedInputData[outputIndex] > 0) ? 1.0f : 0.0f;
+                float delta = gradOutputData[gradOutputOffset + outputIndex] * dActivation;
+                if (delta == 0.0f) {
+                    continue;
+                }
+                gradients[biasesOffset + nodeOut] += delta;
+
+                int inputRow = lastInputOffset + n * numNodesIn;
+                int gradInputRow = n * numNodesIn;
+                VectorMath.axpy(delta, lastInputData, inputRow, gradients, row, numNodesIn);
+                VectorMath.axpy(delta, parameters, row, gradInputData, gradInputRow, numNodesIn);
             }
         }
 
+        inputCache.release(lastInput);
+        weightedInputCache.release(lastWeightedInput);
 
-        return new Tensor(gradInputData);
+        return gradInput;
     }
 
     @Override
-    public void updateParameters(float learningRate) {
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            biases[nodeOut] -= learningRate * biasesGradient[nodeOut];
-            biasesGradient[nodeOut] = 0.0f;
-
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                weights[nodeOut][nodeIn] -= learningRate * weightsGradient[nodeOut][nodeIn];
-                weightsGradient[nodeOut][nodeIn] = 0.0f;
-            }
+    public int[] outputShape(int[] inputShape) {
+        if (inputShape[0] != 1 || inputShape[1] != 1 || inputShape[2] != numNodesIn) {
+            throw new IllegalArgumentException("Input of shape " + inputShape[0] + "x" + inputShape[1] + "x" + inputShape[2]
+                    + " is not a flat vector of " + numNodesIn + " nodes");
         }
+        return new int[]{1, 1, numNodesOut};
+    }
 
+    @Override
+    public Layer replicate() {
+        return new HiddenLayer(this);
     }
 
-    private void initializeWeights() {
-        weights = new float[numNodesOut][numNodesIn];
-        weightsGradient = new float[numNodesOut][numNodesIn];
+    @Override
+    public int getParameterCount() {
+        return numNodesOut * numNodesIn + numNodesOut;
+    }
 
-        float scale = (float) Math.sqrt(2.0f / numNodesIn);
+    @Override
+    public void bindParameters(ParameterStore store) {
+        this.parametersOffset = store.register(parameters, parametersOffset, getParameterCount());
+        this.parameters = store.getValues();
+        this.gradients = store.getGradients();
+    }
 
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                weights[nodeOut][nodeIn] = (float) ((Math.random() * 2 - 1) * scale);
-                weightsGradient[nodeOut][nodeIn] = 0.0f;
-            }
-        }
+    @Override
+    public void setActivationPrecision(Precision precision) {
+        inputCache.setPrecision(precision);
+        weightedInputCache.setPrecision(precision);
     }
 
-    private void initializeBiases() {
-        biases = new float[numNodesOut];
-        biasesGradient = new float[numNodesOut];
+    private void initializeParameters() {
+        parameters = new float[getParameterCount()];
+        gradients = new float[getParameterCount()];
 
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            biases[nodeOut] = 0.0f;
-            biasesGradient[nodeOut] = 0.0f;
+        float scale = (float) Math.sqrt(2.0f / numNodesIn);
+        for (int i = 0; i < numNodesOut * numNodesIn; i++) {
+            parameters[i] = (float) ((Math.random() * 2 - 1) * scale);
         }
     }
 
@@ -117,11 +169,23 @@ public class HiddenLayer implements Layer {
         return Math.max(0.0f, weightedInput);
     }
 
-    public float[][] getWeights() {
-        return weights;
+    public int getNumNodesIn() {
+        return numNodesIn;
+    }
+
+    public int getNumNodesOut() {
+        return numNodesOut;
+    }
+
+    public float[] getParameters() {
+        return parameters;
+    }
+
+    public int getWeightsOffset() {
+        return parametersOffset;
     }
 
-    public float[] getBiases() {
-        return biases;
+    public int getBiasesOffset() {
+        return parametersOffset + numNodesOut * numNodesIn;
     }
 }
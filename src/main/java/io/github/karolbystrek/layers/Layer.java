@@ -1,12 +1,46 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
 
 public interface Layer {
 
-    Tensor forward(Tensor input);
+    default Tensor forward(Tensor input) {
+        Tensor output = forwardBatch(input.asBatch());
+        return input.getRank() == 4 ? output : output.sample(0);
+    }
 
-    Tensor backward(Tensor gradientOutput);
+    default Tensor backward(Tensor gradientOutput) {
+        Tensor gradientInput = backwardBatch(gradientOutput.asBatch());
+        return gradientOutput.getRank() == 4 ? gradientInput : gradientInput.sample(0);
+    }
 
-    void updateParameters(float learningRate);
+    default Tensor infer(Tensor input) {
+        Tensor output = inferBatch(input.asBatch());
+        return input.getRank() == 4 ? output : output.sample(0);
+    }
+
+    Tensor forwardBatch(Tensor input);
+
+    Tensor inferBatch(Tensor input);
+
+    Tensor backwardBatch(Tensor gradientOutput);
+
+    Layer replicate();
+
+    int[] outputShape(int[] inputShape);
+
+    default int getParameterCount() {
+        return 0;
+    }
+
+    default void bindParameters(ParameterStore store) {}
+
+    default void parametersUpdated() {}
+
+    default void setActivationPrecision(Precision precision) {}
+
+    default void setExecutor(ComputeExecutor executor) {}
 }
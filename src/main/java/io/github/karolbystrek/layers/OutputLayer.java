@@ -1,134 +1,194 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.ActivationCache;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
 
 public class OutputLayer implements Layer {
 
     private final int numNodesIn;
     private final int numNodesOut;
 
-    private Tensor lastInput;
-    private final float[] lastWeightedInput;
+    private final ActivationCache inputCache = new ActivationCache();
 
-    private float[][] weightsGradient;
-    private float[] biasesGradient;
-
-    private float[][] weights;
-    private float[] biases;
+    private float[] parameters;
+    private float[] gradients;
+    private int parametersOffset;
 
     public OutputLayer(int numNodesIn, int numNodesOut) {
         this.numNodesIn = numNodesIn;
         this.numNodesOut = numNodesOut;
 
-        this.lastWeightedInput = new float[numNodesOut];
+        initializeParameters();
+    }
+
+    private OutputLayer(OutputLayer master) {
+        this.numNodesIn = master.numNodesIn;
+        this.numNodesOut = master.numNodesOut;
 
-        initializeWeights();
-        initializeBiases();
+        this.parameters = master.parameters;
+        this.gradients = new float[master.gradients.length];
+        this.parametersOffset = master.parametersOffset;
+        setActivationPrecision(master.inputCache.getPrecision());
+    }
+
+    @Override
+    public Tensor forwardBatch(Tensor input) {
+        input = input.contiguous();
+        inputCache.store(input);
+        return propagate(input, TensorArena.allocate(input.getBatchSize(), 1, 1, numNodesOut));
     }
 
     @Override
-    public Tensor forward(Tensor input) {
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        return propagate(input, new Tensor(input.getBatchSize(), 1, 1, numNodesOut));
+    }
+
+    private Tensor propagate(Tensor input, Tensor output) {
         if (input.getWidth() != numNodesIn) {
             throw new IllegalArgumentException("Input width must be the number of input nodes");
         }
 
-        lastInput = input;
-        float[][][] inputData = input.getData();
-        float[][][] outputData = new float[1][1][numNodesOut];
+        float[] inputData = input.getData();
+        int inputOffset = input.getOffset();
+        int batchSize = input.getBatchSize();
+
+        float[] outputData = output.getData();
+        int biasesOffset = getBiasesOffset();
 
-        float maxLogit = Float.NEGATIVE_INFINITY;
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            lastWeightedInput[nodeOut] = biases[nodeOut];
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                lastWeightedInput[nodeOut] += weights[nodeOut][nodeIn] * inputData[0][0][nodeIn];
+            int row = parametersOffset + nodeOut * numNodesIn;
+            for (int n = 0; n < batchSize; n++) {
+                int inputRow = inputOffset + n * numNodesIn;
+                outputData[n * numNodesOut + nodeOut] = parameters[biasesOffset + nodeOut] + VectorMath.dot(parameters, row, inputData, inputRow, numNodesIn);
             }
+        }
 
-            if (lastWeightedInput[nodeOut] > maxLogit) {
-                maxLogit = lastWeightedInput[nodeOut];
+        for (int n = 0; n < batchSize; n++) {
+            softmax(outputData, n * numNodesOut);
+        }
+
+        return output;
+    }
+
+    private void softmax(float[] logits, int offset) {
+        float maxLogit = Float.NEGATIVE_INFINITY;
+        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+            if (logits[offset + nodeOut] > maxLogit) {
+                maxLogit = logits[offset + nodeOut];
             }
         }
 
         float sumExp = 0.0f;
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            float value = (float) Math.exp(lastWeightedInput[nodeOut] - maxLogit);
-            outputData[0][0][nodeOut] = value;
+            float value = (float) Math.exp(logits[offset + nodeOut] - maxLogit);
+            logits[offset + nodeOut] = value;
             sumExp += value;
         }
 
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            float value = outputData[0][0][nodeOut];
-            value /= sumExp;
-            outputData[0][0][nodeOut] = value;
+            logits[offset + nodeOut] /= sumExp;
         }
-
-        return new Tensor(outputData);
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput) {
-        float[][][] gradOutputData = gradOutput.getData();
-        float[][][] lastInputData = lastInput.getData();
-
-        float[][][] gradInputData = new float[1][1][numNodesIn];
-
-        float[] delta = new float[numNodesOut];
+    public Tensor backwardBatch(Tensor gradOutput) {
+        gradOutput = gradOutput.contiguous();
+        float[] gradOutputData = gradOutput.getData();
+        int gradOutputOffset = gradOutput.getOffset();
+        Tensor lastInput = inputCache.load();
+        float[] lastInputData = lastInput.getData();
+        int lastInputOffset = lastInput.getOffset();
+        int batchSize = lastInput.getBatchSize();
+
+        Tensor gradInput = TensorArena.allocate(batchSize, 1, 1, numNodesIn);
+        float[] gradInputData = gradInput.getData();
+        int biasesOffset = getBiasesOffset();
 
         for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            delta[nodeOut] = gradOutputData[0][0][nodeOut];
-            biasesGradient[nodeOut] += delta[nodeOut];
+            int row = parametersOffset + nodeOut * numNodesIn;
+
+            for (int n = 0; n < batchSize; n++) {
+                float delta = gradOutputData[gradOutputOffset + n * numNodesOut + nodeOut];
+                if (delta == 0.0f) {
+                    continue;
+                }
+                gradients[biasesOffset + nodeOut] += delta;
+
+                int inputRow = lastInputOffset + n * numNodesIn;
+                int gradInputRow = n * numNodesIn;
+                VectorMath.axpy(delta, lastInputData, inputRow, gradients, row, numNodesIn);
+                VectorMath.axpy(delta, parameters, row, gradInputData, gradInputRow, numNodesIn);
+            }
+        }
 
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                float inputValue = lastInputData[0][0][nodeIn];
-                weightsGradient[nodeOut][nodeIn] += delta[nodeOut] * inputValue;
+        inputCache.release(lastInput);
 
-                gradInputData[0][0][nodeIn] += weights[nodeOut][nodeIn] * delta[nodeOut];
-            }
+        return gradInput;
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        if (inputShape[0] != 1 || inputShape[1] != 1 || inputShape[2] != numNodesIn) {
+            throw new IllegalArgumentException("Input of shape " + inputShape[0] + "x" + inputShape[1] + "x" + inputShape[2]
+                    + " is not a flat vector of " + numNodesIn + " nodes");
         }
+        return new int[]{1, 1, numNodesOut};
+    }
 
-        return new Tensor(gradInputData);
+    @Override
+    public Layer replicate() {
+        return new OutputLayer(this);
     }
 
     @Override
-    public void updateParameters(float learningRate) {
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            biases[nodeOut] -= learningRate * biasesGradient[nodeOut];
-            biasesGradient[nodeOut] = 0.0f;
+    public int getParameterCount() {
+        return numNodesOut * numNodesIn + numNodesOut;
+    }
 
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                weights[nodeOut][nodeIn] -= learningRate * weightsGradient[nodeOut][nodeIn];
-                weightsGradient[nodeOut][nodeIn] = 0.0f;
-            }
-        }
+    @Override
+    public void bindParameters(ParameterStore store) {
+        this.parametersOffset = store.register(parameters, parametersOffset, getParameterCount());
+        this.parameters = store.getValues();
+        this.gradients = store.getGradients();
     }
 
-    private void initializeWeights() {
-        weights = new float[numNodesOut][numNodesIn];
-        weightsGradient = new float[numNodesOut][numNodesIn];
+    @Override
+    public void setActivationPrecision(Precision precision) {
+        inputCache.setPrecision(precision);
+    }
+
+    private void initializeParameters() {
+        parameters = new float[getParameterCount()];
+        gradients = new float[getParameterCount()];
 
         float limit = (float) Math.sqrt(1.0 / numNodesIn);
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
-                weights[nodeOut][nodeIn] = (float) ((Math.random() * 2 - 1) * limit);
-                weightsGradient[nodeOut][nodeIn] = 0.0f;
-            }
+        for (int i = 0; i < numNodesOut * numNodesIn; i++) {
+            parameters[i] = (float) ((Math.random() * 2 - 1) * limit);
         }
     }
 
-    private void initializeBiases() {
-        biases = new float[numNodesOut];
-        biasesGradient = new float[numNodesOut];
+    public int getNumNodesIn() {
+        return numNodesIn;
+    }
 
-        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
-            biases[nodeOut] = 0.0f;
-            biasesGradient[nodeOut] = 0.0f;
-        }
+    public int getNumNodesOut() {
+        return numNodesOut;
+    }
+
+    public float[] getParameters() {
+        return parameters;
     }
 
-    public float[][] getWeights() {
-        return weights;
+    public int getWeightsOffset() {
+        return parametersOffset;
     }
 
-    public float[] getBiases() {
-        return biases;
+    public int getBiasesOffset() {
+        return parametersOffset + numNodesOut * numNodesIn;
     }
 }
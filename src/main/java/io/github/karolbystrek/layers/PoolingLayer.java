@@ -1,114 +1,340 @@
 package io.github.karolbystrek.layers;
 
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
 import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
 
-import java.util.stream.IntStream;
+public class PoolingLayer implements Layer {
 
-public class PoolingLayer implements Layer{
+    private static final int MAX_WINDOW = 256;
 
+    private final PoolingMode mode;
     private final int poolSize;
     private final int stride;
 
-    private Tensor lastInput;
+    private final ThreadLocal<Call> calls = ThreadLocal.withInitial(Call::new);
+
+    private ComputeExecutor executor = ForkJoinExecutor.common();
+
+    private byte[] lastArgmax = new byte[0];
+    private int lastBatchSize;
+    private int lastDepth;
+    private int lastInputHeight;
+    private int lastInputWidth;
 
     public PoolingLayer(int poolSize, int stride) {
+        this(PoolingMode.MAX, poolSize, stride);
+    }
+
+    public PoolingLayer(PoolingMode mode, int poolSize, int stride) {
+        if (mode == PoolingMode.GLOBAL_AVERAGE) {
+            if (poolSize != 0 || stride != 0) {
+                throw new IllegalArgumentException("Global average pooling takes no pool size or stride");
+            }
+        } else if (poolSize < 1 || stride < 1) {
+            throw new IllegalArgumentException("Pool size and stride must be positive");
+        } else if (mode == PoolingMode.MAX && poolSize * poolSize > MAX_WINDOW) {
+            throw new IllegalArgumentException("Max pooling window of size " + poolSize + " is too large");
+        }
+        this.mode = mode;
         this.poolSize = poolSize;
         this.stride = stride;
     }
 
+    public static PoolingLayer globalAverage() {
+        return new PoolingLayer(PoolingMode.GLOBAL_AVERAGE, 0, 0);
+    }
+
     @Override
-    public Tensor forward(Tensor input) {
-        this.lastInput = input;
-        float[][][] inputData = input.getData();
+    public Tensor forwardBatch(Tensor input) {
+        input = input.contiguous();
+        this.lastBatchSize = input.getBatchSize();
+        this.lastDepth = input.getDepth();
+        this.lastInputHeight = input.getHeight();
+        this.lastInputWidth = input.getWidth();
 
-        int depth = input.getDepth();
-        int inputHeight = input.getHeight();
-        int inputWidth = input.getWidth();
+        Tensor output = TensorArena.allocate(input.getBatchSize(), input.getDepth(),
+                outputHeight(input.getHeight()), outputWidth(input.getWidth()));
+        if (mode == PoolingMode.MAX && lastArgmax.length < output.getSize()) {
+            lastArgmax = new byte[output.getSize()];
+        }
+        pool(input, output, lastArgmax);
+        return output;
+    }
 
-        int outputHeight = (inputHeight - poolSize) / stride + 1;
-        int outputWidth = (inputWidth - poolSize) / stride + 1;
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
 
-        float[][][] outputData = new float[depth][outputHeight][outputWidth];
+        Tensor output = new Tensor(input.getBatchSize(), input.getDepth(),
+                outputHeight(input.getHeight()), outputWidth(input.getWidth()));
+        pool(input, output, null);
+        return output;
+    }
 
-        IntStream.range(0, depth).parallel().forEach(d -> {
-            for (int outY = 0; outY < outputHeight; outY++) {
-                for (int outX = 0; outX < outputWidth; outX++) {
-                    float maxVal = Float.NEGATIVE_INFINITY;
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        int outputHeight = outputHeight(inputShape[1]);
+        int outputWidth = outputWidth(inputShape[2]);
+        if (outputHeight < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("Pool of size " + poolSize + " does not fit input of size "
+                    + inputShape[1] + "x" + inputShape[2]);
+        }
+        return new int[]{inputShape[0], outputHeight, outputWidth};
+    }
 
-                    for (int pY = 0; pY < poolSize; pY++) {
-                        for (int pX = 0; pX < poolSize; pX++) {
-                            int inY = outY * stride + pY;
-                            int inX = outX * stride + pX;
-
-                            if (inY < inputHeight && inX < inputWidth) {
-                                float value = inputData[d][inY][inX];
-                                if (value > maxVal) {
-                                    maxVal = value;
-                                }
-                            }
-                        }
-                    }
+    private int outputHeight(int inputHeight) {
+        return mode == PoolingMode.GLOBAL_AVERAGE ? 1 : (inputHeight - poolSize) / stride + 1;
+    }
 
-                    outputData[d][outY][outX] = maxVal;
-                }
-            }
-        });
+    private int outputWidth(int inputWidth) {
+        return mode == PoolingMode.GLOBAL_AVERAGE ? 1 : (inputWidth - poolSize) / stride + 1;
+    }
 
-        return new Tensor(outputData);
+    private void pool(Tensor input, Tensor output, byte[] argmax) {
+        switch (mode) {
+            case MAX -> maxPool(input, output, argmax);
+            case AVERAGE -> averagePool(input, output);
+            case GLOBAL_AVERAGE -> globalAveragePool(input, output);
+        }
+    }
+
+    private void maxPool(Tensor input, Tensor output, byte[] argmax) {
+        Call call = calls.get().forward(input, output);
+        call.argmax = argmax;
+        int rows = input.getBatchSize() * input.getDepth() * output.getHeight();
+        executor.forRange(rows, (long) output.getWidth() * poolSize * poolSize, call.maxPoolRows);
+    }
+
+    private void averagePool(Tensor input, Tensor output) {
+        Call call = calls.get().forward(input, output);
+        call.scale = 1.0f / (poolSize * poolSize);
+        int rows = input.getBatchSize() * input.getDepth() * output.getHeight();
+        executor.forRange(rows, (long) output.getWidth() * poolSize * poolSize, call.averagePoolRows);
+    }
+
+    private void globalAveragePool(Tensor input, Tensor output) {
+        Call call = calls.get().forward(input, output);
+        int planeSize = input.getHeight() * input.getWidth();
+        call.scale = 1.0f / planeSize;
+        executor.forRange(input.getBatchSize() * input.getDepth(), planeSize, call.globalAveragePlanes);
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput) {
-        int depth = lastInput.getDepth();
-        int inputHeight = lastInput.getHeight();
-        int inputWidth = lastInput.getWidth();
+    public Tensor backwardBatch(Tensor gradOutput) {
+        gradOutput = gradOutput.contiguous();
+        Tensor gradInput = TensorArena.allocate(lastBatchSize, lastDepth, lastInputHeight, lastInputWidth);
+
+        switch (mode) {
+            case MAX -> maxUnpool(gradOutput, gradInput);
+            case AVERAGE -> averageUnpool(gradOutput, gradInput);
+            case GLOBAL_AVERAGE -> globalAverageUnpool(gradOutput, gradInput);
+        }
+        return gradInput;
+    }
+
+    private void maxUnpool(Tensor gradOutput, Tensor gradInput) {
+        Call call = calls.get().backward(gradOutput, gradInput);
+        call.argmax = lastArgmax;
+        int items = lastBatchSize * lastDepth * (gradOutput.getHeight() / call.rowsPerItem);
+        executor.forRange(items, (long) call.rowsPerItem * gradOutput.getWidth(), call.maxUnpoolItems);
+    }
+
+    private void averageUnpool(Tensor gradOutput, Tensor gradInput) {
+        Call call = calls.get().backward(gradOutput, gradInput);
+        call.scale = 1.0f / (poolSize * poolSize);
+        int items = lastBatchSize * lastDepth * (gradOutput.getHeight() / call.rowsPerItem);
+        executor.forRange(items, (long) call.rowsPerItem * gradOutput.getWidth() * poolSize * poolSize, call.averageUnpoolItems);
+    }
+
+    private void globalAverageUnpool(Tensor gradOutput, Tensor gradInput) {
+        Call call = calls.get().backward(gradOutput, gradInput);
+        int planeSize = lastInputHeight * lastInputWidth;
+        call.scale = 1.0f / planeSize;
+        executor.forRange(lastBatchSize * lastDepth, planeSize, call.globalAverageUnpoolPlanes);
+    }
+
+    @Override
+    public Layer replicate() {
+        PoolingLayer replica = new PoolingLayer(mode, poolSize, stride);
+        replica.executor = executor;
+        return replica;
+    }
+
+    @Override
+    public void setExecutor(ComputeExecutor executor) {
+        this.executor = executor;
+    }
+
+    public PoolingMode getMode() {
+        return mode;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    private final class Call {
+
+        private float[] inputData;
+        private int inputOffset;
+        private int inputHeight;
+        private int inputWidth;
+        private float[] outputData;
+        private int outputOffset;
+        private int outputHeight;
+        private int outputWidth;
+        private byte[] argmax;
+        private float scale;
+        private int rowsPerItem;
 
-        int outputHeight = gradOutput.getHeight();
-        int outputWidth = gradOutput.getWidth();
+        private final ComputeExecutor.RangeTask maxPoolRows = this::maxPoolRows;
+        private final ComputeExecutor.RangeTask averagePoolRows = this::averagePoolRows;
+        private final ComputeExecutor.RangeTask globalAveragePlanes = this::globalAveragePlanes;
+        private final ComputeExecutor.RangeTask maxUnpoolItems = this::maxUnpoolItems;
+        private final ComputeExecutor.RangeTask averageUnpoolItems = this::averageUnpoolItems;
+        private final ComputeExecutor.RangeTask globalAverageUnpoolPlanes = this::globalAverageUnpoolPlanes;
 
-        float[][][] gradOutputData = gradOutput.getData();
-        float[][][] lastInputData = lastInput.getData();
+        private Call forward(Tensor input, Tensor output) {
+            inputData = input.getData();
+            inputOffset = input.getOffset();
+            inputHeight = input.getHeight();
+            inputWidth = input.getWidth();
+            outputData = output.getData();
+            outputOffset = output.getOffset();
+            outputHeight = output.getHeight();
+            outputWidth = output.getWidth();
+            return this;
+        }
 
-        float[][][] gradInputData = new float[depth][inputHeight][inputWidth];
+        private Call backward(Tensor gradOutput, Tensor gradInput) {
+            inputData = gradInput.getData();
+            inputOffset = gradInput.getOffset();
+            inputHeight = lastInputHeight;
+            inputWidth = lastInputWidth;
+            outputData = gradOutput.getData();
+            outputOffset = gradOutput.getOffset();
+            outputHeight = gradOutput.getHeight();
+            outputWidth = gradOutput.getWidth();
+            rowsPerItem = stride >= poolSize ? 1 : outputHeight;
+            return this;
+        }
 
-        IntStream.range(0, depth).parallel().forEach(d -> {
-            for (int outY = 0; outY < outputHeight; outY++) {
-                for (int outX = 0; outX < outputWidth; outX++) {
+        private void maxPoolRows(int from, int to) {
+            for (int row = from; row < to; row++) {
+                int plane = row / outputHeight;
+                int outY = row % outputHeight;
+                int inputPlane = inputOffset + plane * inputHeight * inputWidth;
+                int outputIndex = row * outputWidth;
+
+                for (int outX = 0; outX < outputWidth; outX++, outputIndex++) {
                     float maxValue = Float.NEGATIVE_INFINITY;
-                    int maxInY = -1, maxInX = -1;
+                    int maxPosition = 0;
 
                     for (int pY = 0; pY < poolSize; pY++) {
+                        int inputRow = inputPlane + (outY * stride + pY) * inputWidth + outX * stride;
                         for (int pX = 0; pX < poolSize; pX++) {
-                            int inY = outY * stride + pY;
-                            int inX = outX * stride + pX;
-
-                            if (inY < inputHeight && inX < inputWidth) {
-                                float value = lastInputData[d][inY][inX];
-                                if (value > maxValue) {
-                                    maxValue = value;
-                                    maxInY = inY;
-                                    maxInX = inX;
-                                }
+                            float value = inputData[inputRow + pX];
+                            if (value > maxValue) {
+                                maxValue = value;
+                                maxPosition = pY * poolSize + pX;
                             }
                         }
                     }
 
-                    gradInputData[d][maxInY][maxInX] += gradOutputData[d][outY][outX];
+                    outputData[outputOffset + outputIndex] = maxValue;
+                    if (argmax != null) {
+                        argmax[outputIndex] = (byte) maxPosition;
+                    }
                 }
             }
-        });
+        }
 
-        return new Tensor(gradInputData);
-    }
+        private void averagePoolRows(int from, int to) {
+            for (int row = from; row < to; row++) {
+                int plane = row / outputHeight;
+                int outY = row % outputHeight;
+                int inputPlane = inputOffset + plane * inputHeight * inputWidth;
+                int outputIndex = row * outputWidth;
 
-    @Override
-    public void updateParameters(float learningRate) {}
+                for (int outX = 0; outX < outputWidth; outX++, outputIndex++) {
+                    float sum = 0.0f;
+                    for (int pY = 0; pY < poolSize; pY++) {
+                        int inputRow = inputPlane + (outY * stride + pY) * inputWidth + outX * stride;
+                        for (int pX = 0; pX < poolSize; pX++) {
+                            sum += inputData[inputRow + pX];
+                        }
+                    }
+                    outputData[outputOffset + outputIndex] = sum * scale;
+                }
+            }
+        }
 
-    public int getPoolSize() {
-        return poolSize;
-    }
+        private void globalAveragePlanes(int from, int to) {
+            int planeSize = inputHeight * inputWidth;
+            for (int plane = from; plane < to; plane++) {
+                int inputPlane = inputOffset + plane * planeSize;
+                float sum = 0.0f;
+                for (int i = 0; i < planeSize; i++) {
+                    sum += inputData[inputPlane + i];
+                }
+                outputData[outputOffset + plane] = sum * scale;
+            }
+        }
 
-    public int getStride() {
-        return stride;
+        private void maxUnpoolItems(int from, int to) {
+            for (int item = from; item < to; item++) {
+                int plane = item * rowsPerItem / outputHeight;
+                int firstRow = item * rowsPerItem % outputHeight;
+                int inputPlane = inputOffset + plane * inputHeight * inputWidth;
+                int outputIndex = (plane * outputHeight + firstRow) * outputWidth;
+
+                for (int outY = firstRow; outY < firstRow + rowsPerItem; outY++) {
+                    for (int outX = 0; outX < outputWidth; outX++, outputIndex++) {
+                        int position = argmax[outputIndex] & 0xFF;
+                        int inY = outY * stride + position / poolSize;
+                        int inX = outX * stride + position % poolSize;
+                        inputData[inputPlane + inY * inputWidth + inX] += outputData[outputOffset + outputIndex];
+                    }
+                }
+            }
+        }
+
+        private void averageUnpoolItems(int from, int to) {
+            for (int item = from; item < to; item++) {
+                int plane = item * rowsPerItem / outputHeight;
+                int firstRow = item * rowsPerItem % outputHeight;
+                int inputPlane = inputOffset + plane * inputHeight * inputWidth;
+                int outputIndex = (plane * outputHeight + firstRow) * outputWidth;
+
+                for (int outY = firstRow; outY < firstRow + rowsPerItem; outY++) {
+                    for (int outX = 0; outX < outputWidth; outX++, outputIndex++) {
+                        float gradient = outputData[outputOffset + outputIndex] * scale;
+                        for (int pY = 0; pY < poolSize; pY++) {
+                            int inputRow = inputPlane + (outY * stride + pY) * inputWidth + outX * stride;
+                            for (int pX = 0; pX < poolSize; pX++) {
+                                inputData[inputRow + pX] += gradient;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void globalAverageUnpoolPlanes(int from, int to) {
+            int planeSize = inputHeight * inputWidth;
+            for (int plane = from; plane < to; plane++) {
+                float gradient = outputData[outputOffset + plane] * scale;
+                int inputPlane = inputOffset + plane * planeSize;
+                for (int i = 0; i < planeSize; i++) {
+                    inputData[inputPlane + i] = gradient;
+                }
+            }
+        }
     }
 }
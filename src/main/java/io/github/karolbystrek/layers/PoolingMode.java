@@ -0,0 +1,7 @@
+package io.github.karolbystrek.layers;
+
+public enum PoolingMode {
+    MAX,
+    AVERAGE,
+    GLOBAL_AVERAGE
+}
@@ -0,0 +1,38 @@
+package io.github.karolbystrek.layers;
+
+import io.github.karolbystrek.core.Tensor;
+
+final class ViewCache {
+
+    private Tensor source;
+    private Tensor view;
+    private Tensor previousSource;
+    private Tensor previousView;
+
+    Tensor reshape(Tensor tensor, int batchSize, int depth, int height, int width) {
+        if (!tensor.isContiguous()) {
+            return tensor.reshape(batchSize, depth, height, width);
+        }
+        if (tensor == source && view.hasShape(batchSize, depth, height, width)) {
+            return view;
+        }
+        if (tensor == previousSource && previousView.hasShape(batchSize, depth, height, width)) {
+            swap();
+            return view;
+        }
+        previousSource = source;
+        previousView = view;
+        source = tensor;
+        view = tensor.reshape(batchSize, depth, height, width);
+        return view;
+    }
+
+    private void swap() {
+        Tensor swappedSource = source;
+        Tensor swappedView = view;
+        source = previousSource;
+        view = previousView;
+        previousSource = swappedSource;
+        previousView = swappedView;
+    }
+}
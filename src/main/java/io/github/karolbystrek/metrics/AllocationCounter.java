@@ -0,0 +1,34 @@
+package io.github.karolbystrek.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+final class AllocationCounter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private AllocationCounter() {
+    }
+
+    static boolean enable() {
+        if (THREADS == null) {
+            return false;
+        }
+        if (!THREADS.isThreadAllocatedMemoryEnabled()) {
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+        return true;
+    }
+
+    static long currentThreadBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0L;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean sunThreads) || !sunThreads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        return sunThreads;
+    }
+}
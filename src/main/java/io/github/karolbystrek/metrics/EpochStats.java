@@ -0,0 +1,12 @@
+package io.github.karolbystrek.metrics;
+
+public record EpochStats(int epoch, int samples, float averageCost, long elapsedNanos) {
+
+    public double elapsedSeconds() {
+        return elapsedNanos / 1.0e9;
+    }
+
+    public double samplesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : samples * 1.0e9 / elapsedNanos;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.karolbystrek.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class LayerMetrics implements LayerMetricsMXBean {
+
+    private static final int PHASES = Phase.values().length;
+
+    private final int index;
+    private final String layerType;
+    private final LongAdder[] counts = adders();
+    private final LongAdder[] nanos = adders();
+    private final LongAdder[] allocatedBytes = adders();
+
+    LayerMetrics(int index, String layerType) {
+        this.index = index;
+        this.layerType = layerType;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[PHASES];
+        for (int phase = 0; phase < PHASES; phase++) {
+            adders[phase] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public void record(Phase phase, long elapsedNanos, long bytes) {
+        int ordinal = phase.ordinal();
+        counts[ordinal].increment();
+        nanos[ordinal].add(elapsedNanos);
+        allocatedBytes[ordinal].add(bytes);
+    }
+
+    public long getCount(Phase phase) {
+        return counts[phase.ordinal()].sum();
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    public long getAllocatedBytes(Phase phase) {
+        return allocatedBytes[phase.ordinal()].sum();
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (Phase phase : Phase.values()) {
+            total += getNanos(phase);
+        }
+        return total;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String getLayerType() {
+        return layerType;
+    }
+
+    @Override
+    public long getForwardCount() {
+        return getCount(Phase.FORWARD);
+    }
+
+    @Override
+    public long getForwardNanos() {
+        return getNanos(Phase.FORWARD);
+    }
+
+    @Override
+    public long getForwardAllocatedBytes() {
+        return getAllocatedBytes(Phase.FORWARD);
+    }
+
+    @Override
+    public long getBackwardCount() {
+        return getCount(Phase.BACKWARD);
+    }
+
+    @Override
+    public long getBackwardNanos() {
+        return getNanos(Phase.BACKWARD);
+    }
+
+    @Override
+    public long getBackwardAllocatedBytes() {
+        return getAllocatedBytes(Phase.BACKWARD);
+    }
+
+    @Override
+    public long getRecomputeCount() {
+        return getCount(Phase.RECOMPUTE);
+    }
+
+    @Override
+    public long getRecomputeNanos() {
+        return getNanos(Phase.RECOMPUTE);
+    }
+
+    @Override
+    public long getRecomputeAllocatedBytes() {
+        return getAllocatedBytes(Phase.RECOMPUTE);
+    }
+
+    @Override
+    public long getUpdateCount() {
+        return getCount(Phase.UPDATE);
+    }
+
+    @Override
+    public long getUpdateNanos() {
+        return getNanos(Phase.UPDATE);
+    }
+
+    @Override
+    public long getUpdateAllocatedBytes() {
+        return getAllocatedBytes(Phase.UPDATE);
+    }
+
+    @Override
+    public void reset() {
+        for (int phase = 0; phase < PHASES; phase++) {
+            counts[phase].reset();
+            nanos[phase].reset();
+            allocatedBytes[phase].reset();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.karolbystrek.metrics;
+
+public interface LayerMetricsMXBean {
+
+    int getIndex();
+
+    String getLayerType();
+
+    long getForwardCount();
+
+    long getForwardNanos();
+
+    long getForwardAllocatedBytes();
+
+    long getBackwardCount();
+
+    long getBackwardNanos();
+
+    long getBackwardAllocatedBytes();
+
+    long getRecomputeCount();
+
+    long getRecomputeNanos();
+
+    long getRecomputeAllocatedBytes();
+
+    long getUpdateCount();
+
+    long getUpdateNanos();
+
+    long getUpdateAllocatedBytes();
+
+    void reset();
+}
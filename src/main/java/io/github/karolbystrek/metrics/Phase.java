@@ -0,0 +1,8 @@
+package io.github.karolbystrek.metrics;
+
+public enum Phase {
+    FORWARD,
+    BACKWARD,
+    RECOMPUTE,
+    UPDATE
+}
@@ -0,0 +1,10 @@
+package io.github.karolbystrek.metrics;
+
+public interface TrainingListener {
+
+    default void onEpochStart(int epoch) {}
+
+    default void onBatchEnd(int batchSize, float averageCost, long elapsedNanos) {}
+
+    default void onEpochEnd(EpochStats stats) {}
+}
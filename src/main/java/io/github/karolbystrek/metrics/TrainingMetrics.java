@@ -0,0 +1,232 @@
+package io.github.karolbystrek.metrics;
+
+import io.github.karolbystrek.layers.Layer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TrainingMetrics implements TrainingMetricsMXBean, TrainingListener {
+
+    private static final String DOMAIN = "io.github.karolbystrek";
+
+    private final boolean trackAllocations;
+    private final LayerMetrics optimizer = new LayerMetrics(-1, "Optimizer");
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+
+    private volatile List<LayerMetrics> layers = List.of();
+    private volatile long epochs;
+    private volatile long epochNanos;
+    private volatile long lastEpochNanos;
+    private volatile float lastEpochCost;
+
+    private String name;
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    public TrainingMetrics() {
+        this(true);
+    }
+
+    public TrainingMetrics(boolean trackAllocations) {
+        this.trackAllocations = trackAllocations && AllocationCounter.enable();
+    }
+
+    public long allocatedBytes() {
+        return trackAllocations ? AllocationCounter.currentThreadBytes() : 0L;
+    }
+
+    public synchronized void bind(List<? extends Layer> networkLayers) {
+        List<LayerMetrics> bound = new ArrayList<>(networkLayers.size());
+        for (int i = 0; i < networkLayers.size(); i++) {
+            bound.add(new LayerMetrics(i, networkLayers.get(i).getClass().getSimpleName()));
+        }
+        this.layers = List.copyOf(bound);
+
+        if (name != null) {
+            String registeredName = name;
+            unregister();
+            register(registeredName);
+        }
+    }
+
+    public LayerMetrics getLayer(int index) {
+        return layers.get(index);
+    }
+
+    public List<LayerMetrics> getLayers() {
+        return layers;
+    }
+
+    public void recordOptimizerStep(long elapsedNanos, long bytes) {
+        optimizer.record(Phase.UPDATE, elapsedNanos, bytes);
+    }
+
+    @Override
+    public void onBatchEnd(int batchSize, float averageCost, long elapsedNanos) {
+        batches.increment();
+        samples.add(batchSize);
+        trainingNanos.add(elapsedNanos);
+    }
+
+    @Override
+    public synchronized void onEpochEnd(EpochStats stats) {
+        epochs++;
+        epochNanos += stats.elapsedNanos();
+        lastEpochNanos = stats.elapsedNanos();
+        lastEpochCost = stats.averageCost();
+    }
+
+    public synchronized void register(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Metrics name must not be blank");
+        }
+        if (this.name != null) {
+            throw new IllegalStateException("Metrics are already registered as " + this.name);
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String quotedName = ObjectName.quote(name);
+        try {
+            registerBean(server, this, new ObjectName(DOMAIN + ":type=TrainingMetrics,name=" + quotedName));
+            for (LayerMetrics layer : layers) {
+                registerBean(server, layer, new ObjectName(String.format("%s:type=LayerMetrics,network=%s,layer=%02d-%s",
+                        DOMAIN, quotedName, layer.getIndex(), layer.getLayerType())));
+            }
+        } catch (JMException e) {
+            unregisterBeans(server);
+            throw new IllegalStateException("Could not register training metrics " + name, e);
+        }
+        this.name = name;
+    }
+
+    public synchronized void unregister() {
+        unregisterBeans(ManagementFactory.getPlatformMBeanServer());
+        this.name = null;
+    }
+
+    private void registerBean(MBeanServer server, Object bean, ObjectName objectName) throws JMException {
+        server.registerMBean(bean, objectName);
+        registeredNames.add(objectName);
+    }
+
+    private void unregisterBeans(MBeanServer server) {
+        for (ObjectName objectName : registeredNames) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+        }
+        registeredNames.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    @Override
+    public boolean isTrackingAllocations() {
+        return trackAllocations;
+    }
+
+    @Override
+    public long getEpochCount() {
+        return epochs;
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getSampleCount() {
+        return samples.sum();
+    }
+
+    @Override
+    public double getSamplesPerSecond() {
+        long nanos = trainingNanos.sum();
+        return nanos == 0 ? 0.0 : samples.sum() * 1.0e9 / nanos;
+    }
+
+    @Override
+    public double getLastEpochSeconds() {
+        return lastEpochNanos / 1.0e9;
+    }
+
+    @Override
+    public double getAverageEpochSeconds() {
+        long count = epochs;
+        return count == 0 ? 0.0 : epochNanos / 1.0e9 / count;
+    }
+
+    @Override
+    public float getLastEpochCost() {
+        return lastEpochCost;
+    }
+
+    @Override
+    public long getOptimizerCount() {
+        return optimizer.getUpdateCount();
+    }
+
+    @Override
+    public long getOptimizerNanos() {
+        return optimizer.getUpdateNanos();
+    }
+
+    @Override
+    public long getOptimizerAllocatedBytes() {
+        return optimizer.getUpdateAllocatedBytes();
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (LayerMetrics layer : layers) {
+            layer.reset();
+        }
+        optimizer.reset();
+        batches.reset();
+        samples.reset();
+        trainingNanos.reset();
+        epochs = 0;
+        epochNanos = 0;
+        lastEpochNanos = 0;
+        lastEpochCost = 0.0f;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(
+                "Training metrics: %d epochs, %d samples, %.1f samples/s, %.3f s per epoch%n",
+                getEpochCount(), getSampleCount(), getSamplesPerSecond(), getAverageEpochSeconds()));
+        report.append(String.format("%-34s %12s %12s %13s %12s %14s%n", "layer", "forward ms", "backward ms", "recompute ms",
+                "update ms", "allocated MB"));
+        for (LayerMetrics layer : layers) {
+            appendRow(report, layer.getIndex() + " " + layer.getLayerType(), layer);
+        }
+        appendRow(report, "optimizer", optimizer);
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String label, LayerMetrics metrics) {
+        long bytes = 0;
+        for (Phase phase : Phase.values()) {
+            bytes += metrics.getAllocatedBytes(phase);
+        }
+        report.append(String.format("%-34s %12.1f %12.1f %13.1f %12.1f %14.2f%n", label,
+                metrics.getForwardNanos() / 1.0e6, metrics.getBackwardNanos() / 1.0e6, metrics.getRecomputeNanos() / 1.0e6,
+                metrics.getUpdateNanos() / 1.0e6, bytes / (1024.0 * 1024.0)));
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.karolbystrek.metrics;
+
+public interface TrainingMetricsMXBean {
+
+    int getLayerCount();
+
+    boolean isTrackingAllocations();
+
+    long getEpochCount();
+
+    long getBatchCount();
+
+    long getSampleCount();
+
+    double getSamplesPerSecond();
+
+    double getLastEpochSeconds();
+
+    double getAverageEpochSeconds();
+
+    float getLastEpochCost();
+
+    long getOptimizerCount();
+
+    long getOptimizerNanos();
+
+    long getOptimizerAllocatedBytes();
+
+    void reset();
+}
@@ -0,0 +1,81 @@
+package io.github.karolbystrek.model;
+
+import io.github.karolbystrek.core.PlannedTensorPool;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExecutionPlan {
+
+    private final int batchSize;
+    private final int[] inputShape;
+    private final List<int[]> outputShapes;
+    private final PlannedTensorPool pool = new PlannedTensorPool();
+    private final TensorArena arena = new TensorArena(pool);
+
+    ExecutionPlan(int batchSize, int[] inputShape, List<int[]> outputShapes) {
+        this.batchSize = batchSize;
+        this.inputShape = inputShape.clone();
+        this.outputShapes = new ArrayList<>(outputShapes);
+    }
+
+    boolean accepts(Tensor inputs) {
+        return inputs.getRank() == 4 && inputs.getDimension(0) == batchSize && inputs.getDimension(1) == inputShape[0]
+                && inputs.getDimension(2) == inputShape[1] && inputs.getDimension(3) == inputShape[2];
+    }
+
+    TensorArena getArena() {
+        return arena;
+    }
+
+    void finishRecording() {
+        arena.reset();
+        pool.plan();
+    }
+
+    TensorArena beginStep() {
+        pool.beginStep();
+        return arena;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    public int[] getOutputShape(int layerIndex) {
+        return outputShapes.get(layerIndex).clone();
+    }
+
+    public int getLayerCount() {
+        return outputShapes.size();
+    }
+
+    public int getAllocationCount() {
+        return pool.getAllocationCount();
+    }
+
+    public int getBufferCount() {
+        return pool.getBufferCount();
+    }
+
+    public long getPlannedBytes() {
+        return pool.getPlannedSize() * Float.BYTES;
+    }
+
+    public long getRequestedBytes() {
+        return pool.getRequestedSize() * Float.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Execution plan for batch %d: %d allocations in %d buffers, %.2f MB instead of %.2f MB",
+                batchSize, getAllocationCount(), getBufferCount(),
+                getPlannedBytes() / (1024.0 * 1024.0), getRequestedBytes() / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.karolbystrek.model;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.reader.DataPoint;
+
+import java.util.List;
+
+public class InferenceModel {
+
+    private final List<Layer> layers;
+
+    InferenceModel(List<Layer> layers) {
+        this.layers = List.copyOf(layers);
+    }
+
+    public Tensor predict(DataPoint dataPoint) {
+        return predict(dataPoint.getInput());
+    }
+
+    public Tensor predict(Tensor input) {
+        Tensor output = predictBatch(input.asBatch());
+        return input.getRank() == 4 ? output : output.sample(0);
+    }
+
+    public Tensor predictBatch(Tensor input) {
+        Tensor output = input;
+        for (Layer layer : layers) {
+            output = layer.inferBatch(output);
+        }
+        return output;
+    }
+
+    public List<Layer> getLayers() {
+        return layers;
+    }
+}
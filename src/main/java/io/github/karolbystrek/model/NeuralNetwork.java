@@ -1,26 +1,180 @@
 package io.github.karolbystrek.model;
 
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.SequentialExecutor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FusedConvolutionPoolingLayer;
 import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.layers.PoolingMode;
+import io.github.karolbystrek.core.ParameterStore;
+import io.github.karolbystrek.core.Precision;
 import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.core.TensorArena;
+import io.github.karolbystrek.metrics.EpochStats;
+import io.github.karolbystrek.metrics.Phase;
+import io.github.karolbystrek.metrics.TrainingListener;
+import io.github.karolbystrek.metrics.TrainingMetrics;
+import io.github.karolbystrek.optimizer.Optimizer;
+import io.github.karolbystrek.optimizer.SgdOptimizer;
+import io.github.karolbystrek.reader.DataLoader;
 import io.github.karolbystrek.reader.DataPoint;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NeuralNetwork {
     private final List<Layer> layers = new ArrayList<>();
+    private final TensorArena arena = new TensorArena();
+    private ParameterStore parameters = new ParameterStore(0);
+
+    private ComputeExecutor executor = ForkJoinExecutor.common();
+    private Optimizer optimizer = new SgdOptimizer();
+    private int numThreads = 1;
+    private int checkpointInterval;
+    private Precision activationPrecision = Precision.FP32;
+    private final List<Tensor> checkpoints = new ArrayList<>();
+    private List<NeuralNetwork> workers;
+    private ExecutorService workerPool;
+    private ExecutionPlan plan;
+    private TrainingMetrics metrics;
+    private final List<TrainingListener> listeners = new ArrayList<>();
 
     public List<Layer> getLayers() {
         return layers;
     }
 
     public void addLayer(Layer layer) {
+        layer.setExecutor(executor);
+        layer.setActivationPrecision(activationPrecision);
         layers.add(layer);
+        bindParameters(new ParameterStore(parameters.size() + layer.getParameterCount()));
+        workers = null;
+        plan = null;
+        if (metrics != null) {
+            metrics.bind(layers);
+        }
+    }
+
+    private void bindParameters(ParameterStore store) {
+        for (Layer layer : layers) {
+            layer.bindParameters(store);
+        }
+        this.parameters = store;
+    }
+
+    public ParameterStore getParameters() {
+        return parameters;
+    }
+
+    public int fuseLayers() {
+        int fused = 0;
+        for (int i = 0; i + 1 < layers.size(); i++) {
+            if (layers.get(i) instanceof ConvolutionalLayer convolutionalLayer
+                    && layers.get(i + 1) instanceof PoolingLayer poolingLayer
+                    && poolingLayer.getMode() == PoolingMode.MAX) {
+                Layer fusedLayer = new FusedConvolutionPoolingLayer(convolutionalLayer, poolingLayer);
+                fusedLayer.setExecutor(executor);
+                fusedLayer.setActivationPrecision(activationPrecision);
+                layers.set(i, fusedLayer);
+                layers.remove(i + 1);
+                fused++;
+            }
+        }
+        if (fused > 0) {
+            workers = null;
+            plan = null;
+            if (metrics != null) {
+                metrics.bind(layers);
+            }
+        }
+        return fused;
+    }
+
+    public ComputeExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ComputeExecutor executor) {
+        this.executor = executor;
+        for (Layer layer : layers) {
+            layer.setExecutor(executor);
+        }
+        this.plan = null;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    public TrainingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(TrainingMetrics metrics) {
+        if (metrics != null) {
+            metrics.bind(layers);
+        }
+        this.metrics = metrics;
+        if (workers != null) {
+            for (NeuralNetwork worker : workers) {
+                worker.metrics = metrics;
+            }
+        }
+    }
+
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    public TensorArena getArena() {
+        return arena;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+        this.numThreads = numThreads;
+        this.workers = null;
     }
 
     public Tensor predict(DataPoint dataPoint) {
-        return forward(dataPoint.getInput());
+        return infer(dataPoint.getInput());
+    }
+
+    public Tensor infer(Tensor input) {
+        Tensor output = input;
+        for (Layer layer : layers) {
+            output = layer.infer(output);
+        }
+        return output;
+    }
+
+    public InferenceModel asInferenceModel() {
+        return new InferenceModel(layers);
     }
 
     public Tensor forward(Tensor input) {
@@ -37,44 +191,380 @@ public class NeuralNetwork {
         }
     }
 
-    public void updateParameters(float learningRate) {
+    public Tensor forwardBatch(Tensor input) {
+        checkpoints.clear();
+        if (checkpointInterval == 0) {
+            return forwardSegment(0, layers.size(), input, Phase.FORWARD);
+        }
+
+        Tensor output = input;
+        for (int start = 0; start < layers.size(); start += checkpointInterval) {
+            int end = Math.min(start + checkpointInterval, layers.size());
+            checkpoints.add(output);
+            if (end == layers.size()) {
+                return forwardSegment(start, end, output, Phase.FORWARD);
+            }
+
+            TensorArena current = TensorArena.current();
+            int mark = current != null ? current.mark() : 0;
+            output = forwardSegment(start, end, output, Phase.FORWARD);
+            if (current != null) {
+                current.rewind(mark, output);
+            }
+        }
+        return output;
+    }
+
+    public void backwardBatch(Tensor gradOutput) {
+        if (checkpoints.isEmpty()) {
+            backwardSegment(0, layers.size(), gradOutput);
+            return;
+        }
+
+        for (int segment = checkpoints.size() - 1; segment >= 0; segment--) {
+            int start = segment * checkpointInterval;
+            int end = Math.min(start + checkpointInterval, layers.size());
+
+            TensorArena current = TensorArena.current();
+            int mark = current != null ? current.mark() : 0;
+            if (segment < checkpoints.size() - 1) {
+                forwardSegment(start, end, checkpoints.get(segment), Phase.RECOMPUTE);
+            }
+            Tensor gradInput = backwardSegment(start, end, gradOutput);
+            if (current != null) {
+                current.rewind(mark, gradInput);
+                if (gradOutput.getData() != gradInput.getData()) {
+                    TensorArena.free(gradOutput);
+                }
+            }
+            gradOutput = gradInput;
+        }
+        checkpoints.clear();
+    }
+
+    private Tensor forwardSegment(int start, int end, Tensor input, Phase phase) {
+        Tensor output = input;
+        for (int i = start; i < end; i++) {
+            Tensor next;
+            if (metrics == null) {
+                next = layers.get(i).forwardBatch(output);
+            } else {
+                long startBytes = metrics.allocatedBytes();
+                long startTime = System.nanoTime();
+                next = layers.get(i).forwardBatch(output);
+                metrics.getLayer(i).record(phase, System.nanoTime() - startTime, metrics.allocatedBytes() - startBytes);
+            }
+            if (activationPrecision != Precision.FP32 && i > start && next.getData() != output.getData()) {
+                TensorArena.free(output);
+            }
+            output = next;
+        }
+        return output;
+    }
+
+    private Tensor backwardSegment(int start, int end, Tensor gradOutput) {
+        for (int i = end - 1; i >= start; i--) {
+            Tensor gradInput;
+            if (metrics == null) {
+                gradInput = layers.get(i).backwardBatch(gradOutput);
+            } else {
+                long startBytes = metrics.allocatedBytes();
+                long startTime = System.nanoTime();
+                gradInput = layers.get(i).backwardBatch(gradOutput);
+                metrics.getLayer(i).record(Phase.BACKWARD, System.nanoTime() - startTime, metrics.allocatedBytes() - startBytes);
+            }
+            if (gradInput.getData() != gradOutput.getData()) {
+                TensorArena.free(gradOutput);
+            }
+            gradOutput = gradInput;
+        }
+        return gradOutput;
+    }
+
+    public Precision getActivationPrecision() {
+        return activationPrecision;
+    }
+
+    public void setActivationPrecision(Precision activationPrecision) {
+        this.activationPrecision = activationPrecision;
         for (Layer layer : layers) {
-            layer.updateParameters(learningRate);
+            layer.setActivationPrecision(activationPrecision);
+        }
+        this.workers = null;
+        this.plan = null;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative");
+        }
+        this.checkpointInterval = checkpointInterval;
+        this.workers = null;
+        this.plan = null;
+    }
+
+    public void updateParameters(float learningRate) {
+        if (metrics == null) {
+            optimizer.step(parameters, learningRate);
+            for (Layer layer : layers) {
+                layer.parametersUpdated();
+            }
+            return;
+        }
+
+        long startBytes = metrics.allocatedBytes();
+        long startTime = System.nanoTime();
+        optimizer.step(parameters, learningRate);
+        metrics.recordOptimizerStep(System.nanoTime() - startTime, metrics.allocatedBytes() - startBytes);
+        for (int i = 0; i < layers.size(); i++) {
+            startBytes = metrics.allocatedBytes();
+            startTime = System.nanoTime();
+            layers.get(i).parametersUpdated();
+            metrics.getLayer(i).record(Phase.UPDATE, System.nanoTime() - startTime, metrics.allocatedBytes() - startBytes);
         }
     }
 
     public float train(List<? extends DataPoint> trainingData, int batchSize, float learningRate) {
         float totalCost = 0.0f;
-        int batchIndex = 0;
 
-        for (DataPoint dataPoint : trainingData) {
-//            TODO: Run each batch in multiple threads (in a safe manner)
-            Tensor output = forward(dataPoint.getInput());
-            Tensor expectedOutput = dataPoint.getExpectedOutput();
+        for (int batchStart = 0; batchStart < trainingData.size(); batchStart += batchSize) {
+            int batchEnd = Math.min(batchStart + batchSize, trainingData.size());
+
+            long startTime = System.nanoTime();
+            int mark = arena.mark();
+            float cost = trainBatch(stackInputs(trainingData, batchStart, batchEnd, arena),
+                    stackExpectedOutputs(trainingData, batchStart, batchEnd, arena), learningRate);
+            arena.rewind(mark);
+            batchEnded(batchEnd - batchStart, cost, System.nanoTime() - startTime);
+            totalCost += cost;
+        }
+
+        return totalCost / trainingData.size();
+    }
+
+    public float train(DataLoader dataLoader, float learningRate) {
+        float totalCost = 0.0f;
+
+        dataLoader.startEpoch();
+        DataLoader.Batch batch;
+        long startTime = System.nanoTime();
+        while ((batch = dataLoader.nextBatch()) != null) {
+            int batchSize = batch.size();
+            float cost;
+            try {
+                cost = trainBatch(batch.getInputs(), batch.getExpectedOutputs(), learningRate);
+            } finally {
+                dataLoader.release(batch);
+            }
+
+            long endTime = System.nanoTime();
+            batchEnded(batchSize, cost, endTime - startTime);
+            totalCost += cost;
+            startTime = endTime;
+        }
+
+        return totalCost / dataLoader.size();
+    }
+
+    private float trainBatch(Tensor inputs, Tensor expectedOutputs, float learningRate) {
+        float cost = numThreads > 1
+                ? computeGradientsInParallel(inputs, expectedOutputs)
+                : computeGradients(inputs, expectedOutputs);
+
+        updateParameters(learningRate);
+
+        return cost;
+    }
+
+    private void batchEnded(int batchSize, float cost, long elapsedNanos) {
+        if (metrics != null) {
+            metrics.onBatchEnd(batchSize, cost / batchSize, elapsedNanos);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onBatchEnd(batchSize, cost / batchSize, elapsedNanos);
+        }
+    }
+
+    private void epochStarted(int epoch) {
+        for (TrainingListener listener : listeners) {
+            listener.onEpochStart(epoch);
+        }
+    }
+
+    private void epochEnded(EpochStats stats) {
+        System.out.printf("Total execution time: %.3fs, %.1f samples/s%n", stats.elapsedSeconds(), stats.samplesPerSecond());
+        if (metrics != null) {
+            metrics.onEpochEnd(stats);
+        }
+        for (TrainingListener listener : listeners) {
+            listener.onEpochEnd(stats);
+        }
+    }
+
+    public ExecutionPlan compile(int batchSize, int... inputShape) {
+        if (batchSize < 1 || inputShape.length != 3) {
+            throw new IllegalArgumentException("Execution plan requires a positive batch size and a depth, height and width");
+        }
+
+        List<int[]> outputShapes = new ArrayList<>(layers.size());
+        int[] shape = inputShape.clone();
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            try {
+                shape = layer.outputShape(shape);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Layer " + i + " (" + layer.getClass().getSimpleName() + ") does not accept its input: "
+                        + e.getMessage(), e);
+            }
+            outputShapes.add(shape);
+        }
+
+        ExecutionPlan compiled = new ExecutionPlan(batchSize, inputShape, outputShapes);
+        Tensor inputs = new Tensor(batchSize, inputShape[0], inputShape[1], inputShape[2]);
+        Tensor expectedOutputs = new Tensor(batchSize, shape[0], shape[1], shape[2]);
+        TrainingMetrics activeMetrics = metrics;
+        metrics = null;
+        try {
+            computeGradients(inputs, expectedOutputs, compiled.getArena());
+        } finally {
+            metrics = activeMetrics;
+        }
+        compiled.finishRecording();
+        parameters.zeroGradients();
+
+        this.plan = compiled;
+        this.workers = null;
+        return compiled;
+    }
+
+    public ExecutionPlan getExecutionPlan() {
+        return plan;
+    }
+
+    private float computeGradients(Tensor inputs, Tensor expectedOutput) {
+        if (plan != null && plan.accepts(inputs)) {
+            return computeGradients(inputs, expectedOutput, plan.beginStep());
+        }
+        return computeGradients(inputs, expectedOutput, arena);
+    }
 
-            totalCost += cost(output, expectedOutput);
+    private float computeGradients(Tensor inputs, Tensor expectedOutput, TensorArena arena) {
+        int mark = arena.mark();
+        TensorArena previous = TensorArena.bind(arena);
+        try {
+            Tensor output = forwardBatch(inputs);
+
+            float cost = cost(output, expectedOutput);
             Tensor gradOutput = calculateOutputGradient(output, expectedOutput);
 
-            backward(gradOutput);
+            backwardBatch(gradOutput);
+
+            return cost;
+        } finally {
+            arena.rewind(mark);
+            TensorArena.bind(previous);
+        }
+    }
+
+    private static Tensor stackInputs(List<? extends DataPoint> data, int from, int to, TensorArena arena) {
+        DataPoint first = data.get(from);
+        Tensor inputs = arena.acquire(to - from, first.getInputDimension(0), first.getInputDimension(1), first.getInputDimension(2));
+        int sampleSize = inputs.getSampleSize();
 
-            batchIndex++;
-            if (batchIndex >= batchSize) {
-                updateParameters(learningRate);
-                batchIndex = 0;
+        for (int n = from; n < to; n++) {
+            data.get(n).copyInputTo(inputs.getData(), (n - from) * sampleSize);
+        }
+        return inputs;
+    }
+
+    private static Tensor stackExpectedOutputs(List<? extends DataPoint> data, int from, int to, TensorArena arena) {
+        int size = data.get(from).getExpectedOutputSize();
+        Tensor expectedOutputs = arena.acquire(to - from, 1, 1, size);
+
+        for (int n = from; n < to; n++) {
+            data.get(n).copyExpectedOutputTo(expectedOutputs.getData(), (n - from) * size);
+        }
+        return expectedOutputs;
+    }
+
+    private float computeGradientsInParallel(Tensor inputs, Tensor expectedOutputs) {
+        List<NeuralNetwork> replicas = getWorkers();
+        int batchSize = inputs.getBatchSize();
+        int shardSize = (batchSize + replicas.size() - 1) / replicas.size();
+
+        List<Future<Float>> shards = new ArrayList<>(replicas.size());
+        for (int worker = 0; worker < replicas.size(); worker++) {
+            int shardStart = worker * shardSize;
+            if (shardStart >= batchSize) {
+                break;
             }
+            int shardEnd = Math.min(shardStart + shardSize, batchSize);
+            Tensor shardInputs = inputs.slice(0, shardStart, shardEnd);
+            Tensor shardExpectedOutputs = expectedOutputs.slice(0, shardStart, shardEnd);
+            NeuralNetwork replica = replicas.get(worker);
+            shards.add(workerPool.submit(() -> replica.computeGradients(shardInputs, shardExpectedOutputs)));
         }
 
-        if (batchIndex > 0) {
-            updateParameters(learningRate);
+        float cost = 0.0f;
+        for (int worker = 0; worker < shards.size(); worker++) {
+            cost += awaitShard(shards.get(worker));
+            parameters.accumulateGradients(replicas.get(worker).parameters);
         }
+        return cost;
+    }
 
-        return totalCost / trainingData.size();
+    private float awaitShard(Future<Float> shard) {
+        try {
+            return shard.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training worker failed", e.getCause());
+        }
+    }
+
+    private List<NeuralNetwork> getWorkers() {
+        if (workers == null) {
+            workers = new ArrayList<>(numThreads);
+            for (int worker = 0; worker < numThreads; worker++) {
+                NeuralNetwork replica = new NeuralNetwork();
+                replica.executor = SequentialExecutor.INSTANCE;
+                replica.checkpointInterval = checkpointInterval;
+                replica.activationPrecision = activationPrecision;
+                replica.metrics = metrics;
+                for (Layer layer : layers) {
+                    Layer replicaLayer = layer.replicate();
+                    replicaLayer.setExecutor(replica.executor);
+                    replica.layers.add(replicaLayer);
+                }
+                replica.bindParameters(parameters.share());
+                if (plan != null) {
+                    int[] inputShape = plan.getInputShape();
+                    replica.compile((plan.getBatchSize() + numThreads - 1) / numThreads, inputShape);
+                }
+                workers.add(replica);
+            }
+        }
+        if (workerPool == null) {
+            workerPool = Executors.newFixedThreadPool(numThreads, runnable -> {
+                Thread thread = new Thread(runnable, "training-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
     }
 
     public void fit(List<? extends DataPoint> trainingData, int maxEpochs, int batchSize, float learningRate) {
         System.out.println("Beginning training...");
 
         for (int epoch = 0; epoch < maxEpochs; epoch++) {
+            epochStarted(epoch + 1);
             long startTime = System.nanoTime();
             System.out.print("Epoch: " + (epoch + 1) + ", ");
 
@@ -83,7 +573,23 @@ public class NeuralNetwork {
             System.out.print("Average cost: " + averageCost + ", ");
 
             long endTime = System.nanoTime();
-            System.out.println("Total execution time: " + (endTime - startTime) / 1.0e9 + "s");
+            epochEnded(new EpochStats(epoch + 1, trainingData.size(), averageCost, endTime - startTime));
+        }
+    }
+
+    public void fit(DataLoader dataLoader, int maxEpochs, float learningRate) {
+        System.out.println("Beginning training...");
+
+        for (int epoch = 0; epoch < maxEpochs; epoch++) {
+            epochStarted(epoch + 1);
+            long startTime = System.nanoTime();
+            System.out.print("Epoch: " + (epoch + 1) + ", ");
+
+            float averageCost = train(dataLoader, learningRate);
+            System.out.print("Average cost: " + averageCost + ", ");
+
+            long endTime = System.nanoTime();
+            epochEnded(new EpochStats(epoch + 1, dataLoader.size(), averageCost, endTime - startTime));
         }
     }
 
@@ -91,31 +597,29 @@ public class NeuralNetwork {
         float cost = 0.0f;
         float EPSILON = 1.0e-13f;
 
-        float[][][] outputData = output.getData();
-        float[][][] expectedOutputData = expectedOutput.getData();
-
-        for (int w = 0; w < output.getWidth(); w++) {
-            float value = outputData[0][0][w];
-            float expectedValue = expectedOutputData[0][0][w];
+        for (int n = 0; n < output.getBatchSize(); n++) {
+            for (int w = 0; w < output.getWidth(); w++) {
+                float value = output.get(n, 0, 0, w);
+                float expectedValue = expectedOutput.get(n, 0, 0, w);
 
-            cost -= (float) (expectedValue * Math.log(value + EPSILON));
+                cost -= (float) (expectedValue * Math.log(value + EPSILON));
+            }
         }
 
         return cost;
     }
 
     private Tensor calculateOutputGradient(Tensor output, Tensor expectedOutput) {
-        float[][][] outputData = output.getData();
-        float[][][] expectedOutputData = expectedOutput.getData();
+        Tensor gradOutput = TensorArena.allocate(output.getBatchSize(), 1, 1, output.getWidth());
 
-        float[][][] gradOutputData = new float[1][1][output.getWidth()];
-
-        for (int w = 0; w < output.getWidth(); w++) {
-            float value = outputData[0][0][w];
-            float expectedValue = expectedOutputData[0][0][w];
-            gradOutputData[0][0][w] = value - expectedValue;
+        for (int n = 0; n < output.getBatchSize(); n++) {
+            for (int w = 0; w < output.getWidth(); w++) {
+                float value = output.get(n, 0, 0, w);
+                float expectedValue = expectedOutput.get(n, 0, 0, w);
+                gradOutput.set(n, 0, 0, w, value - expectedValue);
+            }
         }
 
-        return new Tensor(gradOutputData);
+        return gradOutput;
     }
 }
@@ -0,0 +1,81 @@
+package io.github.karolbystrek.optimizer;
+
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.ParameterStore;
+
+public class AdamOptimizer implements Optimizer {
+
+    private final float beta1;
+    private final float beta2;
+    private final float epsilon;
+    private final float weightDecay;
+
+    private ParameterStore parameters;
+    private float[] firstMoments;
+    private float[] secondMoments;
+    private int steps;
+
+    public AdamOptimizer() {
+        this(0.9f, 0.999f, 1.0e-8f, 0.0f);
+    }
+
+    public AdamOptimizer(float beta1, float beta2, float epsilon, float weightDecay) {
+        if (beta1 < 0.0f || beta1 >= 1.0f || beta2 < 0.0f || beta2 >= 1.0f) {
+            throw new IllegalArgumentException("Adam betas must be in [0, 1), got " + beta1 + " and " + beta2);
+        }
+        if (epsilon <= 0.0f || weightDecay < 0.0f) {
+            throw new IllegalArgumentException("Epsilon must be positive and weight decay non-negative");
+        }
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+    }
+
+    public static AdamOptimizer adamW(float weightDecay) {
+        return new AdamOptimizer(0.9f, 0.999f, 1.0e-8f, weightDecay);
+    }
+
+    @Override
+    public void step(ParameterStore parameters, float learningRate) {
+        if (this.parameters != parameters) {
+            this.parameters = parameters;
+            this.firstMoments = new float[parameters.size()];
+            this.secondMoments = new float[parameters.size()];
+            this.steps = 0;
+        }
+        steps++;
+
+        double firstCorrection = 1.0 - Math.pow(beta1, steps);
+        double secondCorrection = Math.sqrt(1.0 - Math.pow(beta2, steps));
+        float stepSize = (float) (learningRate * secondCorrection / firstCorrection);
+        float correctedEpsilon = (float) (epsilon * secondCorrection);
+
+        VectorMath.adamStep(stepSize, beta1, beta2, correctedEpsilon, learningRate * weightDecay,
+                parameters.getGradients(), firstMoments, secondMoments, parameters.getValues(), 0, parameters.size());
+    }
+
+    @Override
+    public void reset() {
+        parameters = null;
+        firstMoments = null;
+        secondMoments = null;
+        steps = 0;
+    }
+
+    public float getBeta1() {
+        return beta1;
+    }
+
+    public float getBeta2() {
+        return beta2;
+    }
+
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    public float getWeightDecay() {
+        return weightDecay;
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.karolbystrek.optimizer;
+
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.ParameterStore;
+
+public class MomentumOptimizer implements Optimizer {
+
+    private final float momentum;
+    private final boolean nesterov;
+
+    private ParameterStore parameters;
+    private float[] velocity;
+
+    public MomentumOptimizer() {
+        this(0.9f, false);
+    }
+
+    public MomentumOptimizer(float momentum, boolean nesterov) {
+        if (momentum < 0.0f || momentum >= 1.0f) {
+            throw new IllegalArgumentException("Momentum must be in [0, 1), got " + momentum);
+        }
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+    }
+
+    public static MomentumOptimizer nesterov(float momentum) {
+        return new MomentumOptimizer(momentum, true);
+    }
+
+    @Override
+    public void step(ParameterStore parameters, float learningRate) {
+        if (this.parameters != parameters) {
+            this.parameters = parameters;
+            this.velocity = new float[parameters.size()];
+        }
+        VectorMath.momentumStep(learningRate, momentum, nesterov,
+                parameters.getGradients(), velocity, parameters.getValues(), 0, parameters.size());
+    }
+
+    @Override
+    public void reset() {
+        parameters = null;
+        velocity = null;
+    }
+
+    public float getMomentum() {
+        return momentum;
+    }
+
+    public boolean isNesterov() {
+        return nesterov;
+    }
+}
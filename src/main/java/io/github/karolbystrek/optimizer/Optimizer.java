@@ -0,0 +1,10 @@
+package io.github.karolbystrek.optimizer;
+
+import io.github.karolbystrek.core.ParameterStore;
+
+public interface Optimizer {
+
+    void step(ParameterStore parameters, float learningRate);
+
+    default void reset() {}
+}
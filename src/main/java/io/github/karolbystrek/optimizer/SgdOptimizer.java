@@ -0,0 +1,12 @@
+package io.github.karolbystrek.optimizer;
+
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.ParameterStore;
+
+public class SgdOptimizer implements Optimizer {
+
+    @Override
+    public void step(ParameterStore parameters, float learningRate) {
+        VectorMath.sgdStep(learningRate, parameters.getGradients(), parameters.getValues(), 0, parameters.size());
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.karolbystrek.quantization;
+
+final class Int8 {
+
+    static final int MAX_VALUE = 127;
+
+    private Int8() {}
+
+    static float scaleFor(float maxAbs) {
+        return maxAbs > 0.0f ? maxAbs / MAX_VALUE : 1.0f;
+    }
+
+    static byte quantize(float value, float inverseScale) {
+        int quantized = Math.round(value * inverseScale);
+        return (byte) Math.max(-MAX_VALUE, Math.min(MAX_VALUE, quantized));
+    }
+
+    static void quantize(float[] source, int sourceOffset, byte[] target, int targetOffset, int length, float scale) {
+        float inverseScale = 1.0f / scale;
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = quantize(source[sourceOffset + i], inverseScale);
+        }
+    }
+
+    static float quantizeRow(float[] source, int sourceOffset, byte[] target, int targetOffset, int length) {
+        float maxAbs = 0.0f;
+        for (int i = 0; i < length; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(source[sourceOffset + i]));
+        }
+        float scale = scaleFor(maxAbs);
+        quantize(source, sourceOffset, target, targetOffset, length, scale);
+        return scale;
+    }
+
+    static int quantizeBias(float bias, float scale) {
+        return Math.round(bias / scale);
+    }
+
+    static byte[] scratch(ThreadLocal<byte[]> buffers, int length) {
+        byte[] buffer = buffers.get();
+        if (buffer == null || buffer.length < length) {
+            buffer = new byte[length];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    static int[] accumulators(ThreadLocal<int[]> buffers, int length) {
+        int[] buffer = buffers.get();
+        if (buffer == null || buffer.length < length) {
+            buffer = new int[length];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+}
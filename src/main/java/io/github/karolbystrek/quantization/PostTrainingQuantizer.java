@@ -0,0 +1,107 @@
+package io.github.karolbystrek.quantization;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.*;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.reader.DataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PostTrainingQuantizer {
+
+    private static final int DEFAULT_CALIBRATION_SAMPLES = 1000;
+    private static final int CALIBRATION_BATCH_SIZE = 64;
+
+    private final int calibrationSamples;
+
+    public PostTrainingQuantizer() {
+        this(DEFAULT_CALIBRATION_SAMPLES);
+    }
+
+    public PostTrainingQuantizer(int calibrationSamples) {
+        if (calibrationSamples < 1) {
+            throw new IllegalArgumentException("Number of calibration samples must be positive");
+        }
+        this.calibrationSamples = calibrationSamples;
+    }
+
+    public NeuralNetwork quantize(NeuralNetwork model, List<? extends DataPoint> calibrationData) {
+        if (calibrationData.isEmpty()) {
+            throw new IllegalArgumentException("Calibration data must not be empty");
+        }
+        List<Layer> layers = expandLayers(model);
+        float[] inputRanges = calibrate(layers, calibrationData.subList(0, Math.min(calibrationSamples, calibrationData.size())));
+
+        NeuralNetwork quantized = new NeuralNetwork();
+        quantized.setExecutor(model.getExecutor());
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            float inputScale = Int8.scaleFor(inputRanges[i]);
+
+            Layer quantizedLayer;
+            if (layer instanceof ConvolutionalLayer convolutionalLayer) {
+                quantizedLayer = QuantizedConvolutionalLayer.quantize(convolutionalLayer, inputScale);
+            } else if (layer instanceof HiddenLayer hiddenLayer) {
+                quantizedLayer = QuantizedDenseLayer.quantize(hiddenLayer, inputScale);
+            } else if (layer instanceof OutputLayer outputLayer) {
+                quantizedLayer = QuantizedDenseLayer.quantize(outputLayer, inputScale);
+            } else if (layer instanceof PoolingLayer poolingLayer) {
+                quantizedLayer = new PoolingLayer(poolingLayer.getMode(), poolingLayer.getPoolSize(), poolingLayer.getStride());
+            } else if (layer instanceof FlattenLayer) {
+                quantizedLayer = new FlattenLayer();
+            } else {
+                throw new IllegalArgumentException("Cannot quantize layer " + layer.getClass().getSimpleName());
+            }
+            quantized.addLayer(quantizedLayer);
+        }
+        return quantized;
+    }
+
+    private static List<Layer> expandLayers(NeuralNetwork model) {
+        List<Layer> layers = new ArrayList<>();
+        for (Layer layer : model.getLayers()) {
+            if (layer instanceof FusedConvolutionPoolingLayer fusedLayer) {
+                layers.add(fusedLayer.getConvolutionalLayer());
+                layers.add(fusedLayer.getPoolingLayer());
+            } else if (layer instanceof FullyConnectedLayer fullyConnectedLayer) {
+                layers.addAll(List.of(fullyConnectedLayer.getLayers()));
+            } else {
+                layers.add(layer);
+            }
+        }
+        return layers;
+    }
+
+    private static float[] calibrate(List<Layer> layers, List<? extends DataPoint> samples) {
+        float[] inputRanges = new float[layers.size()];
+
+        for (int start = 0; start < samples.size(); start += CALIBRATION_BATCH_SIZE) {
+            List<Tensor> inputs = new ArrayList<>();
+            for (DataPoint dataPoint : samples.subList(start, Math.min(start + CALIBRATION_BATCH_SIZE, samples.size()))) {
+                inputs.add(dataPoint.getInput());
+            }
+
+            Tensor output = Tensor.stack(inputs);
+            for (int i = 0; i < layers.size(); i++) {
+                inputRanges[i] = Math.max(inputRanges[i], maxAbs(output));
+                output = layers.get(i).inferBatch(output);
+            }
+        }
+        return inputRanges;
+    }
+
+    private static float maxAbs(Tensor tensor) {
+        tensor = tensor.contiguous();
+        float[] data = tensor.getData();
+        float maxAbs = 0.0f;
+        for (int i = tensor.getOffset(); i < tensor.getOffset() + tensor.getSize(); i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(data[i]));
+        }
+        return maxAbs;
+    }
+
+    public int getCalibrationSamples() {
+        return calibrationSamples;
+    }
+}
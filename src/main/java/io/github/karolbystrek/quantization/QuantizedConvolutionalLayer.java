@@ -0,0 +1,227 @@
+package io.github.karolbystrek.quantization;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.convolution.ConvolutionGeometry;
+import io.github.karolbystrek.core.Kernel;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.Layer;
+
+import java.util.Arrays;
+
+public class QuantizedConvolutionalLayer implements Layer {
+
+    private final int numKernels;
+    private final int kernelDepth;
+    private final int kernelSize;
+    private final int stride;
+    private final int padding;
+
+    private final float inputScale;
+    private final byte[] weights;
+    private final float[] weightScales;
+    private final int[] biases;
+
+    private ComputeExecutor executor = ForkJoinExecutor.common();
+
+    private final ThreadLocal<byte[]> inputBuffer = new ThreadLocal<>();
+    private final ThreadLocal<byte[]> columnsBuffer = new ThreadLocal<>();
+    private final ThreadLocal<int[]> accumulatorBuffer = new ThreadLocal<>();
+
+    public QuantizedConvolutionalLayer(int numKernels, int kernelDepth, int kernelSize, int stride, int padding,
+                                       float inputScale, byte[] weights, float[] weightScales, int[] biases) {
+        int kernelVolume = kernelDepth * kernelSize * kernelSize;
+        if (weights.length != numKernels * kernelVolume || weightScales.length != numKernels || biases.length != numKernels) {
+            throw new IllegalArgumentException("Quantized parameters do not match " + numKernels + " kernels of size " + kernelVolume);
+        }
+        if (!(inputScale > 0.0f)) {
+            throw new IllegalArgumentException("Input scale must be positive");
+        }
+        this.numKernels = numKernels;
+        this.kernelDepth = kernelDepth;
+        this.kernelSize = kernelSize;
+        this.stride = stride;
+        this.padding = padding;
+        this.inputScale = inputScale;
+        this.weights = weights;
+        this.weightScales = weightScales;
+        this.biases = biases;
+    }
+
+    public static QuantizedConvolutionalLayer quantize(ConvolutionalLayer layer, float inputScale) {
+        Kernel[] kernels = layer.getKernels();
+        int kernelVolume = kernels[0].getSize();
+
+        byte[] weights = new byte[kernels.length * kernelVolume];
+        float[] weightScales = new float[kernels.length];
+        int[] biases = new int[kernels.length];
+        for (int k = 0; k < kernels.length; k++) {
+            Kernel kernel = kernels[k];
+            weightScales[k] = Int8.quantizeRow(kernel.getParameters(), kernel.getWeightsOffset(), weights, k * kernelVolume, kernelVolume);
+            biases[k] = Int8.quantizeBias(kernel.getBias(), inputScale * weightScales[k]);
+        }
+
+        return new QuantizedConvolutionalLayer(kernels.length, kernels[0].getDepth(), kernels[0].getHeight(),
+                layer.getStride(), layer.getPadding(), inputScale, weights, weightScales, biases);
+    }
+
+    @Override
+    public Tensor forwardBatch(Tensor input) {
+        throw new IllegalStateException("Quantized layers only support inference");
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        ConvolutionGeometry geometry = ConvolutionGeometry.of(input.getBatchSize(),
+                input.getDepth(), input.getHeight(), input.getWidth(),
+                numKernels, kernelDepth, kernelSize, kernelSize, stride, padding);
+
+        int batchSize = geometry.batchSize();
+        int inputSize = geometry.inputSize();
+        int patchSize = geometry.patchSize();
+        int planeSize = geometry.outputPlaneSize();
+        int columnsSize = patchSize * planeSize;
+        int kernelVolume = geometry.kernelSize();
+
+        float[] inputData = input.getData();
+        int inputOffset = input.getOffset();
+        byte[] quantizedInput = Int8.scratch(inputBuffer, batchSize * inputSize);
+        byte[] columns = Int8.scratch(columnsBuffer, batchSize * columnsSize);
+
+        executor.forRange(batchSize, (long) columnsSize, (from, to) -> {
+            for (int n = from; n < to; n++) {
+                Int8.quantize(inputData, inputOffset + n * inputSize, quantizedInput, n * inputSize, inputSize, inputScale);
+                im2col(geometry, quantizedInput, n * inputSize, columns, n * columnsSize);
+            }
+        });
+
+        Tensor output = new Tensor(batchSize, numKernels, geometry.outputHeight(), geometry.outputWidth());
+        float[] outputData = output.getData();
+        executor.forRange(batchSize * numKernels, (long) columnsSize, (from, to) -> {
+            int[] accumulators = Int8.accumulators(accumulatorBuffer, planeSize);
+            for (int task = from; task < to; task++) {
+                int n = task / numKernels;
+                int k = task % numKernels;
+                int weightsRow = k * kernelVolume;
+
+                Arrays.fill(accumulators, 0, planeSize, biases[k]);
+                for (int i = 0; i < patchSize; i++) {
+                    byte weight = weights[weightsRow + i];
+                    if (weight != 0) {
+                        VectorMath.axpy(weight, columns, n * columnsSize + i * planeSize, accumulators, 0, planeSize);
+                    }
+                }
+
+                float outputScale = inputScale * weightScales[k];
+                int outputRow = n * geometry.outputSize() + k * planeSize;
+                for (int i = 0; i < planeSize; i++) {
+                    outputData[outputRow + i] = accumulators[i] > 0 ? accumulators[i] * outputScale : 0.0f;
+                }
+            }
+        });
+
+        return output;
+    }
+
+    private static void im2col(ConvolutionGeometry geometry, byte[] input, int inputOffset, byte[] columns, int columnsOffset) {
+        int inputDepth = geometry.inputDepth();
+        int inputHeight = geometry.inputHeight();
+        int inputWidth = geometry.inputWidth();
+        int kernelHeight = geometry.kernelHeight();
+        int kernelWidth = geometry.kernelWidth();
+        int stride = geometry.stride();
+        int padding = geometry.padding();
+        int outputHeight = geometry.outputHeight();
+        int outputWidth = geometry.outputWidth();
+
+        int column = columnsOffset;
+        for (int d = 0; d < inputDepth; d++) {
+            int inputPlane = inputOffset + d * inputHeight * inputWidth;
+            for (int kY = 0; kY < kernelHeight; kY++) {
+                for (int kX = 0; kX < kernelWidth; kX++) {
+                    for (int outY = 0; outY < outputHeight; outY++) {
+                        int inY = outY * stride - padding + kY;
+                        if (inY < 0 || inY >= inputHeight) {
+                            Arrays.fill(columns, column, column + outputWidth, (byte) 0);
+                            column += outputWidth;
+                            continue;
+                        }
+                        int inputRow = inputPlane + inY * inputWidth;
+                        for (int outX = 0; outX < outputWidth; outX++) {
+                            int inX = outX * stride - padding + kX;
+                            columns[column++] = (inX >= 0 && inX < inputWidth) ? input[inputRow + inX] : 0;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradientOutput) {
+        throw new IllegalStateException("Quantized layers only support inference");
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        if (inputShape[0] != kernelDepth) {
+            throw new IllegalArgumentException("Input depth " + inputShape[0] + " does not match kernel depth " + kernelDepth);
+        }
+        int outputHeight = (inputShape[1] + 2 * padding - kernelSize) / stride + 1;
+        int outputWidth = (inputShape[2] + 2 * padding - kernelSize) / stride + 1;
+        if (outputHeight < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("Kernel of size " + kernelSize + " does not fit input of size "
+                    + inputShape[1] + "x" + inputShape[2]);
+        }
+        return new int[]{numKernels, outputHeight, outputWidth};
+    }
+
+    @Override
+    public Layer replicate() {
+        return this;
+    }
+
+    @Override
+    public void setExecutor(ComputeExecutor executor) {
+        this.executor = executor;
+    }
+
+    public int getNumKernels() {
+        return numKernels;
+    }
+
+    public int getKernelDepth() {
+        return kernelDepth;
+    }
+
+    public int getKernelSize() {
+        return kernelSize;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public float getInputScale() {
+        return inputScale;
+    }
+
+    public byte[] getWeights() {
+        return weights;
+    }
+
+    public float[] getWeightScales() {
+        return weightScales;
+    }
+
+    public int[] getBiases() {
+        return biases;
+    }
+}
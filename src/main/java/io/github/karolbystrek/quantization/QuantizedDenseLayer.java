@@ -0,0 +1,162 @@
+package io.github.karolbystrek.quantization;
+
+import io.github.karolbystrek.compute.VectorMath;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.HiddenLayer;
+import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.layers.OutputLayer;
+
+public class QuantizedDenseLayer implements Layer {
+
+    private final int numNodesIn;
+    private final int numNodesOut;
+    private final boolean softmax;
+
+    private final float inputScale;
+    private final byte[] weights;
+    private final float[] weightScales;
+    private final int[] biases;
+
+    private final ThreadLocal<byte[]> inputBuffer = new ThreadLocal<>();
+
+    public QuantizedDenseLayer(int numNodesIn, int numNodesOut, boolean softmax,
+                               float inputScale, byte[] weights, float[] weightScales, int[] biases) {
+        if (weights.length != numNodesOut * numNodesIn || weightScales.length != numNodesOut || biases.length != numNodesOut) {
+            throw new IllegalArgumentException("Quantized parameters do not match a " + numNodesIn + "x" + numNodesOut + " layer");
+        }
+        if (!(inputScale > 0.0f)) {
+            throw new IllegalArgumentException("Input scale must be positive");
+        }
+        this.numNodesIn = numNodesIn;
+        this.numNodesOut = numNodesOut;
+        this.softmax = softmax;
+        this.inputScale = inputScale;
+        this.weights = weights;
+        this.weightScales = weightScales;
+        this.biases = biases;
+    }
+
+    public static QuantizedDenseLayer quantize(HiddenLayer layer, float inputScale) {
+        return quantize(layer.getNumNodesIn(), layer.getNumNodesOut(), false, layer.getParameters(),
+                layer.getWeightsOffset(), layer.getBiasesOffset(), inputScale);
+    }
+
+    public static QuantizedDenseLayer quantize(OutputLayer layer, float inputScale) {
+        return quantize(layer.getNumNodesIn(), layer.getNumNodesOut(), true, layer.getParameters(),
+                layer.getWeightsOffset(), layer.getBiasesOffset(), inputScale);
+    }
+
+    private static QuantizedDenseLayer quantize(int numNodesIn, int numNodesOut, boolean softmax, float[] parameters,
+                                                int weightsOffset, int biasesOffset, float inputScale) {
+        byte[] weights = new byte[numNodesOut * numNodesIn];
+        float[] weightScales = new float[numNodesOut];
+        int[] biases = new int[numNodesOut];
+        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+            weightScales[nodeOut] = Int8.quantizeRow(parameters, weightsOffset + nodeOut * numNodesIn,
+                    weights, nodeOut * numNodesIn, numNodesIn);
+            biases[nodeOut] = Int8.quantizeBias(parameters[biasesOffset + nodeOut], inputScale * weightScales[nodeOut]);
+        }
+        return new QuantizedDenseLayer(numNodesIn, numNodesOut, softmax, inputScale, weights, weightScales, biases);
+    }
+
+    @Override
+    public Tensor forwardBatch(Tensor input) {
+        throw new IllegalStateException("Quantized layers only support inference");
+    }
+
+    @Override
+    public Tensor inferBatch(Tensor input) {
+        input = input.contiguous();
+        if (input.getSampleSize() != numNodesIn) {
+            throw new IllegalArgumentException("Input width must be the number of input nodes");
+        }
+        int batchSize = input.getBatchSize();
+
+        byte[] quantizedInput = Int8.scratch(inputBuffer, batchSize * numNodesIn);
+        Int8.quantize(input.getData(), input.getOffset(), quantizedInput, 0, batchSize * numNodesIn, inputScale);
+
+        Tensor output = new Tensor(batchSize, 1, 1, numNodesOut);
+        float[] outputData = output.getData();
+        for (int n = 0; n < batchSize; n++) {
+            int inputRow = n * numNodesIn;
+            int outputRow = n * numNodesOut;
+            for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+                int accumulator = biases[nodeOut] + VectorMath.dot(weights, nodeOut * numNodesIn, quantizedInput, inputRow, numNodesIn);
+                float value = accumulator * inputScale * weightScales[nodeOut];
+                outputData[outputRow + nodeOut] = softmax ? value : Math.max(0.0f, value);
+            }
+            if (softmax) {
+                softmax(outputData, outputRow);
+            }
+        }
+
+        return output;
+    }
+
+    private void softmax(float[] logits, int offset) {
+        float maxLogit = Float.NEGATIVE_INFINITY;
+        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+            if (logits[offset + nodeOut] > maxLogit) {
+                maxLogit = logits[offset + nodeOut];
+            }
+        }
+
+        float sumExp = 0.0f;
+        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+            float value = (float) Math.exp(logits[offset + nodeOut] - maxLogit);
+            logits[offset + nodeOut] = value;
+            sumExp += value;
+        }
+
+        for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+            logits[offset + nodeOut] /= sumExp;
+        }
+    }
+
+    @Override
+    public Tensor backwardBatch(Tensor gradientOutput) {
+        throw new IllegalStateException("Quantized layers only support inference");
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        if (inputShape[0] * inputShape[1] * inputShape[2] != numNodesIn) {
+            throw new IllegalArgumentException("Input of shape " + inputShape[0] + "x" + inputShape[1] + "x" + inputShape[2]
+                    + " does not hold " + numNodesIn + " nodes");
+        }
+        return new int[]{1, 1, numNodesOut};
+    }
+
+    @Override
+    public Layer replicate() {
+        return this;
+    }
+
+    public int getNumNodesIn() {
+        return numNodesIn;
+    }
+
+    public int getNumNodesOut() {
+        return numNodesOut;
+    }
+
+    public boolean isSoftmax() {
+        return softmax;
+    }
+
+    public float getInputScale() {
+        return inputScale;
+    }
+
+    public byte[] getWeights() {
+        return weights;
+    }
+
+    public float[] getWeightScales() {
+        return weightScales;
+    }
+
+    public int[] getBiases() {
+        return biases;
+    }
+}
@@ -1,53 +1,55 @@
 package io.github.karolbystrek.reader;
 
-import io.github.karolbystrek.core.Tensor;
-
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Cifar10DataReader {
     private static final int NUM_DATA_POINTS = 10000;
+    private static final int NUM_LABELS = 10;
 
     private static final int NUM_CHANNELS = 3;
     private static final int IMAGE_HEIGHT = 32;
     private static final int IMAGE_WIDTH = 32;
+    private static final int IMAGE_SIZE = NUM_CHANNELS * IMAGE_HEIGHT * IMAGE_WIDTH;
 
     public List<Cifar10DataPoint> readTestData(String testFilePath) throws IOException {
-        return readData(testFilePath);
+        return toDataPoints(readDataset(testFilePath));
     }
 
     public List<Cifar10DataPoint> readTrainingData(String[] trainingFilePaths) throws IOException {
-        List<Cifar10DataPoint> trainingData = new ArrayList<>();
-        for (String filePath : trainingFilePaths) {
-            List<Cifar10DataPoint> batchData = readData(filePath);
-            trainingData.addAll(batchData);
+        return toDataPoints(readDataset(trainingFilePaths));
+    }
+
+    public ImageDataset readDataset(String... dataFilePaths) throws IOException {
+        byte[] pixels = new byte[dataFilePaths.length * NUM_DATA_POINTS * IMAGE_SIZE];
+        byte[] labels = new byte[dataFilePaths.length * NUM_DATA_POINTS];
+
+        for (int file = 0; file < dataFilePaths.length; file++) {
+            readData(dataFilePaths[file], pixels, labels, file * NUM_DATA_POINTS);
         }
-        return trainingData;
+        return new ImageDataset(pixels, labels, NUM_LABELS, NUM_CHANNELS, IMAGE_HEIGHT, IMAGE_WIDTH);
     }
 
-    private List<Cifar10DataPoint> readData(String dataFilePath) throws IOException {
-        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFilePath)))) {
+    private List<Cifar10DataPoint> toDataPoints(ImageDataset dataset) {
+        List<Cifar10DataPoint> data = new ArrayList<>(dataset.size());
+        for (int i = 0; i < dataset.size(); i++) {
+            data.add(new Cifar10DataPoint(dataset, i));
+        }
+        return data;
+    }
 
-            List<Cifar10DataPoint> data = new ArrayList<>(NUM_DATA_POINTS);
+    private void readData(String dataFilePath, byte[] pixels, byte[] labels, int firstIndex) throws IOException {
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFilePath)))) {
 
             for (int i = 0; i < NUM_DATA_POINTS; i++) {
                 int label = dataInputStream.readUnsignedByte();
-
-                float[][][] imageData = new float[NUM_CHANNELS][IMAGE_HEIGHT][IMAGE_WIDTH];
-                for (int c = 0 ; c < NUM_CHANNELS ; c++) {
-                    for (int h = 0 ; h < IMAGE_HEIGHT ; h++) {
-                        for (int w = 0 ; w < IMAGE_WIDTH ; w++) {
-                            int pixelValue = dataInputStream.readUnsignedByte();
-                            imageData[c][h][w] = pixelValue / 255.0f;
-                        }
-                    }
+                if (label >= NUM_LABELS) {
+                    throw new IllegalArgumentException("Invalid label: " + label);
                 }
-                Tensor tensor = new Tensor(imageData);
-                data.add(new Cifar10DataPoint(tensor, label));
+                labels[firstIndex + i] = (byte) label;
+                dataInputStream.readFully(pixels, (firstIndex + i) * IMAGE_SIZE, IMAGE_SIZE);
             }
-
-            return data;
         }
     }
 }
@@ -0,0 +1,236 @@
+package io.github.karolbystrek.reader;
+
+import io.github.karolbystrek.core.Tensor;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DataLoader implements AutoCloseable {
+
+    private static final int DEFAULT_WORKERS = 2;
+    private static final int DEFAULT_PREFETCH_DEPTH = 3;
+
+    private final List<? extends DataPoint> data;
+    private final int batchSize;
+    private final int[] permutation;
+    private final Random random;
+
+    private final BlockingQueue<Batch> freeBatches;
+    private final BlockingQueue<CompletableFuture<Batch>> pendingBatches;
+    private final ExecutorService workers;
+    private final ExecutorService dispatcher;
+
+    private int remainingBatches;
+    private int outstandingBatches;
+
+    public DataLoader(List<? extends DataPoint> data, int batchSize) {
+        this(data, batchSize, DEFAULT_WORKERS, DEFAULT_PREFETCH_DEPTH, new Random().nextLong());
+    }
+
+    public DataLoader(List<? extends DataPoint> data, int batchSize, int numWorkers, int prefetchDepth, long seed) {
+        if (data.isEmpty()) {
+            throw new IllegalArgumentException("Data loader requires at least one data point");
+        }
+        if (batchSize < 1 || numWorkers < 1 || prefetchDepth < 1) {
+            throw new IllegalArgumentException("Batch size, number of workers and prefetch depth must be positive");
+        }
+        this.data = data;
+        this.batchSize = batchSize;
+        this.random = new Random(seed);
+
+        this.permutation = new int[data.size()];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = i;
+        }
+
+        int[] inputShape = data.get(0).getInputShape();
+        int outputSize = data.get(0).getExpectedOutputSize();
+        this.freeBatches = new ArrayBlockingQueue<>(prefetchDepth);
+        for (int i = 0; i < prefetchDepth; i++) {
+            freeBatches.add(new Batch(batchSize, inputShape, outputSize));
+        }
+        this.pendingBatches = new ArrayBlockingQueue<>(numBatches() + 1);
+
+        this.workers = Executors.newFixedThreadPool(numWorkers, runnable -> daemon(runnable, "data-loader-worker"));
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "data-loader-dispatcher"));
+    }
+
+    public synchronized void startEpoch() {
+        abortEpoch();
+        shuffle();
+        remainingBatches = numBatches();
+
+        int[] order = permutation.clone();
+        dispatcher.execute(() -> dispatch(order));
+    }
+
+    public Batch nextBatch() {
+        synchronized (this) {
+            if (remainingBatches == 0) {
+                return null;
+            }
+            remainingBatches--;
+            outstandingBatches++;
+        }
+
+        CompletableFuture<Batch> pending;
+        try {
+            pending = pendingBatches.take();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                remainingBatches++;
+                outstandingBatches--;
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch", e);
+        }
+
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            pending.thenAccept(freeBatches::add);
+            unclaim();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch", e);
+        } catch (ExecutionException e) {
+            unclaim();
+            throw new IllegalStateException("Failed to prepare a batch", e.getCause());
+        }
+    }
+
+    public synchronized void abortEpoch() {
+        if (outstandingBatches > 0) {
+            throw new IllegalStateException(outstandingBatches + " batches must be released before the epoch ends");
+        }
+        while (remainingBatches > 0) {
+            CompletableFuture<Batch> pending;
+            try {
+                pending = pendingBatches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while aborting the epoch", e);
+            }
+            remainingBatches--;
+
+            try {
+                freeBatches.add(pending.get());
+            } catch (InterruptedException e) {
+                pending.thenAccept(freeBatches::add);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while aborting the epoch", e);
+            } catch (ExecutionException ignored) {
+            }
+        }
+    }
+
+    public void release(Batch batch) {
+        unclaim();
+        freeBatches.add(batch);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int numBatches() {
+        return (data.size() + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void dispatch(int[] order) {
+        for (int batchStart = 0; batchStart < order.length; batchStart += batchSize) {
+            int start = batchStart;
+            int end = Math.min(batchStart + batchSize, order.length);
+
+            Batch batch;
+            try {
+                batch = freeBatches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            CompletableFuture<Batch> pending = CompletableFuture.supplyAsync(() -> batch.fill(data, order, start, end), workers);
+            pending.whenComplete((filled, failure) -> {
+                if (failure != null) {
+                    freeBatches.add(batch);
+                }
+            });
+            pendingBatches.add(pending);
+        }
+    }
+
+    private synchronized void unclaim() {
+        if (outstandingBatches == 0) {
+            throw new IllegalStateException("No batch is waiting to be released");
+        }
+        outstandingBatches--;
+    }
+
+    private void shuffle() {
+        for (int i = permutation.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public static class Batch {
+
+        private final Tensor inputs;
+        private final Tensor expectedOutputs;
+        private int size;
+
+        private Batch(int capacity, int[] inputShape, int outputSize) {
+            this.inputs = new Tensor(capacity, inputShape[0], inputShape[1], inputShape[2]);
+            this.expectedOutputs = new Tensor(capacity, 1, 1, outputSize);
+        }
+
+        private Batch fill(List<? extends DataPoint> data, int[] order, int start, int end) {
+            int inputSize = inputs.getSampleSize();
+            int outputSize = expectedOutputs.getSampleSize();
+
+            size = end - start;
+            for (int n = 0; n < size; n++) {
+                DataPoint dataPoint = data.get(order[start + n]);
+                dataPoint.copyInputTo(inputs.getData(), n * inputSize);
+                dataPoint.copyExpectedOutputTo(expectedOutputs.getData(), n * outputSize);
+            }
+            return this;
+        }
+
+        public Tensor getInputs() {
+            return size == inputs.getBatchSize() ? inputs : inputs.slice(0, 0, size);
+        }
+
+        public Tensor getExpectedOutputs() {
+            return size == expectedOutputs.getBatchSize() ? expectedOutputs : expectedOutputs.slice(0, 0, size);
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
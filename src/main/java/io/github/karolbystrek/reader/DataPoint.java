@@ -7,4 +7,26 @@ public interface DataPoint {
     Tensor getInput();
 
     Tensor getExpectedOutput();
+
+    default int[] getInputShape() {
+        return getInput().getShape();
+    }
+
+    default int getInputDimension(int dimension) {
+        return getInput().getDimension(dimension);
+    }
+
+    default int getExpectedOutputSize() {
+        return getExpectedOutput().getSize();
+    }
+
+    default void copyInputTo(float[] target, int offset) {
+        Tensor input = getInput().contiguous();
+        System.arraycopy(input.getData(), input.getOffset(), target, offset, input.getSize());
+    }
+
+    default void copyExpectedOutputTo(float[] target, int offset) {
+        Tensor expectedOutput = getExpectedOutput().contiguous();
+        System.arraycopy(expectedOutput.getData(), expectedOutput.getOffset(), target, offset, expectedOutput.getSize());
+    }
 }
@@ -0,0 +1,58 @@
+package io.github.karolbystrek.reader;
+
+import io.github.karolbystrek.core.Tensor;
+
+public abstract class ImageDataPoint implements DataPoint {
+
+    private final ImageDataset dataset;
+    private final int index;
+
+    protected ImageDataPoint(ImageDataset dataset, int index) {
+        this.dataset = dataset;
+        this.index = index;
+    }
+
+    @Override
+    public Tensor getInput() {
+        return dataset.getInput(index);
+    }
+
+    @Override
+    public Tensor getExpectedOutput() {
+        return dataset.getExpectedOutput(index);
+    }
+
+    @Override
+    public void copyInputTo(float[] target, int offset) {
+        dataset.decodeInput(index, target, offset);
+    }
+
+    @Override
+    public void copyExpectedOutputTo(float[] target, int offset) {
+        dataset.encodeExpectedOutput(index, target, offset);
+    }
+
+    @Override
+    public int[] getInputShape() {
+        return new int[]{dataset.getDepth(), dataset.getHeight(), dataset.getWidth()};
+    }
+
+    @Override
+    public int getInputDimension(int dimension) {
+        return switch (dimension) {
+            case 0 -> dataset.getDepth();
+            case 1 -> dataset.getHeight();
+            case 2 -> dataset.getWidth();
+            default -> throw new IllegalArgumentException("Image inputs have no dimension " + dimension);
+        };
+    }
+
+    @Override
+    public int getExpectedOutputSize() {
+        return dataset.getNumLabels();
+    }
+
+    public int getLabel() {
+        return dataset.getLabel(index);
+    }
+}
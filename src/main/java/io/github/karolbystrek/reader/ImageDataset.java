@@ -0,0 +1,82 @@
+package io.github.karolbystrek.reader;
+
+import io.github.karolbystrek.core.Tensor;
+
+public class ImageDataset {
+
+    private final byte[] pixels;
+    private final byte[] labels;
+    private final int numLabels;
+
+    private final int depth;
+    private final int height;
+    private final int width;
+    private final int sampleSize;
+
+    public ImageDataset(byte[] pixels, byte[] labels, int numLabels, int depth, int height, int width) {
+        this.sampleSize = depth * height * width;
+        if (pixels.length != labels.length * sampleSize) {
+            throw new IllegalArgumentException("Expected " + labels.length * sampleSize + " pixels but got " + pixels.length);
+        }
+        this.pixels = pixels;
+        this.labels = labels;
+        this.numLabels = numLabels;
+        this.depth = depth;
+        this.height = height;
+        this.width = width;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public int getLabel(int index) {
+        return labels[index] & 0xFF;
+    }
+
+    public void decodeInput(int index, float[] target, int offset) {
+        int base = index * sampleSize;
+        for (int i = 0; i < sampleSize; i++) {
+            target[offset + i] = (pixels[base + i] & 0xFF) / 255.0f;
+        }
+    }
+
+    public void encodeExpectedOutput(int index, float[] target, int offset) {
+        for (int i = 0; i < numLabels; i++) {
+            target[offset + i] = 0.0f;
+        }
+        target[offset + getLabel(index)] = 1.0f;
+    }
+
+    public Tensor getInput(int index) {
+        float[] data = new float[sampleSize];
+        decodeInput(index, data, 0);
+        return new Tensor(data, depth, height, width);
+    }
+
+    public Tensor getExpectedOutput(int index) {
+        float[] data = new float[numLabels];
+        encodeExpectedOutput(index, data, 0);
+        return new Tensor(data, 1, 1, numLabels);
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+}
@@ -1,13 +1,24 @@
 package io.github.karolbystrek.reader;
 
-import io.github.karolbystrek.core.Tensor;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class MnistDataReader {
 
+    private static final int NUM_LABELS = 10;
+
     public List<MnistDataPoint> readData(String dataFilePath, String labelFilePath) throws IOException {
+        ImageDataset dataset = readDataset(dataFilePath, labelFilePath);
+
+        List<MnistDataPoint> data = new ArrayList<>(dataset.size());
+        for (int i = 0; i < dataset.size(); i++) {
+            data.add(new MnistDataPoint(dataset, i));
+        }
+        return data;
+    }
+
+    public ImageDataset readDataset(String dataFilePath, String labelFilePath) throws IOException {
         try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFilePath)));
              DataInputStream labelInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(labelFilePath)))) {
 
@@ -27,25 +38,18 @@ public class MnistDataReader {
                 throw new IOException("Mismatch between image count and number of labels");
             }
 
-            List<MnistDataPoint> data = new ArrayList<>(numDataPoints);
-
-            for (int i = 0; i < numDataPoints; i++) {
-                float[][][] imageData = new float[1][numRows][numCols];
+            byte[] pixels = new byte[numDataPoints * numRows * numCols];
+            dataInputStream.readFully(pixels);
 
-                for (int row = 0; row < numRows; row++) {
-                    for (int col = 0; col < numCols; col++) {
-                        int pixelValue = dataInputStream.readUnsignedByte();
-                        imageData[0][row][col] = pixelValue / 255.0f;
-                    }
+            byte[] labels = new byte[numLabels];
+            labelInputStream.readFully(labels);
+            for (byte label : labels) {
+                if ((label & 0xFF) >= NUM_LABELS) {
+                    throw new IllegalArgumentException("Invalid label: " + (label & 0xFF));
                 }
-
-                int label = labelInputStream.readUnsignedByte();
-
-                Tensor imageTensor = new Tensor(imageData);
-                data.add(new MnistDataPoint(imageTensor, label));
             }
 
-            return data;
+            return new ImageDataset(pixels, labels, NUM_LABELS, 1, numRows, numCols);
         }
     }
 }
@@ -0,0 +1,196 @@
+package io.github.karolbystrek.serving;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.model.InferenceModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+public class InferenceServer implements AutoCloseable {
+
+    public static final String PREDICT_PATH = "/predict";
+    public static final String METRICS_PATH = "/metrics";
+
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final HttpServer server;
+    private final MicroBatcher batcher;
+    private final ExecutorService handlers;
+    private final boolean virtualThreads;
+
+    private InferenceServer(HttpServer server, MicroBatcher batcher) {
+        this.server = server;
+        this.batcher = batcher;
+
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.handlers = virtualThreads ? virtualThreadExecutor : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "inference-handler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.setExecutor(handlers);
+        server.createContext(PREDICT_PATH, this::handlePredict);
+        server.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+    public static InferenceServer start(InferenceModel model, int[] inputShape, InetSocketAddress address,
+                                        int maxBatchSize, Duration maxWait) throws IOException {
+        return start(new MicroBatcher(model, inputShape, maxBatchSize, maxWait), address);
+    }
+
+    public static InferenceServer start(InferenceModel model, int[] inputShape, InetSocketAddress address,
+                                        int maxBatchSize, Duration maxWait, int queueCapacity) throws IOException {
+        return start(new MicroBatcher(model, inputShape, maxBatchSize, maxWait, queueCapacity), address);
+    }
+
+    private static InferenceServer start(MicroBatcher batcher, InetSocketAddress address) throws IOException {
+        try {
+            InferenceServer inferenceServer = new InferenceServer(HttpServer.create(address, 0), batcher);
+            inferenceServer.server.start();
+            return inferenceServer;
+        } catch (IOException e) {
+            batcher.close();
+            throw e;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Use POST"));
+                return;
+            }
+
+            Tensor input;
+            try (InputStream body = exchange.getRequestBody()) {
+                input = parseInput(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error(e.getMessage()));
+                return;
+            }
+
+            Tensor output;
+            try {
+                output = batcher.submit(input).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, error("Interrupted"));
+                return;
+            } catch (ExecutionException e) {
+                int status = e.getCause() instanceof RejectedExecutionException || e.getCause() instanceof IllegalStateException ? 503 : 500;
+                respond(exchange, status, error(e.getCause().getMessage()));
+                return;
+            }
+
+            respond(exchange, 200, formatOutput(output));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, 200, batcher.getMetrics().toJson());
+        }
+    }
+
+    private Tensor parseInput(String body) {
+        int[] shape = batcher.getInputShape();
+        float[] data = new float[shape[0] * shape[1] * shape[2]];
+
+        StringTokenizer tokenizer = new StringTokenizer(body, " \t\r\n,[]");
+        int count = 0;
+        while (tokenizer.hasMoreTokens()) {
+            if (count == data.length) {
+                throw new IllegalArgumentException("Input holds more than " + data.length + " values");
+            }
+            data[count++] = Float.parseFloat(tokenizer.nextToken());
+        }
+        if (count != data.length) {
+            throw new IllegalArgumentException("Input holds " + count + " values, expected " + data.length);
+        }
+        return new Tensor(data, shape);
+    }
+
+    private static String formatOutput(Tensor output) {
+        output = output.contiguous();
+        float[] data = output.getData();
+        int offset = output.getOffset();
+
+        int predicted = 0;
+        StringBuilder json = new StringBuilder("{\"output\":[");
+        for (int i = 0; i < output.getSize(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(data[offset + i]);
+            if (data[offset + i] > data[offset + predicted]) {
+                predicted = i;
+            }
+        }
+        return json.append("],\"prediction\":").append(predicted).append('}').toString();
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+        for (char c : String.valueOf(message).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c >= ' ') {
+                json.append(c);
+            }
+        }
+        return json.append("\"}").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        batcher.close();
+        server.stop(STOP_DELAY_SECONDS);
+        handlers.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public MicroBatcher getBatcher() {
+        return batcher;
+    }
+
+    public ServingMetrics getMetrics() {
+        return batcher.getMetrics();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.karolbystrek.serving;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    private static final double BUCKET_GROWTH = 1.05;
+    private static final long MAX_TRACKED_NANOS = 60_000_000_000L;
+
+    private static final double LOG_GROWTH = Math.log(BUCKET_GROWTH);
+    private static final int NUM_BUCKETS = bucketOf(MAX_TRACKED_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long clamped = Math.max(1, Math.min(nanos, MAX_TRACKED_NANOS));
+        counts.incrementAndGet(bucketOf(clamped));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long percentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return upperBoundOf(bucket);
+            }
+        }
+        return MAX_TRACKED_NANOS;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMeanNanos() {
+        long total = count.sum();
+        return total == 0 ? 0 : totalNanos.sum() / total;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+
+    private static int bucketOf(long nanos) {
+        return (int) (Math.log(nanos) / LOG_GROWTH);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return (long) Math.ceil(Math.exp((bucket + 1) * LOG_GROWTH));
+    }
+}
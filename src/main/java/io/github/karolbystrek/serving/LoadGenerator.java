@@ -0,0 +1,127 @@
+package io.github.karolbystrek.serving;
+
+import io.github.karolbystrek.core.Tensor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+
+    private final URI endpoint;
+    private final HttpClient client;
+
+    public LoadGenerator(URI endpoint) {
+        this.endpoint = endpoint;
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    public static LoadGenerator forServer(InferenceServer server) {
+        return new LoadGenerator(URI.create("http://localhost:" + server.getPort() + InferenceServer.PREDICT_PATH));
+    }
+
+    public Result run(List<Tensor> inputs, int concurrency, int totalRequests) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Load generator requires at least one input");
+        }
+        if (concurrency < 1 || totalRequests < 1) {
+            throw new IllegalArgumentException("Concurrency and number of requests must be positive");
+        }
+
+        List<String> bodies = new ArrayList<>();
+        for (Tensor input : inputs) {
+            bodies.add(formatInput(input));
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+        AtomicInteger nextRequest = new AtomicInteger();
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long startTime = System.nanoTime();
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(clients.submit(() -> {
+                    int request;
+                    while ((request = nextRequest.getAndIncrement()) < totalRequests) {
+                        long requestStart = System.nanoTime();
+                        if (send(bodies.get(request % bodies.size()))) {
+                            latency.record(System.nanoTime() - requestStart);
+                        } else {
+                            failures.increment();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating load", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load generator failed", e.getCause());
+        } finally {
+            clients.shutdownNow();
+        }
+
+        return new Result(latency.getCount(), failures.sum(), System.nanoTime() - startTime, latency);
+    }
+
+    private boolean send(String body) {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String formatInput(Tensor input) {
+        input = input.contiguous();
+        float[] data = input.getData();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < input.getSize(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(data[input.getOffset() + i]);
+        }
+        return json.append(']').toString();
+    }
+
+    public record Result(long requests, long failures, long elapsedNanos, LatencyHistogram latency) {
+
+        public double throughput() {
+            return requests / (elapsedNanos / 1.0e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d failed) in %.2fs: %.0f req/s, latency p50 %.2fms, p99 %.2fms",
+                    requests, failures, elapsedNanos / 1.0e9, throughput(),
+                    latency.percentile(50) / 1.0e6, latency.percentile(99) / 1.0e6);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.karolbystrek.serving;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.model.InferenceModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class MicroBatcher implements AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private final InferenceModel model;
+    private final int[] inputShape;
+    private final int sampleSize;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<PendingRequest> queue;
+    private final ServingMetrics metrics;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    public MicroBatcher(InferenceModel model, int[] inputShape, int maxBatchSize, Duration maxWait) {
+        this(model, inputShape, maxBatchSize, maxWait, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public MicroBatcher(InferenceModel model, int[] inputShape, int maxBatchSize, Duration maxWait, int queueCapacity) {
+        if (inputShape.length != 3) {
+            throw new IllegalArgumentException("Input shape must be depth, height and width");
+        }
+        if (maxBatchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Maximum batch size and queue capacity must be positive");
+        }
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("Maximum wait time must not be negative");
+        }
+        this.model = model;
+        this.inputShape = inputShape.clone();
+        this.sampleSize = inputShape[0] * inputShape[1] * inputShape[2];
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.metrics = new ServingMetrics(maxBatchSize);
+
+        this.dispatcher = new Thread(this::dispatch, "micro-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public CompletableFuture<Tensor> submit(Tensor input) {
+        if (input.getSize() != sampleSize) {
+            throw new IllegalArgumentException("Input holds " + input.getSize() + " values, expected " + sampleSize);
+        }
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Micro-batcher is closed"));
+        }
+
+        PendingRequest request = new PendingRequest(input, System.nanoTime());
+        if (!queue.offer(request)) {
+            metrics.recordRejected();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Request queue is full"));
+        }
+        if (closed && queue.remove(request)) {
+            request.result.completeExceptionally(new IllegalStateException("Micro-batcher is closed"));
+        }
+        return request.result;
+    }
+
+    private void dispatch() {
+        List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+            runBatch(batch);
+            batch.clear();
+        }
+
+        IllegalStateException closedException = new IllegalStateException("Micro-batcher is closed");
+        batch.addAll(queue);
+        queue.clear();
+        for (PendingRequest request : batch) {
+            request.result.completeExceptionally(closedException);
+        }
+    }
+
+    private void collectBatch(List<PendingRequest> batch) throws InterruptedException {
+        PendingRequest first = queue.take();
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - batch.size());
+
+        long deadline = first.enqueuedAt + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void runBatch(List<PendingRequest> batch) {
+        long startTime = System.nanoTime();
+        try {
+            Tensor inputs = new Tensor(batch.size(), inputShape[0], inputShape[1], inputShape[2]);
+            float[] inputData = inputs.getData();
+            for (int n = 0; n < batch.size(); n++) {
+                Tensor input = batch.get(n).input.contiguous();
+                System.arraycopy(input.getData(), input.getOffset(), inputData, n * sampleSize, sampleSize);
+            }
+
+            Tensor outputs = model.predictBatch(inputs);
+            metrics.recordBatch(batch.size());
+
+            long endTime = System.nanoTime();
+            for (int n = 0; n < batch.size(); n++) {
+                PendingRequest request = batch.get(n);
+                metrics.recordRequest(startTime - request.enqueuedAt, endTime - request.enqueuedAt);
+                request.result.complete(outputs.sample(n));
+            }
+        } catch (RuntimeException e) {
+            for (PendingRequest request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public ServingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Duration getMaxWait() {
+        return Duration.ofNanos(maxWaitNanos);
+    }
+
+    private static final class PendingRequest {
+
+        private final Tensor input;
+        private final long enqueuedAt;
+        private final CompletableFuture<Tensor> result = new CompletableFuture<>();
+
+        private PendingRequest(Tensor input, long enqueuedAt) {
+            this.input = input;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.karolbystrek.serving;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServingMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final AtomicLongArray batchSizes;
+    private final LongAdder rejected = new LongAdder();
+
+    public ServingMetrics(int maxBatchSize) {
+        this.batchSizes = new AtomicLongArray(maxBatchSize + 1);
+    }
+
+    void recordBatch(int batchSize) {
+        batchSizes.incrementAndGet(batchSize);
+    }
+
+    void recordRequest(long queueNanos, long totalNanos) {
+        queueLatency.record(queueNanos);
+        latency.record(totalNanos);
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[batchSizes.length()];
+        for (int size = 0; size < histogram.length; size++) {
+            histogram[size] = batchSizes.get(size);
+        }
+        return histogram;
+    }
+
+    public long getBatchCount() {
+        long batches = 0;
+        for (int size = 0; size < batchSizes.length(); size++) {
+            batches += batchSizes.get(size);
+        }
+        return batches;
+    }
+
+    public double getMeanBatchSize() {
+        long batches = 0;
+        long requests = 0;
+        for (int size = 0; size < batchSizes.length(); size++) {
+            batches += batchSizes.get(size);
+            requests += size * batchSizes.get(size);
+        }
+        return batches == 0 ? 0.0 : (double) requests / batches;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public void reset() {
+        latency.reset();
+        queueLatency.reset();
+        for (int size = 0; size < batchSizes.length(); size++) {
+            batchSizes.set(size, 0);
+        }
+        rejected.reset();
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"requests\":").append(latency.getCount())
+                .append(",\"rejected\":").append(getRejectedCount())
+                .append(",\"latencyMicros\":{\"mean\":").append(latency.getMeanNanos() / 1000)
+                .append(",\"p50\":").append(latency.percentile(50) / 1000)
+                .append(",\"p99\":").append(latency.percentile(99) / 1000)
+                .append("},\"queueMicros\":{\"p50\":").append(queueLatency.percentile(50) / 1000)
+                .append(",\"p99\":").append(queueLatency.percentile(99) / 1000)
+                .append("},\"batches\":").append(getBatchCount())
+                .append(",\"meanBatchSize\":").append(String.format(Locale.ROOT, "%.2f", getMeanBatchSize()))
+                .append(",\"batchSizeHistogram\":{");
+
+        long[] histogram = getBatchSizeHistogram();
+        boolean first = true;
+        for (int size = 1; size < histogram.length; size++) {
+            if (histogram[size] == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            json.append('"').append(size).append("\":").append(histogram[size]);
+            first = false;
+        }
+        return json.append("}}").toString();
+    }
+}
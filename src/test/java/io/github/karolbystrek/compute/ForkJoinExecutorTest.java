@@ -0,0 +1,125 @@
+package io.github.karolbystrek.compute;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ForkJoinExecutorTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int OUTER = 16;
+    private static final int MIDDLE = 12;
+    private static final int INNER = 64;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final ForkJoinExecutor executor = new ForkJoinExecutor(pool, 1);
+
+    @AfterEach
+    void shutDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void runsEveryItemOnce() {
+        AtomicLongArray visits = new AtomicLongArray(1000);
+        executor.forRange(visits.length(), 1, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                visits.incrementAndGet(i);
+            }
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i), "item " + i);
+        }
+    }
+
+    @Test
+    void completesNestedRangesFromOutsideThePool() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            for (int repeat = 0; repeat < 200; repeat++) {
+                assertNestedRangesComplete();
+            }
+        });
+    }
+
+    @Test
+    void completesNestedRangesFromInsideThePool() {
+        assertTimeoutPreemptively(TIMEOUT, () -> pool.submit(() -> {
+            for (int repeat = 0; repeat < 200; repeat++) {
+                assertNestedRangesComplete();
+            }
+        }).get(TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+    }
+
+    @Test
+    void completesNestedRangesFromConcurrentCallers() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread[] callers = new Thread[4];
+            Throwable[] failures = new Throwable[callers.length];
+            for (int c = 0; c < callers.length; c++) {
+                int caller = c;
+                callers[c] = new Thread(() -> {
+                    try {
+                        for (int repeat = 0; repeat < 50; repeat++) {
+                            assertNestedRangesComplete();
+                        }
+                    } catch (Throwable e) {
+                        failures[caller] = e;
+                    }
+                });
+                callers[c].start();
+            }
+            for (int c = 0; c < callers.length; c++) {
+                callers[c].join();
+                if (failures[c] != null) {
+                    throw failures[c];
+                }
+            }
+        });
+    }
+
+    @Test
+    void rethrowsFailuresFromNestedRanges() {
+        IllegalArgumentException failure = new IllegalArgumentException("chunk failed");
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                    () -> executor.forRange(OUTER, 1, (from, to) -> executor.forRange(INNER, 1, (innerFrom, innerTo) -> {
+                        if (innerFrom == 0 && from == 0) {
+                            throw failure;
+                        }
+                    })));
+            assertSame(failure, thrown);
+            assertNestedRangesComplete();
+        });
+    }
+
+    private void assertNestedRangesComplete() {
+        AtomicLongArray visits = new AtomicLongArray(OUTER * MIDDLE * INNER);
+        executor.forRange(OUTER, 1, (from, to) -> {
+            for (int outer = from; outer < to; outer++) {
+                int outerIndex = outer;
+                executor.forRange(MIDDLE, 1, (middleFrom, middleTo) -> {
+                    for (int middle = middleFrom; middle < middleTo; middle++) {
+                        int base = (outerIndex * MIDDLE + middle) * INNER;
+                        executor.forRange(INNER, 1, (innerFrom, innerTo) -> {
+                            for (int inner = innerFrom; inner < innerTo; inner++) {
+                                visits.incrementAndGet(base + inner);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i), "item " + i);
+        }
+    }
+}
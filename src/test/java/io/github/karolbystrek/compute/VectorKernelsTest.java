@@ -0,0 +1,187 @@
+package io.github.karolbystrek.compute;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VectorKernelsTest {
+
+    private static final float TOLERANCE = 1.0e-5f;
+    private static final int OFFSET = 3;
+
+    private final VectorKernels simd = new SimdKernels();
+    private final VectorKernels scalar = new ScalarKernels();
+    private final Random random = new Random(11);
+
+    private static int[] lengths() {
+        int lanes = SimdKernels.laneCount();
+        return new int[]{0, 1, lanes - 1, lanes, lanes + 1, 2 * lanes + 3, 4 * lanes + lanes / 2 + 1, 131};
+    }
+
+    @Test
+    void floatDotMatchesScalar() {
+        for (int length : lengths()) {
+            float[] a = randomFloats(OFFSET + length);
+            float[] b = randomFloats(length + 1);
+            float expected = scalar.dot(a, OFFSET, b, 1, length);
+            assertEquals(expected, simd.dot(a, OFFSET, b, 1, length), TOLERANCE * Math.max(1, length), "length " + length);
+        }
+    }
+
+    @Test
+    void int8DotMatchesScalar() {
+        for (int length : lengths()) {
+            byte[] a = randomBytes(OFFSET + length);
+            byte[] b = randomBytes(length + 1);
+            assertEquals(scalar.dot(a, OFFSET, b, 1, length), simd.dot(a, OFFSET, b, 1, length), "length " + length);
+        }
+    }
+
+    @Test
+    void int8DotOfSaturatedValuesMatchesScalar() {
+        int length = 64 * SimdKernels.laneCount() + 5;
+        byte[] a = new byte[length];
+        byte[] b = new byte[length];
+        Arrays.fill(a, Byte.MIN_VALUE);
+        Arrays.fill(b, Byte.MIN_VALUE);
+        assertEquals(length * 128 * 128, simd.dot(a, 0, b, 0, length));
+
+        Arrays.fill(b, Byte.MAX_VALUE);
+        assertEquals(scalar.dot(a, 0, b, 0, length), simd.dot(a, 0, b, 0, length));
+    }
+
+    @Test
+    void floatAxpyMatchesScalar() {
+        for (int length : lengths()) {
+            float[] x = randomFloats(OFFSET + length);
+            float[] expected = randomFloats(length + 2);
+            float[] actual = expected.clone();
+            scalar.axpy(0.75f, x, OFFSET, expected, 2, length);
+            simd.axpy(0.75f, x, OFFSET, actual, 2, length);
+            assertArrayEquals(expected, actual, TOLERANCE, "length " + length);
+        }
+    }
+
+    @Test
+    void int8AxpyMatchesScalar() {
+        for (int length : lengths()) {
+            byte[] x = randomBytes(OFFSET + length);
+            int[] expected = new int[length + 2];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = random.nextInt(2000) - 1000;
+            }
+            int[] actual = expected.clone();
+            scalar.axpy(-37, x, OFFSET, expected, 2, length);
+            simd.axpy(-37, x, OFFSET, actual, 2, length);
+            assertArrayEquals(expected, actual, "length " + length);
+        }
+    }
+
+    @Test
+    void addMatchesScalar() {
+        for (int length : lengths()) {
+            float[] x = randomFloats(OFFSET + length);
+            float[] expected = randomFloats(length + 2);
+            float[] actual = expected.clone();
+            scalar.add(x, OFFSET, expected, 2, length);
+            simd.add(x, OFFSET, actual, 2, length);
+            assertArrayEquals(expected, actual, TOLERANCE, "length " + length);
+        }
+    }
+
+    @Test
+    void addAndClearMatchesScalar() {
+        for (int length : lengths()) {
+            float[] expectedSource = randomFloats(OFFSET + length + 2);
+            float[] expectedTarget = randomFloats(OFFSET + length + 2);
+            float[] actualSource = expectedSource.clone();
+            float[] actualTarget = expectedTarget.clone();
+            scalar.addAndClear(expectedSource, expectedTarget, OFFSET, length);
+            simd.addAndClear(actualSource, actualTarget, OFFSET, length);
+            assertArrayEquals(expectedSource, actualSource, "source, length " + length);
+            assertArrayEquals(expectedTarget, actualTarget, TOLERANCE, "target, length " + length);
+        }
+    }
+
+    @Test
+    void sgdStepMatchesScalar() {
+        for (int length : lengths()) {
+            float[] expectedGradients = randomFloats(OFFSET + length + 2);
+            float[] expectedValues = randomFloats(OFFSET + length + 2);
+            float[] actualGradients = expectedGradients.clone();
+            float[] actualValues = expectedValues.clone();
+            scalar.sgdStep(0.05f, expectedGradients, expectedValues, OFFSET, length);
+            simd.sgdStep(0.05f, actualGradients, actualValues, OFFSET, length);
+            assertArrayEquals(expectedGradients, actualGradients, "gradients, length " + length);
+            assertArrayEquals(expectedValues, actualValues, TOLERANCE, "values, length " + length);
+        }
+    }
+
+    @Test
+    void momentumStepMatchesScalar() {
+        for (boolean nesterov : new boolean[]{false, true}) {
+            for (int length : lengths()) {
+                float[] expectedGradients = randomFloats(OFFSET + length + 2);
+                float[] expectedVelocity = randomFloats(OFFSET + length + 2);
+                float[] expectedValues = randomFloats(OFFSET + length + 2);
+                float[] actualGradients = expectedGradients.clone();
+                float[] actualVelocity = expectedVelocity.clone();
+                float[] actualValues = expectedValues.clone();
+                scalar.momentumStep(0.05f, 0.9f, nesterov, expectedGradients, expectedVelocity, expectedValues, OFFSET, length);
+                simd.momentumStep(0.05f, 0.9f, nesterov, actualGradients, actualVelocity, actualValues, OFFSET, length);
+                String message = "nesterov " + nesterov + ", length " + length;
+                assertArrayEquals(expectedGradients, actualGradients, "gradients, " + message);
+                assertArrayEquals(expectedVelocity, actualVelocity, TOLERANCE, "velocity, " + message);
+                assertArrayEquals(expectedValues, actualValues, TOLERANCE, "values, " + message);
+            }
+        }
+    }
+
+    @Test
+    void adamStepMatchesScalar() {
+        for (int length : lengths()) {
+            float[] expectedGradients = randomFloats(OFFSET + length + 2);
+            float[] expectedFirstMoments = randomFloats(OFFSET + length + 2);
+            float[] expectedSecondMoments = randomPositiveFloats(OFFSET + length + 2);
+            float[] expectedValues = randomFloats(OFFSET + length + 2);
+            float[] actualGradients = expectedGradients.clone();
+            float[] actualFirstMoments = expectedFirstMoments.clone();
+            float[] actualSecondMoments = expectedSecondMoments.clone();
+            float[] actualValues = expectedValues.clone();
+            scalar.adamStep(0.001f, 0.9f, 0.999f, 1.0e-8f, 0.01f,
+                    expectedGradients, expectedFirstMoments, expectedSecondMoments, expectedValues, OFFSET, length);
+            simd.adamStep(0.001f, 0.9f, 0.999f, 1.0e-8f, 0.01f,
+                    actualGradients, actualFirstMoments, actualSecondMoments, actualValues, OFFSET, length);
+            assertArrayEquals(expectedGradients, actualGradients, "gradients, length " + length);
+            assertArrayEquals(expectedFirstMoments, actualFirstMoments, TOLERANCE, "first moments, length " + length);
+            assertArrayEquals(expectedSecondMoments, actualSecondMoments, TOLERANCE, "second moments, length " + length);
+            assertArrayEquals(expectedValues, actualValues, TOLERANCE, "values, length " + length);
+        }
+    }
+
+    private float[] randomFloats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return values;
+    }
+
+    private float[] randomPositiveFloats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat();
+        }
+        return values;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] values = new byte[length];
+        random.nextBytes(values);
+        return values;
+    }
+}
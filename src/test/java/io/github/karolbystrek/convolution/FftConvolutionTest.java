@@ -0,0 +1,117 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.SequentialExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class FftConvolutionTest {
+
+    private static final float TOLERANCE = 5.0e-4f;
+
+    private final Random random = new Random(23);
+
+    @Test
+    void matchesDirectConvolutionWithSamePadding() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 3, 16, 16, 4, 7, 3), 0, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionWithoutPadding() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 2, 15, 13, 3, 7, 0), 0, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionOnNonPowerOfTwoSizes() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(3, 2, 13, 21, 5, 9, 4), 0, 0);
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(1, 4, 10, 7, 2, 5, 1), 0, 0);
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 1, 28, 28, 6, 11, 2), 0, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionWithInputAndParameterOffsets() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 3, 12, 11, 4, 7, 2), 17, 9);
+    }
+
+    @Test
+    void fallsBackForStridedConvolution() {
+        ConvolutionGeometry strided = ConvolutionGeometry.of(2, 3, 17, 17, 4, 3, 7, 7, 2, 3);
+        assertMatchesDirect(SequentialExecutor.INSTANCE, strided, 5, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionInParallel() {
+        ForkJoinExecutor executor = new ForkJoinExecutor(4);
+        try {
+            assertMatchesDirect(executor, geometry(5, 3, 19, 14, 6, 7, 3), 3, 0);
+        } finally {
+            executor.getPool().shutdown();
+        }
+    }
+
+    @Test
+    void refreshesKernelSpectraAfterInvalidate() {
+        ConvolutionGeometry geometry = geometry(2, 3, 14, 14, 4, 7, 3);
+        float[] input = randomArray(geometry.batchSize() * geometry.inputSize());
+        float[] parameters = randomArray(geometry.weightsSize() + geometry.numKernels());
+        float[] delta = randomArray(geometry.batchSize() * geometry.outputSize());
+        FftConvolution fft = new FftConvolution();
+        float[] output = new float[geometry.batchSize() * geometry.outputSize()];
+        fft.forward(SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, output);
+
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = random.nextFloat() - 0.5f;
+        }
+        fft.invalidate();
+
+        Result expected = run(new DirectConvolution(), SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, delta);
+        Result actual = run(fft, SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, delta);
+        assertResultsMatch(expected, actual);
+    }
+
+    private void assertMatchesDirect(ComputeExecutor executor, ConvolutionGeometry geometry, int inputOffset, int parametersOffset) {
+        float[] input = randomArray(inputOffset + geometry.batchSize() * geometry.inputSize());
+        float[] parameters = randomArray(parametersOffset + geometry.weightsSize() + geometry.numKernels());
+        float[] delta = randomArray(geometry.batchSize() * geometry.outputSize());
+
+        Result expected = run(new DirectConvolution(), executor, geometry, input, inputOffset, parameters, parametersOffset, delta);
+        Result actual = run(new FftConvolution(), executor, geometry, input, inputOffset, parameters, parametersOffset, delta);
+        assertResultsMatch(expected, actual);
+    }
+
+    private static void assertResultsMatch(Result expected, Result actual) {
+        assertArrayEquals(expected.output(), actual.output(), TOLERANCE, "forward");
+        assertArrayEquals(expected.gradients(), actual.gradients(), TOLERANCE, "weight gradients");
+        assertArrayEquals(expected.gradInput(), actual.gradInput(), TOLERANCE, "input gradients");
+    }
+
+    private static Result run(ConvolutionEngine engine, ComputeExecutor executor, ConvolutionGeometry geometry,
+                              float[] input, int inputOffset, float[] parameters, int parametersOffset, float[] delta) {
+        float[] output = new float[geometry.batchSize() * geometry.outputSize()];
+        float[] gradients = new float[parameters.length];
+        float[] gradInput = new float[geometry.batchSize() * geometry.inputSize()];
+        engine.forward(executor, geometry, input, inputOffset, parameters, parametersOffset, output);
+        engine.backward(executor, geometry, input, inputOffset, delta, parameters, gradients, parametersOffset, gradInput);
+        return new Result(output, gradients, gradInput);
+    }
+
+    private static ConvolutionGeometry geometry(int batchSize, int depth, int height, int width, int numKernels,
+                                                int kernelSize, int padding) {
+        return ConvolutionGeometry.of(batchSize, depth, height, width, numKernels, depth, kernelSize, kernelSize, 1, padding);
+    }
+
+    private float[] randomArray(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() - 0.5f;
+        }
+        return values;
+    }
+
+    private record Result(float[] output, float[] gradients, float[] gradInput) {
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.karolbystrek.convolution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RealFft2dTest {
+
+    private static final float TOLERANCE = 1.0e-4f;
+
+    private final Random random = new Random(29);
+
+    @Test
+    void forwardMatchesDiscreteFourierTransform() {
+        assertMatchesDft(8, 8);
+        assertMatchesDft(4, 16);
+        assertMatchesDft(16, 2);
+        assertMatchesDft(1, 8);
+    }
+
+    @Test
+    void inverseRestoresInput() {
+        for (int[] size : new int[][]{{8, 8}, {2, 32}, {32, 4}, {1, 2}}) {
+            RealFft2d fft = new RealFft2d(size[0], size[1]);
+            int offset = 5;
+            float[] real = randomArray(offset + fft.realSize());
+            float[] spectrum = new float[offset + fft.spectrumSize()];
+            float[] restored = new float[fft.realSize()];
+            float[] work = new float[fft.workSize()];
+
+            fft.forward(real, offset, spectrum, offset, work);
+            fft.inverse(spectrum, offset, restored, 0, work);
+
+            float[] expected = new float[fft.realSize()];
+            System.arraycopy(real, offset, expected, 0, expected.length);
+            assertArrayEquals(expected, restored, TOLERANCE, size[0] + "x" + size[1]);
+        }
+    }
+
+    @Test
+    void rejectsSizesThatAreNotPowersOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new RealFft2d(6, 8));
+        assertThrows(IllegalArgumentException.class, () -> new RealFft2d(8, 12));
+        assertThrows(IllegalArgumentException.class, () -> new RealFft2d(8, 1));
+    }
+
+    @Test
+    void sizeForRoundsUpToPowerOfTwo() {
+        assertEquals(2, RealFft2d.sizeFor(1));
+        assertEquals(2, RealFft2d.sizeFor(2));
+        assertEquals(8, RealFft2d.sizeFor(5));
+        assertEquals(32, RealFft2d.sizeFor(32));
+        assertEquals(64, RealFft2d.sizeFor(33));
+    }
+
+    private void assertMatchesDft(int rows, int cols) {
+        RealFft2d fft = new RealFft2d(rows, cols);
+        float[] real = randomArray(fft.realSize());
+        float[] spectrum = new float[fft.spectrumSize()];
+        fft.forward(real, 0, spectrum, 0, new float[fft.workSize()]);
+
+        int spectrumCols = cols / 2 + 1;
+        for (int u = 0; u < rows; u++) {
+            for (int v = 0; v < spectrumCols; v++) {
+                double re = 0.0;
+                double im = 0.0;
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        double angle = -2.0 * Math.PI * ((double) u * r / rows + (double) v * c / cols);
+                        re += real[r * cols + c] * Math.cos(angle);
+                        im += real[r * cols + c] * Math.sin(angle);
+                    }
+                }
+                int index = 2 * (u * spectrumCols + v);
+                String message = rows + "x" + cols + " at (" + u + ", " + v + ")";
+                assertEquals(re, spectrum[index], TOLERANCE * rows * cols, message);
+                assertEquals(im, spectrum[index + 1], TOLERANCE * rows * cols, message);
+            }
+        }
+    }
+
+    private float[] randomArray(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() - 0.5f;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.karolbystrek.convolution;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.SequentialExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class WinogradConvolutionTest {
+
+    private static final float TOLERANCE = 1.0e-4f;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void matchesDirectConvolutionOnEvenSizes() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 8, 8, 8, 8), 0, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionOnOddSizes() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(3, 9, 7, 11, 12), 0, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionWithInputAndParameterOffsets() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 8, 9, 5, 10), 13, 6);
+    }
+
+    @Test
+    void matchesDirectConvolutionBelowMinimumChannels() {
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 3, 7, 9, 4), 5, 0);
+        assertMatchesDirect(SequentialExecutor.INSTANCE, geometry(2, 8, 7, 9, 4), 5, 0);
+    }
+
+    @Test
+    void matchesDirectConvolutionInParallel() {
+        ForkJoinExecutor executor = new ForkJoinExecutor(4);
+        try {
+            assertMatchesDirect(executor, geometry(5, 8, 13, 15, 9), 3, 0);
+        } finally {
+            executor.getPool().shutdown();
+        }
+    }
+
+    @Test
+    void refreshesFilterTransformsAfterInvalidate() {
+        ConvolutionGeometry geometry = geometry(2, 8, 7, 7, 8);
+        float[] input = randomArray(geometry.batchSize() * geometry.inputSize());
+        float[] parameters = randomArray(geometry.weightsSize() + geometry.numKernels());
+        WinogradConvolution winograd = new WinogradConvolution();
+        float[] output = new float[geometry.batchSize() * geometry.outputSize()];
+        winograd.forward(SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, output);
+
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = random.nextFloat() - 0.5f;
+        }
+        winograd.invalidate();
+        winograd.forward(SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, output);
+
+        float[] expected = new float[output.length];
+        new DirectConvolution().forward(SequentialExecutor.INSTANCE, geometry, input, 0, parameters, 0, expected);
+        assertArrayEquals(expected, output, TOLERANCE);
+    }
+
+    private void assertMatchesDirect(ComputeExecutor executor, ConvolutionGeometry geometry, int inputOffset, int parametersOffset) {
+        float[] input = randomArray(inputOffset + geometry.batchSize() * geometry.inputSize());
+        float[] parameters = randomArray(parametersOffset + geometry.weightsSize() + geometry.numKernels());
+        float[] delta = randomArray(geometry.batchSize() * geometry.outputSize());
+
+        Result expected = run(new DirectConvolution(), executor, geometry, input, inputOffset, parameters, parametersOffset, delta);
+        Result actual = run(new WinogradConvolution(), executor, geometry, input, inputOffset, parameters, parametersOffset, delta);
+
+        assertArrayEquals(expected.output(), actual.output(), TOLERANCE, "forward");
+        assertArrayEquals(expected.gradients(), actual.gradients(), TOLERANCE, "weight gradients");
+        assertArrayEquals(expected.gradInput(), actual.gradInput(), TOLERANCE, "input gradients");
+    }
+
+    private static Result run(ConvolutionEngine engine, ComputeExecutor executor, ConvolutionGeometry geometry,
+                              float[] input, int inputOffset, float[] parameters, int parametersOffset, float[] delta) {
+        float[] output = new float[geometry.batchSize() * geometry.outputSize()];
+        float[] gradients = new float[parameters.length];
+        float[] gradInput = new float[geometry.batchSize() * geometry.inputSize()];
+        engine.forward(executor, geometry, input, inputOffset, parameters, parametersOffset, output);
+        engine.backward(executor, geometry, input, inputOffset, delta, parameters, gradients, parametersOffset, gradInput);
+        return new Result(output, gradients, gradInput);
+    }
+
+    private static ConvolutionGeometry geometry(int batchSize, int depth, int height, int width, int numKernels) {
+        return ConvolutionGeometry.of(batchSize, depth, height, width, numKernels, depth, 3, 3, 1, 1);
+    }
+
+    private float[] randomArray(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() - 0.5f;
+        }
+        return values;
+    }
+
+    private record Result(float[] output, float[] gradients, float[] gradInput) {
+    }
+}
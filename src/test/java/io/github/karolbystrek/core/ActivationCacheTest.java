@@ -0,0 +1,123 @@
+package io.github.karolbystrek.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivationCacheTest {
+
+    private final Random random = new Random(18);
+
+    @Test
+    void fp32KeepsTheStoredTensor() {
+        ActivationCache cache = new ActivationCache();
+        Tensor tensor = randomTensor(2, 3, 4, 5);
+
+        cache.store(tensor);
+
+        assertSame(tensor, cache.load());
+    }
+
+    @Test
+    void reducedPrecisionRoundTripsValuesAndShape() {
+        for (Precision precision : new Precision[]{Precision.BF16, Precision.FP16}) {
+            ActivationCache cache = new ActivationCache();
+            cache.setPrecision(precision);
+            Tensor tensor = randomTensor(2, 3, 4, 5);
+
+            cache.store(tensor);
+            Tensor loaded = cache.load();
+
+            assertArrayEquals(tensor.getShape(), loaded.getShape(), precision.name());
+            assertArrayEquals(rounded(precision, tensor.getData()), loaded.getData(), precision.name());
+        }
+    }
+
+    @Test
+    void reducedPrecisionStoresStridedViews() {
+        ActivationCache cache = new ActivationCache();
+        cache.setPrecision(Precision.FP16);
+        Tensor batch = randomTensor(4, 2, 3, 3);
+        Tensor slice = batch.slice(1, 1, 2);
+
+        cache.store(slice);
+        Tensor loaded = cache.load();
+
+        assertArrayEquals(new int[]{4, 1, 3, 3}, loaded.getShape());
+        assertArrayEquals(rounded(Precision.FP16, slice.contiguous().getData()), loaded.getData());
+    }
+
+    @Test
+    void reducedPrecisionReusesItsBufferForSmallerTensors() {
+        ActivationCache cache = new ActivationCache();
+        cache.setPrecision(Precision.BF16);
+        cache.store(randomTensor(4, 2, 6, 6));
+        Tensor smaller = randomTensor(1, 2, 3, 3);
+
+        cache.store(smaller);
+        Tensor loaded = cache.load();
+
+        assertArrayEquals(smaller.getShape(), loaded.getShape());
+        assertArrayEquals(rounded(Precision.BF16, smaller.getData()), loaded.getData());
+    }
+
+    @Test
+    void storeOwnedReturnsTensorsToTheArena() {
+        TensorArena arena = new TensorArena();
+        TensorArena previous = TensorArena.bind(arena);
+        try {
+            ActivationCache cache = new ActivationCache();
+            cache.setPrecision(Precision.FP16);
+            int mark = arena.mark();
+            Tensor owned = TensorArena.allocate(2, 1, 4, 4);
+            owned.getData()[3] = 1.5f;
+
+            cache.storeOwned(owned);
+            assertEquals(1, arena.getPool().getFreeCount());
+
+            Tensor loaded = cache.load();
+            assertSame(owned.getData(), loaded.getData());
+            assertEquals(1.5f, loaded.getData()[3]);
+            cache.release(loaded);
+            assertEquals(1, arena.getPool().getFreeCount());
+            arena.rewind(mark);
+        } finally {
+            TensorArena.bind(previous);
+        }
+    }
+
+    @Test
+    void changingPrecisionDropsTheCachedTensor() {
+        ActivationCache cache = new ActivationCache();
+        cache.store(randomTensor(1, 1, 2, 2));
+
+        cache.setPrecision(Precision.BF16);
+        assertEquals(Precision.BF16, cache.getPrecision());
+        cache.setPrecision(Precision.FP32);
+
+        assertNull(cache.load());
+        assertTrue(cache.getPrecision() == Precision.FP32);
+    }
+
+    private static float[] rounded(Precision precision, float[] values) {
+        float[] rounded = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rounded[i] = precision.round(values[i]);
+        }
+        return rounded;
+    }
+
+    private Tensor randomTensor(int... shape) {
+        Tensor tensor = new Tensor(shape);
+        for (int i = 0; i < tensor.getSize(); i++) {
+            tensor.getData()[i] = (random.nextFloat() - 0.5f) * 8.0f;
+        }
+        return tensor;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.karolbystrek.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrecisionTest {
+
+    private static final int ENCODINGS = 1 << 16;
+
+    @Test
+    void fp16DecodesEveryEncodingExactly() {
+        for (int bits = 0; bits < ENCODINGS; bits++) {
+            float decoded = Precision.FP16.decode((short) bits);
+            float expected = halfValue(bits);
+            if (Float.isNaN(expected)) {
+                assertTrue(Float.isNaN(decoded), "encoding " + Integer.toHexString(bits));
+            } else {
+                assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(decoded), "encoding " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void fp16EncodesEveryDecodedValueBackToItsEncoding() {
+        for (int bits = 0; bits < ENCODINGS; bits++) {
+            short encoded = Precision.FP16.encode(Precision.FP16.decode((short) bits));
+            if (isHalfNaN(bits)) {
+                assertTrue(isHalfNaN(encoded & 0xffff), "encoding " + Integer.toHexString(bits));
+            } else {
+                assertEquals(bits, encoded & 0xffff, "encoding " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void fp16RoundsToNearestEven() {
+        for (int bits = 0; bits < 0x7bff; bits++) {
+            for (int sign : new int[]{0, 0x8000}) {
+                int lower = sign | bits;
+                int upper = sign | (bits + 1);
+                float midpoint = (float) (((double) halfValue(lower) + halfValue(upper)) / 2);
+                int even = (bits & 1) == 0 ? lower : upper;
+                assertEquals(even, encodeHalf(midpoint), "halfway above " + Integer.toHexString(lower));
+                assertEquals(upper, encodeHalf(Math.nextAfter(midpoint, sign == 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY)));
+                assertEquals(lower, encodeHalf(Math.nextAfter(midpoint, 0.0)));
+            }
+        }
+    }
+
+    @Test
+    void fp16OverflowsToInfinity() {
+        assertEquals(0x7bff, encodeHalf(65504.0f));
+        assertEquals(0x7bff, encodeHalf(Math.nextDown(65520.0f)));
+        assertEquals(0x7c00, encodeHalf(65520.0f));
+        assertEquals(0xfc00, encodeHalf(-1.0e6f));
+        assertEquals(0x7c00, encodeHalf(Float.POSITIVE_INFINITY));
+        assertTrue(isHalfNaN(encodeHalf(Float.NaN)));
+        assertTrue(isHalfNaN(encodeHalf(Float.intBitsToFloat(0x7f800001))));
+    }
+
+    @Test
+    void bf16DecodesAndEncodesEveryEncoding() {
+        for (int bits = 0; bits < ENCODINGS; bits++) {
+            float decoded = Precision.BF16.decode((short) bits);
+            assertEquals(bits << 16, Float.floatToRawIntBits(decoded), "encoding " + Integer.toHexString(bits));
+            short encoded = Precision.BF16.encode(decoded);
+            if (Float.isNaN(decoded)) {
+                assertTrue(Float.isNaN(Precision.BF16.decode(encoded)), "encoding " + Integer.toHexString(bits));
+            } else {
+                assertEquals(bits, encoded & 0xffff, "encoding " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void bf16RoundsToNearestEven() {
+        for (int bits = 0; bits < 0x7f7f; bits++) {
+            for (int sign : new int[]{0, 0x8000}) {
+                int lower = sign | bits;
+                int upper = sign | (bits + 1);
+                int midpoint = lower << 16 | 0x8000;
+                int even = (bits & 1) == 0 ? lower : upper;
+                assertEquals(even, encodeBfloat16(midpoint), "halfway above " + Integer.toHexString(lower));
+                assertEquals(upper, encodeBfloat16(midpoint + 1));
+                assertEquals(lower, encodeBfloat16(midpoint - 1));
+            }
+        }
+        assertEquals(0x7f80, encodeBfloat16(Float.floatToRawIntBits(Float.MAX_VALUE)));
+        assertTrue(Float.isNaN(Precision.BF16.decode(Precision.BF16.encode(Float.intBitsToFloat(0x7f800001)))));
+    }
+
+    @Test
+    void roundKeepsFp32ValuesAndRejectsPackingThem() {
+        assertEquals(0.1f, Precision.FP32.round(0.1f));
+        assertEquals(Precision.FP16.decode(Precision.FP16.encode(0.1f)), Precision.FP16.round(0.1f));
+        assertThrows(IllegalStateException.class, () -> Precision.FP32.encode(1.0f));
+        assertThrows(IllegalStateException.class, () -> Precision.FP32.decode((short) 0));
+    }
+
+    private static float halfValue(int bits) {
+        int sign = (bits & 0x8000) != 0 ? -1 : 1;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return mantissa == 0 ? sign * Float.POSITIVE_INFINITY : Float.NaN;
+        }
+        if (exponent == 0) {
+            return (float) (sign * Math.scalb((double) mantissa, -24));
+        }
+        return (float) (sign * Math.scalb(1024.0 + mantissa, exponent - 25));
+    }
+
+    private static boolean isHalfNaN(int bits) {
+        return (bits & 0x7c00) == 0x7c00 && (bits & 0x3ff) != 0;
+    }
+
+    private static int encodeHalf(float value) {
+        return Precision.FP16.encode(value) & 0xffff;
+    }
+
+    private static int encodeBfloat16(int floatBits) {
+        return Precision.BF16.encode(Float.intBitsToFloat(floatBits)) & 0xffff;
+    }
+}
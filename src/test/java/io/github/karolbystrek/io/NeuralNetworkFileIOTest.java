@@ -0,0 +1,289 @@
+package io.github.karolbystrek.io;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.HiddenLayer;
+import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.layers.OutputLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.layers.PoolingMode;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.quantization.PostTrainingQuantizer;
+import io.github.karolbystrek.quantization.QuantizedConvolutionalLayer;
+import io.github.karolbystrek.quantization.QuantizedDenseLayer;
+import io.github.karolbystrek.reader.DataPoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NeuralNetworkFileIOTest {
+
+    private static final int[] INPUT_SHAPE = {1, 8, 8};
+    private static final int[] SMALL_INPUT_SHAPE = {1, 4, 4};
+
+    private final Random random = new Random(3);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void quantizedModelSurvivesTextRoundTrip() throws IOException {
+        NeuralNetwork quantized = quantizedModel();
+        String path = directory.resolve("quantized.txt").toString();
+
+        NeuralNetworkFileIO.saveNetwork(quantized, path);
+        NeuralNetwork loaded = NeuralNetworkFileIO.loadNetwork(path);
+
+        assertSameQuantizedModel(quantized, loaded);
+    }
+
+    @Test
+    void quantizedModelSurvivesBinaryRoundTrip() throws IOException {
+        NeuralNetwork quantized = quantizedModel();
+        String path = directory.resolve("quantized.bin").toString();
+
+        NeuralNetworkFileIO.saveNetworkBinary(quantized, path);
+        NeuralNetwork loaded = NeuralNetworkFileIO.loadNetworkBinary(path);
+
+        assertSameQuantizedModel(quantized, loaded);
+    }
+
+    @Test
+    void textSurvivesConversionToBinaryAndBack() throws IOException {
+        NeuralNetwork model = floatModel(PoolingMode.AVERAGE);
+        String text = directory.resolve("model.txt").toString();
+        String binary = directory.resolve("model.bin").toString();
+        String convertedText = directory.resolve("converted.txt").toString();
+
+        NeuralNetworkFileIO.saveNetwork(model, text);
+        NeuralNetworkFileIO.convertTextToBinary(text, binary);
+        NeuralNetworkFileIO.convertBinaryToText(binary, convertedText);
+
+        assertEquals(Files.readString(Path.of(text)), Files.readString(Path.of(convertedText)));
+        assertSameFloatModel(model, NeuralNetworkFileIO.loadNetwork(convertedText), INPUT_SHAPE);
+        assertSameFloatModel(model, NeuralNetworkFileIO.loadNetworkBinary(binary), INPUT_SHAPE);
+    }
+
+    @Test
+    void rejectsBinaryFileWithCorruptedByte() throws IOException {
+        Path binary = directory.resolve("model.bin");
+        NeuralNetworkFileIO.saveNetworkBinary(floatModel(PoolingMode.MAX), binary.toString());
+        byte[] bytes = Files.readAllBytes(binary);
+
+        for (int position : new int[]{3 * Integer.BYTES, bytes.length / 2, bytes.length - Long.BYTES - 1, bytes.length - 1}) {
+            byte[] corrupted = bytes.clone();
+            corrupted[position] ^= 0x10;
+            Path corruptedFile = directory.resolve("corrupted-" + position + ".bin");
+            Files.write(corruptedFile, corrupted);
+
+            IOException failure = assertThrows(IOException.class,
+                    () -> NeuralNetworkFileIO.loadNetworkBinary(corruptedFile.toString()), "byte " + position);
+            assertTrue(failure.getMessage().startsWith("Checksum mismatch"), failure.getMessage());
+        }
+    }
+
+    @Test
+    void loadsVersionTwoBinaryFile() throws IOException {
+        NeuralNetwork model = floatModel(PoolingMode.AVERAGE);
+        Path binary = directory.resolve("model.bin");
+        NeuralNetworkFileIO.saveNetworkBinary(model, binary.toString());
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(binary)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(Integer.BYTES, 2);
+        Files.write(binary, withChecksum(buffer));
+
+        assertSameFloatModel(model, NeuralNetworkFileIO.loadNetworkBinary(binary.toString()), INPUT_SHAPE);
+    }
+
+    @Test
+    void loadsVersionOneBinaryFile() throws IOException {
+        NeuralNetwork model = new NeuralNetwork();
+        ConvolutionalLayer convolutionalLayer = new ConvolutionalLayer(2, 1, 3, 1, 1);
+        FullyConnectedLayer fullyConnectedLayer = new FullyConnectedLayer(new int[]{2 * 2 * 2, 3});
+        model.addLayer(convolutionalLayer);
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(fullyConnectedLayer);
+        Layer denseLayer = fullyConnectedLayer.getLayers()[0];
+
+        int headerSize = 3 * Integer.BYTES + 6 * Integer.BYTES + Long.BYTES + 3 * Integer.BYTES + Integer.BYTES
+                + 4 * Integer.BYTES + Long.BYTES;
+        int convolutionOffset = align(headerSize);
+        int denseOffset = convolutionOffset + align(convolutionalLayer.getParameterCount() * Float.BYTES);
+        int checksumOffset = denseOffset + align(denseLayer.getParameterCount() * Float.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(checksumOffset + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(BinaryNetworkFormat.MAGIC).putInt(1).putInt(4);
+        buffer.putInt(1).putInt(2).putInt(1).putInt(3).putInt(1).putInt(1).putLong(convolutionOffset);
+        buffer.putInt(2).putInt(2).putInt(2);
+        buffer.putInt(3);
+        buffer.putInt(4).putInt(2).putInt(8).putInt(3).putLong(denseOffset);
+        buffer.position(convolutionOffset);
+        for (float parameter : parametersOf(convolutionalLayer)) {
+            buffer.putFloat(parameter);
+        }
+        buffer.position(denseOffset);
+        for (float parameter : parametersOf(denseLayer)) {
+            buffer.putFloat(parameter);
+        }
+        Path binary = directory.resolve("version1.bin");
+        Files.write(binary, withChecksum(buffer));
+
+        NeuralNetwork loaded = NeuralNetworkFileIO.loadNetworkBinary(binary.toString());
+
+        assertEquals(PoolingMode.MAX, assertInstanceOf(PoolingLayer.class, loaded.getLayers().get(1)).getMode());
+        assertSameFloatModel(model, loaded, SMALL_INPUT_SHAPE);
+    }
+
+    private NeuralNetwork floatModel(PoolingMode poolingMode) {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(4, 1, 3, 1, 1));
+        model.addLayer(new PoolingLayer(poolingMode, 2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{4 * 4 * 4, 12, 10}));
+        return model;
+    }
+
+    private void assertSameFloatModel(NeuralNetwork expected, NeuralNetwork actual, int[] inputShape) {
+        List<Layer> expectedLayers = expected.getLayers();
+        List<Layer> actualLayers = actual.getLayers();
+        assertEquals(expectedLayers.size(), actualLayers.size());
+        for (int i = 0; i < expectedLayers.size(); i++) {
+            Layer expectedLayer = expectedLayers.get(i);
+            Layer actualLayer = actualLayers.get(i);
+            assertEquals(expectedLayer.getClass(), actualLayer.getClass(), "layer " + i);
+            if (expectedLayer instanceof ConvolutionalLayer expectedConvolution) {
+                ConvolutionalLayer actualConvolution = (ConvolutionalLayer) actualLayer;
+                assertEquals(expectedConvolution.getStride(), actualConvolution.getStride());
+                assertEquals(expectedConvolution.getPadding(), actualConvolution.getPadding());
+                assertArrayEquals(parametersOf(expectedConvolution), parametersOf(actualConvolution), "layer " + i);
+            } else if (expectedLayer instanceof PoolingLayer expectedPooling) {
+                PoolingLayer actualPooling = (PoolingLayer) actualLayer;
+                assertEquals(expectedPooling.getMode(), actualPooling.getMode());
+                assertEquals(expectedPooling.getPoolSize(), actualPooling.getPoolSize());
+                assertEquals(expectedPooling.getStride(), actualPooling.getStride());
+            } else if (expectedLayer instanceof FullyConnectedLayer expectedFullyConnected) {
+                FullyConnectedLayer actualFullyConnected = (FullyConnectedLayer) actualLayer;
+                assertArrayEquals(expectedFullyConnected.getLayerSizes(), actualFullyConnected.getLayerSizes());
+                for (int j = 0; j < expectedFullyConnected.getLayers().length; j++) {
+                    assertArrayEquals(parametersOf(expectedFullyConnected.getLayers()[j]),
+                            parametersOf(actualFullyConnected.getLayers()[j]), "layer " + i + "." + j);
+                }
+            }
+        }
+
+        Tensor input = randomTensor(inputShape);
+        assertArrayEquals(expected.infer(input).getData(), actual.infer(input).getData());
+    }
+
+    private static float[] parametersOf(Layer layer) {
+        if (layer instanceof ConvolutionalLayer convolutionalLayer) {
+            int offset = convolutionalLayer.getParametersOffset();
+            return Arrays.copyOfRange(convolutionalLayer.getParameters(), offset, offset + layer.getParameterCount());
+        } else if (layer instanceof HiddenLayer hiddenLayer) {
+            int offset = hiddenLayer.getWeightsOffset();
+            return Arrays.copyOfRange(hiddenLayer.getParameters(), offset, offset + layer.getParameterCount());
+        }
+        OutputLayer outputLayer = (OutputLayer) layer;
+        int offset = outputLayer.getWeightsOffset();
+        return Arrays.copyOfRange(outputLayer.getParameters(), offset, offset + layer.getParameterCount());
+    }
+
+    private static byte[] withChecksum(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - Long.BYTES);
+        buffer.putLong(bytes.length - Long.BYTES, checksum.getValue());
+        return bytes;
+    }
+
+    private static int align(int size) {
+        return (size + 63) / 64 * 64;
+    }
+
+    private NeuralNetwork quantizedModel() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(4, 1, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{4 * 4 * 4, 12, 10}));
+
+        List<DataPoint> calibrationData = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            calibrationData.add(new SampleDataPoint(randomTensor(INPUT_SHAPE)));
+        }
+        return new PostTrainingQuantizer().quantize(model, calibrationData);
+    }
+
+    private void assertSameQuantizedModel(NeuralNetwork expected, NeuralNetwork actual) {
+        List<Layer> expectedLayers = expected.getLayers();
+        List<Layer> actualLayers = actual.getLayers();
+        assertEquals(expectedLayers.size(), actualLayers.size());
+        for (int i = 0; i < expectedLayers.size(); i++) {
+            Layer expectedLayer = expectedLayers.get(i);
+            Layer actualLayer = actualLayers.get(i);
+            assertEquals(expectedLayer.getClass(), actualLayer.getClass(), "layer " + i);
+            if (expectedLayer instanceof QuantizedConvolutionalLayer expectedConvolution) {
+                QuantizedConvolutionalLayer actualConvolution = assertInstanceOf(QuantizedConvolutionalLayer.class, actualLayer);
+                assertEquals(expectedConvolution.getNumKernels(), actualConvolution.getNumKernels());
+                assertEquals(expectedConvolution.getKernelDepth(), actualConvolution.getKernelDepth());
+                assertEquals(expectedConvolution.getKernelSize(), actualConvolution.getKernelSize());
+                assertEquals(expectedConvolution.getStride(), actualConvolution.getStride());
+                assertEquals(expectedConvolution.getPadding(), actualConvolution.getPadding());
+                assertEquals(expectedConvolution.getInputScale(), actualConvolution.getInputScale());
+                assertArrayEquals(expectedConvolution.getWeights(), actualConvolution.getWeights());
+                assertArrayEquals(expectedConvolution.getWeightScales(), actualConvolution.getWeightScales());
+                assertArrayEquals(expectedConvolution.getBiases(), actualConvolution.getBiases());
+            } else if (expectedLayer instanceof QuantizedDenseLayer expectedDense) {
+                QuantizedDenseLayer actualDense = assertInstanceOf(QuantizedDenseLayer.class, actualLayer);
+                assertEquals(expectedDense.getNumNodesIn(), actualDense.getNumNodesIn());
+                assertEquals(expectedDense.getNumNodesOut(), actualDense.getNumNodesOut());
+                assertEquals(expectedDense.isSoftmax(), actualDense.isSoftmax());
+                assertEquals(expectedDense.getInputScale(), actualDense.getInputScale());
+                assertArrayEquals(expectedDense.getWeights(), actualDense.getWeights());
+                assertArrayEquals(expectedDense.getWeightScales(), actualDense.getWeightScales());
+                assertArrayEquals(expectedDense.getBiases(), actualDense.getBiases());
+            }
+        }
+
+        Tensor input = randomTensor(INPUT_SHAPE);
+        assertArrayEquals(expected.infer(input).getData(), actual.infer(input).getData());
+    }
+
+    private Tensor randomTensor(int... shape) {
+        Tensor tensor = new Tensor(shape);
+        for (int i = 0; i < tensor.getSize(); i++) {
+            tensor.getData()[i] = random.nextFloat();
+        }
+        return tensor;
+    }
+
+    private record SampleDataPoint(Tensor input) implements DataPoint {
+
+        @Override
+        public Tensor getInput() {
+            return input;
+        }
+
+        @Override
+        public Tensor getExpectedOutput() {
+            return new Tensor(1, 1, 10);
+        }
+    }
+}
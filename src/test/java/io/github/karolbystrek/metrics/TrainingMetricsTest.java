@@ -0,0 +1,114 @@
+package io.github.karolbystrek.metrics;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.reader.DataPoint;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TrainingMetricsTest {
+
+    private static final int SAMPLES = 12;
+    private static final int BATCH_SIZE = 4;
+    private static final int BATCHES = SAMPLES / BATCH_SIZE;
+
+    @Test
+    void recordsCheckpointRecomputationSeparatelyFromForward() {
+        NeuralNetwork model = network();
+        model.setCheckpointInterval(2);
+        TrainingMetrics metrics = new TrainingMetrics(false);
+        model.setMetrics(metrics);
+
+        model.train(randomData(), BATCH_SIZE, 0.01f);
+
+        for (int i = 0; i < model.getLayers().size(); i++) {
+            LayerMetrics layer = metrics.getLayer(i);
+            assertEquals(BATCHES, layer.getForwardCount(), "forward calls of layer " + i);
+            assertEquals(BATCHES, layer.getBackwardCount(), "backward calls of layer " + i);
+            assertEquals(i < 2 ? BATCHES : 0, layer.getRecomputeCount(), "recomputed calls of layer " + i);
+        }
+    }
+
+    @Test
+    void recordsNoRecomputationWithoutCheckpoints() {
+        NeuralNetwork model = network();
+        TrainingMetrics metrics = new TrainingMetrics(false);
+        model.setMetrics(metrics);
+
+        model.train(randomData(), BATCH_SIZE, 0.01f);
+
+        for (int i = 0; i < model.getLayers().size(); i++) {
+            assertEquals(BATCHES, metrics.getLayer(i).getForwardCount(), "forward calls of layer " + i);
+            assertEquals(0, metrics.getLayer(i).getRecomputeCount(), "recomputed calls of layer " + i);
+        }
+    }
+
+    @Test
+    void enablesAllocationTrackingOnlyWhenRequested() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        boolean wasEnabled = threads.isThreadAllocatedMemoryEnabled();
+        try {
+            threads.setThreadAllocatedMemoryEnabled(false);
+            TrainingMetrics untracked = new TrainingMetrics(false);
+            assertFalse(threads.isThreadAllocatedMemoryEnabled());
+            assertEquals(0L, untracked.allocatedBytes());
+
+            TrainingMetrics tracked = new TrainingMetrics(true);
+            assertTrue(threads.isThreadAllocatedMemoryEnabled());
+            assertTrue(tracked.allocatedBytes() > 0L);
+        } finally {
+            threads.setThreadAllocatedMemoryEnabled(wasEnabled);
+        }
+    }
+
+    private static NeuralNetwork network() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(4, 1, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{4 * 4 * 4, 10}));
+        return model;
+    }
+
+    private static List<DataPoint> randomData() {
+        Random random = new Random(25);
+        List<DataPoint> data = new ArrayList<>();
+        for (int n = 0; n < SAMPLES; n++) {
+            Tensor input = new Tensor(1, 8, 8);
+            for (int i = 0; i < input.getSize(); i++) {
+                input.getData()[i] = random.nextFloat();
+            }
+            Tensor expectedOutput = new Tensor(1, 1, 10);
+            expectedOutput.getData()[n % 10] = 1.0f;
+            data.add(new SampleDataPoint(input, expectedOutput));
+        }
+        return data;
+    }
+
+    private record SampleDataPoint(Tensor input, Tensor expectedOutput) implements DataPoint {
+
+        @Override
+        public Tensor getInput() {
+            return input;
+        }
+
+        @Override
+        public Tensor getExpectedOutput() {
+            return expectedOutput;
+        }
+    }
+}
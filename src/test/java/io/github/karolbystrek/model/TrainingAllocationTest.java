@@ -0,0 +1,176 @@
+package io.github.karolbystrek.model;
+
+import io.github.karolbystrek.compute.ComputeExecutor;
+import io.github.karolbystrek.compute.ForkJoinExecutor;
+import io.github.karolbystrek.compute.SequentialExecutor;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.FusedConvolutionPoolingLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.reader.DataPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TrainingAllocationTest {
+
+    private static final int BATCH_SIZE = 8;
+    private static final int SAMPLES = 12;
+    private static final int EPOCHS_PER_WINDOW = 100;
+    private static final int ZERO_WINDOWS = 5;
+    private static final int MAX_WINDOWS = 100;
+    private static final int PARALLELISM = 4;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private ForkJoinPool pool;
+
+    @AfterEach
+    void shutDownPool() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequentialTrainingStepDoesNotAllocate() {
+        assertSteadyStateAllocation(SequentialExecutor.INSTANCE, shallowNetwork());
+    }
+
+    @Test
+    void forkJoinTrainingStepDoesNotAllocate() {
+        assertSteadyStateAllocation(forkJoinExecutor(), shallowNetwork());
+    }
+
+    @Test
+    void compiledTrainingStepDoesNotAllocate() {
+        NeuralNetwork model = shallowNetwork();
+        model.setExecutor(forkJoinExecutor());
+        model.compile(BATCH_SIZE, 1, 12, 12);
+        assertSteadyStateAllocation(model.getExecutor(), model);
+    }
+
+    @Test
+    void winogradTrainingStepDoesNotAllocate() {
+        assertSteadyStateAllocation(forkJoinExecutor(), deepNetwork());
+    }
+
+    @Test
+    void fusedTrainingStepDoesNotAllocate() {
+        NeuralNetwork model = deepNetwork();
+        assertEquals(1, model.fuseLayers());
+        assertInstanceOf(FusedConvolutionPoolingLayer.class, model.getLayers().get(1));
+        assertSteadyStateAllocation(forkJoinExecutor(), model);
+    }
+
+    private void assertSteadyStateAllocation(ComputeExecutor executor, NeuralNetwork model) {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        model.setExecutor(executor);
+        List<DataPoint> data = randomData();
+
+        int zeroWindows = 0;
+        long lastAllocated = 0;
+        for (int window = 0; window < MAX_WINDOWS && zeroWindows < ZERO_WINDOWS; window++) {
+            long workersBefore = workerAllocatedBytes();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int epoch = 0; epoch < EPOCHS_PER_WINDOW; epoch++) {
+                model.train(data, BATCH_SIZE, 0.001f);
+            }
+            long after = threads.getCurrentThreadAllocatedBytes();
+            long allocated = after - before + workerAllocatedBytes() - workersBefore;
+            if (allocated == 0) {
+                zeroWindows++;
+            } else {
+                zeroWindows = 0;
+                lastAllocated = allocated;
+            }
+        }
+
+        assertEquals(ZERO_WINDOWS, zeroWindows, "Consecutive windows of " + EPOCHS_PER_WINDOW
+                + " warm epochs without allocation; the last allocating window took " + lastAllocated + " bytes");
+    }
+
+    private ForkJoinExecutor forkJoinExecutor() {
+        pool = new ForkJoinPool(PARALLELISM, this::newWorker, null, false,
+                PARALLELISM, PARALLELISM, 1, null, 10, TimeUnit.MINUTES);
+        return new ForkJoinExecutor(pool);
+    }
+
+    private ForkJoinWorkerThread newWorker(ForkJoinPool workerPool) {
+        ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(workerPool);
+        workers.add(worker);
+        return worker;
+    }
+
+    private long workerAllocatedBytes() {
+        long total = 0;
+        for (Thread worker : workers) {
+            total += Math.max(0L, threads.getThreadAllocatedBytes(worker.getId()));
+        }
+        return total;
+    }
+
+    private static NeuralNetwork shallowNetwork() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(8, 1, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{8 * 6 * 6, 10}));
+        return model;
+    }
+
+    private static NeuralNetwork deepNetwork() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(8, 1, 3, 1, 1));
+        model.addLayer(new ConvolutionalLayer(8, 8, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{8 * 6 * 6, 10}));
+        return model;
+    }
+
+    private static List<DataPoint> randomData() {
+        Random random = new Random(42);
+        List<DataPoint> data = new ArrayList<>();
+        for (int n = 0; n < SAMPLES; n++) {
+            Tensor input = new Tensor(1, 12, 12);
+            for (int i = 0; i < input.getSize(); i++) {
+                input.getData()[i] = random.nextFloat();
+            }
+            Tensor expectedOutput = new Tensor(1, 1, 10);
+            expectedOutput.getData()[n % 10] = 1.0f;
+            data.add(new SampleDataPoint(input, expectedOutput));
+        }
+        return data;
+    }
+
+    private record SampleDataPoint(Tensor input, Tensor expectedOutput) implements DataPoint {
+
+        @Override
+        public Tensor getInput() {
+            return input;
+        }
+
+        @Override
+        public Tensor getExpectedOutput() {
+            return expectedOutput;
+        }
+    }
+}
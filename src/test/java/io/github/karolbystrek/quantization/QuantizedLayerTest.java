@@ -0,0 +1,198 @@
+package io.github.karolbystrek.quantization;
+
+import io.github.karolbystrek.core.Kernel;
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.ConvolutionalLayer;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.layers.FullyConnectedLayer;
+import io.github.karolbystrek.layers.HiddenLayer;
+import io.github.karolbystrek.layers.Layer;
+import io.github.karolbystrek.layers.OutputLayer;
+import io.github.karolbystrek.layers.PoolingLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import io.github.karolbystrek.reader.DataPoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizedLayerTest {
+
+    private static final float ROUNDING_SLACK = 1.0e-5f;
+
+    private final Random random = new Random(19);
+
+    @Test
+    void quantizedHiddenLayerStaysWithinQuantizationError() {
+        HiddenLayer layer = new HiddenLayer(37, 11);
+        Tensor input = randomTensor(5, 1, 1, 37);
+        float inputScale = Int8.scaleFor(maxAbs(input));
+        QuantizedDenseLayer quantized = QuantizedDenseLayer.quantize(layer, inputScale);
+
+        Tensor expected = layer.inferBatch(input);
+        Tensor actual = quantized.inferBatch(input);
+
+        float[] bounds = denseErrorBounds(quantized, layer.getParameters(), layer.getWeightsOffset(), input);
+        for (int n = 0; n < 5; n++) {
+            for (int nodeOut = 0; nodeOut < 11; nodeOut++) {
+                int index = n * 11 + nodeOut;
+                assertEquals(expected.getData()[index], actual.getData()[index], bounds[index], "output " + index);
+            }
+        }
+    }
+
+    @Test
+    void quantizedOutputLayerStaysWithinQuantizationError() {
+        OutputLayer layer = new OutputLayer(29, 10);
+        Tensor input = randomTensor(4, 1, 1, 29);
+        float inputScale = Int8.scaleFor(maxAbs(input));
+        QuantizedDenseLayer quantized = QuantizedDenseLayer.quantize(layer, inputScale);
+
+        Tensor expected = layer.inferBatch(input);
+        Tensor actual = quantized.inferBatch(input);
+
+        float[] bounds = denseErrorBounds(quantized, layer.getParameters(), layer.getWeightsOffset(), input);
+        for (int n = 0; n < 4; n++) {
+            float maxLogitError = 0.0f;
+            float sum = 0.0f;
+            for (int nodeOut = 0; nodeOut < 10; nodeOut++) {
+                maxLogitError = Math.max(maxLogitError, bounds[n * 10 + nodeOut]);
+                sum += actual.getData()[n * 10 + nodeOut];
+            }
+            assertEquals(1.0f, sum, 1.0e-5f, "probabilities of sample " + n);
+            for (int nodeOut = 0; nodeOut < 10; nodeOut++) {
+                int index = n * 10 + nodeOut;
+                assertEquals(expected.getData()[index], actual.getData()[index], maxLogitError + ROUNDING_SLACK, "output " + index);
+            }
+        }
+    }
+
+    @Test
+    void quantizedConvolutionStaysWithinQuantizationError() {
+        assertConvolutionWithinError(new ConvolutionalLayer(6, 3, 3, 1, 1), randomTensor(2, 3, 9, 10));
+        assertConvolutionWithinError(new ConvolutionalLayer(4, 3, 3, 2, 1), randomTensor(2, 3, 11, 9));
+        assertConvolutionWithinError(new ConvolutionalLayer(5, 2, 5, 1, 0), randomTensor(3, 2, 12, 12));
+    }
+
+    @Test
+    void quantizerReplacesEveryLayerAndKeepsPredictions() {
+        NeuralNetwork model = new NeuralNetwork();
+        model.addLayer(new ConvolutionalLayer(4, 1, 3, 1, 1));
+        model.addLayer(new PoolingLayer(2, 2));
+        model.addLayer(new FlattenLayer());
+        model.addLayer(new FullyConnectedLayer(new int[]{4 * 4 * 4, 16, 10}));
+        model.fuseLayers();
+
+        List<DataPoint> calibrationData = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            calibrationData.add(new SampleDataPoint(randomTensor(1, 8, 8)));
+        }
+        NeuralNetwork quantized = new PostTrainingQuantizer(16).quantize(model, calibrationData);
+
+        List<Layer> layers = quantized.getLayers();
+        assertEquals(5, layers.size());
+        assertInstanceOf(QuantizedConvolutionalLayer.class, layers.get(0));
+        assertInstanceOf(PoolingLayer.class, layers.get(1));
+        assertInstanceOf(FlattenLayer.class, layers.get(2));
+        assertInstanceOf(QuantizedDenseLayer.class, layers.get(3));
+        assertInstanceOf(QuantizedDenseLayer.class, layers.get(4));
+        assertTrue(((QuantizedDenseLayer) layers.get(4)).isSoftmax());
+
+        for (DataPoint dataPoint : calibrationData.subList(0, 16)) {
+            float[] expected = model.predict(dataPoint).getData();
+            float[] actual = quantized.predict(dataPoint).getData();
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], 0.05f, "probability " + i);
+            }
+        }
+    }
+
+    private void assertConvolutionWithinError(ConvolutionalLayer layer, Tensor input) {
+        float inputScale = Int8.scaleFor(maxAbs(input));
+        QuantizedConvolutionalLayer quantized = QuantizedConvolutionalLayer.quantize(layer, inputScale);
+
+        Tensor expected = layer.inferBatch(input);
+        Tensor actual = quantized.inferBatch(input);
+        assertEquals(expected.getSize(), actual.getSize());
+
+        Kernel[] kernels = layer.getKernels();
+        int patchSize = kernels[0].getSize();
+        int planeSize = expected.getHeight() * expected.getWidth();
+        float inputBound = maxAbs(input) + inputScale / 2;
+        for (int n = 0; n < expected.getBatchSize(); n++) {
+            for (int k = 0; k < kernels.length; k++) {
+                float weightScale = quantized.getWeightScales()[k];
+                float weightsAbs = 0.0f;
+                for (int i = 0; i < patchSize; i++) {
+                    weightsAbs += Math.abs(kernels[k].getWeight(i));
+                }
+                float bound = errorBound(inputScale, weightScale, weightsAbs, patchSize * inputBound, patchSize);
+                for (int i = 0; i < planeSize; i++) {
+                    int index = (n * kernels.length + k) * planeSize + i;
+                    assertEquals(expected.getData()[index], actual.getData()[index], bound, "output " + index);
+                }
+            }
+        }
+    }
+
+    private static float[] denseErrorBounds(QuantizedDenseLayer quantized, float[] parameters, int weightsOffset, Tensor input) {
+        int numNodesIn = quantized.getNumNodesIn();
+        int numNodesOut = quantized.getNumNodesOut();
+        float inputScale = quantized.getInputScale();
+        float[] bounds = new float[input.getBatchSize() * numNodesOut];
+        for (int n = 0; n < input.getBatchSize(); n++) {
+            float inputAbs = 0.0f;
+            for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
+                inputAbs += Math.abs(input.getData()[n * numNodesIn + nodeIn]);
+            }
+            for (int nodeOut = 0; nodeOut < numNodesOut; nodeOut++) {
+                float weightsAbs = 0.0f;
+                for (int nodeIn = 0; nodeIn < numNodesIn; nodeIn++) {
+                    weightsAbs += Math.abs(parameters[weightsOffset + nodeOut * numNodesIn + nodeIn]);
+                }
+                bounds[n * numNodesOut + nodeOut] = errorBound(inputScale, quantized.getWeightScales()[nodeOut],
+                        weightsAbs, inputAbs, numNodesIn);
+            }
+        }
+        return bounds;
+    }
+
+    private static float errorBound(float inputScale, float weightScale, float weightsAbs, float inputAbs, int length) {
+        return inputScale / 2 * weightsAbs + weightScale / 2 * inputAbs
+                + 0.75f * length * inputScale * weightScale + inputScale * weightScale / 2 + ROUNDING_SLACK;
+    }
+
+    private Tensor randomTensor(int... shape) {
+        Tensor tensor = new Tensor(shape);
+        for (int i = 0; i < tensor.getSize(); i++) {
+            tensor.getData()[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return tensor;
+    }
+
+    private static float maxAbs(Tensor tensor) {
+        float maxAbs = 0.0f;
+        for (float value : tensor.getData()) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        return maxAbs;
+    }
+
+    private record SampleDataPoint(Tensor input) implements DataPoint {
+
+        @Override
+        public Tensor getInput() {
+            return input;
+        }
+
+        @Override
+        public Tensor getExpectedOutput() {
+            return new Tensor(1, 1, 10);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.karolbystrek.reader;
+
+import io.github.karolbystrek.core.Tensor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataLoaderTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final int SAMPLES = 10;
+    private static final int BATCH_SIZE = 4;
+
+    @Test
+    void deliversEverySampleOncePerEpoch() {
+        try (DataLoader loader = new DataLoader(samples(null), BATCH_SIZE, 2, 1, 3)) {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                for (int epoch = 0; epoch < 5; epoch++) {
+                    loader.startEpoch();
+                    assertEquals(allSamples(), drain(loader), "epoch " + epoch);
+                }
+            });
+        }
+    }
+
+    @Test
+    void restartsAnEpochThatWasAbandonedHalfway() {
+        try (DataLoader loader = new DataLoader(samples(null), BATCH_SIZE, 2, 2, 5)) {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                loader.startEpoch();
+                loader.release(loader.nextBatch());
+
+                loader.startEpoch();
+                assertEquals(allSamples(), drain(loader));
+
+                loader.startEpoch();
+                loader.abortEpoch();
+                assertNull(loader.nextBatch());
+            });
+        }
+    }
+
+    @Test
+    void refusesToEndAnEpochWhileBatchesAreHeld() {
+        try (DataLoader loader = new DataLoader(samples(null), BATCH_SIZE, 2, 1, 7)) {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                loader.startEpoch();
+                DataLoader.Batch held = loader.nextBatch();
+                float first = held.getInputs().getData()[0];
+
+                assertThrows(IllegalStateException.class, loader::startEpoch);
+                assertThrows(IllegalStateException.class, loader::abortEpoch);
+                assertEquals(first, held.getInputs().getData()[0]);
+
+                loader.release(held);
+                assertThrows(IllegalStateException.class, () -> loader.release(held));
+                loader.startEpoch();
+                assertEquals(allSamples(), drain(loader));
+            });
+        }
+    }
+
+    @Test
+    void recoversFromABatchThatFailedToLoad() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        try (DataLoader loader = new DataLoader(samples(failing), BATCH_SIZE, 2, 1, 11)) {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                loader.startEpoch();
+                IllegalStateException failure = assertThrows(IllegalStateException.class, () -> drain(loader));
+                assertSame(UnsupportedOperationException.class, failure.getCause().getClass());
+
+                failing.set(false);
+                for (int epoch = 0; epoch < 3; epoch++) {
+                    loader.startEpoch();
+                    assertEquals(allSamples(), drain(loader), "epoch " + epoch);
+                }
+            });
+        }
+    }
+
+    private static TreeSet<Integer> drain(DataLoader loader) {
+        TreeSet<Integer> seen = new TreeSet<>();
+        int batches = 0;
+        DataLoader.Batch batch;
+        while ((batch = loader.nextBatch()) != null) {
+            batches++;
+            Tensor inputs = batch.getInputs();
+            Tensor expectedOutputs = batch.getExpectedOutputs();
+            assertEquals(batch.size(), inputs.getBatchSize());
+            for (int n = 0; n < batch.size(); n++) {
+                int sample = (int) inputs.get(n, 0, 0, 0);
+                assertEquals(-sample, expectedOutputs.get(n, 0, 0, 0));
+                assertTrue(seen.add(sample), "sample " + sample + " delivered twice");
+            }
+            loader.release(batch);
+        }
+        assertEquals(loader.numBatches(), batches);
+        return seen;
+    }
+
+    private static TreeSet<Integer> allSamples() {
+        TreeSet<Integer> samples = new TreeSet<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            samples.add(i);
+        }
+        return samples;
+    }
+
+    private static List<DataPoint> samples(AtomicBoolean failing) {
+        List<DataPoint> data = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            Tensor input = new Tensor(1, 1, 1);
+            input.getData()[0] = i;
+            Tensor expectedOutput = new Tensor(1, 1, 1);
+            expectedOutput.getData()[0] = -i;
+            data.add(new SampleDataPoint(input, expectedOutput, i == SAMPLES / 2 ? failing : null));
+        }
+        return data;
+    }
+
+    private record SampleDataPoint(Tensor input, Tensor expectedOutput, AtomicBoolean failing) implements DataPoint {
+
+        @Override
+        public Tensor getInput() {
+            return input;
+        }
+
+        @Override
+        public Tensor getExpectedOutput() {
+            return expectedOutput;
+        }
+
+        @Override
+        public void copyInputTo(float[] target, int offset) {
+            if (failing != null && failing.get()) {
+                throw new UnsupportedOperationException("Sample is unreadable");
+            }
+            DataPoint.super.copyInputTo(target, offset);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.karolbystrek.serving;
+
+import io.github.karolbystrek.core.Tensor;
+import io.github.karolbystrek.layers.FlattenLayer;
+import io.github.karolbystrek.model.NeuralNetwork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InferenceServerTest {
+
+    private static final int[] INPUT_SHAPE = {1, 2, 2};
+    private static final String INPUT = "[0.1, 0.9, 0.3, 0.2]";
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private InferenceServer server;
+
+    @AfterEach
+    void closeServer() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void servesBatchedPredictionsUnderLoad() throws Exception {
+        server = start(new FlattenLayer(), 8, 4096);
+
+        HttpResponse<String> single = post(INPUT);
+        assertEquals(200, single.statusCode());
+        assertTrue(single.body().contains("\"prediction\":1"), single.body());
+
+        Random random = new Random(5);
+        List<Tensor> inputs = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Tensor input = new Tensor(INPUT_SHAPE);
+            for (int j = 0; j < input.getSize(); j++) {
+                input.getData()[j] = random.nextFloat();
+            }
+            inputs.add(input);
+        }
+        LoadGenerator.Result result = LoadGenerator.forServer(server).run(inputs, 16, 400);
+
+        assertEquals(400, result.requests());
+        assertEquals(0, result.failures());
+        long[] histogram = server.getMetrics().getBatchSizeHistogram();
+        long batchedRequests = 0;
+        for (int size = 2; size < histogram.length; size++) {
+            batchedRequests += histogram[size];
+        }
+        assertTrue(batchedRequests > 0, "No batch held more than one request");
+
+        HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(uri(InferenceServer.METRICS_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, metrics.statusCode());
+        assertTrue(metrics.body().contains("\"requests\":401"), metrics.body());
+        assertTrue(metrics.body().contains("\"batchSizeHistogram\":{"), metrics.body());
+    }
+
+    @Test
+    void rejectsMalformedInput() throws Exception {
+        server = start(new FlattenLayer(), 8, 4096);
+
+        assertEquals(400, post("[1.0, 2.0]").statusCode());
+        assertEquals(400, post("[1.0, 2.0, 3.0, 4.0, 5.0]").statusCode());
+        HttpResponse<String> notNumbers = post("[a, b, c, d]");
+        assertEquals(400, notNumbers.statusCode());
+        assertTrue(notNumbers.body().startsWith("{\"error\":"), notNumbers.body());
+
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(uri(InferenceServer.PREDICT_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, get.statusCode());
+        assertEquals(0, server.getMetrics().getLatency().getCount());
+    }
+
+    @Test
+    void rejectsRequestsWhenQueueIsFull() throws Exception {
+        GatedLayer gate = new GatedLayer();
+        server = start(gate, 1, 1);
+
+        CompletableFuture<HttpResponse<String>> running = postAsync(INPUT);
+        assertTrue(gate.entered.await(10, TimeUnit.SECONDS));
+        CompletableFuture<HttpResponse<String>> queued = postAsync(INPUT);
+        awaitQueueSize(1);
+
+        HttpResponse<String> rejected = post(INPUT);
+        assertEquals(503, rejected.statusCode());
+        assertTrue(rejected.body().contains("queue is full"), rejected.body());
+        assertEquals(1, server.getMetrics().getRejectedCount());
+
+        gate.released.countDown();
+        assertEquals(200, running.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, queued.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    void failsQueuedRequestsWithServiceUnavailableOnClose() throws Exception {
+        GatedLayer gate = new GatedLayer();
+        server = start(gate, 1, 4096);
+
+        CompletableFuture<HttpResponse<String>> running = postAsync(INPUT);
+        assertTrue(gate.entered.await(10, TimeUnit.SECONDS));
+        CompletableFuture<HttpResponse<String>> queued = postAsync(INPUT);
+        awaitQueueSize(1);
+
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(server::close);
+        assertTrue(gate.interrupted.await(10, TimeUnit.SECONDS));
+        gate.released.countDown();
+        closing.get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, running.get(10, TimeUnit.SECONDS).statusCode());
+        HttpResponse<String> unavailable = queued.get(10, TimeUnit.SECONDS);
+        assertEquals(503, unavailable.statusCode());
+        assertTrue(unavailable.body().contains("closed"), unavailable.body());
+    }
+
+    private InferenceServer start(FlattenLayer layer, int maxBatchSize, int queueCapacity) throws IOException {
+        NeuralNetwork network = new NeuralNetwork();
+        network.addLayer(layer);
+        return InferenceServer.start(network.asInferenceModel(), INPUT_SHAPE, new InetSocketAddress("localhost", 0),
+                maxBatchSize, Duration.ofMillis(50), queueCapacity);
+    }
+
+    private void awaitQueueSize(int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getBatcher().getQueueSize() < size) {
+            assertTrue(System.nanoTime() < deadline, "Request was never queued");
+            Thread.sleep(5);
+        }
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        return client.send(predictRequest(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> postAsync(String body) {
+        return client.sendAsync(predictRequest(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest predictRequest(String body) {
+        return HttpRequest.newBuilder(uri(InferenceServer.PREDICT_PATH))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private static final class GatedLayer extends FlattenLayer {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public Tensor inferBatch(Tensor input) {
+            entered.countDown();
+            boolean wasInterrupted = false;
+            while (true) {
+                try {
+                    released.await();
+                    break;
+                } catch (InterruptedException e) {
+                    wasInterrupted = true;
+                    interrupted.countDown();
+                }
+            }
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return super.inferBatch(input);
+        }
+    }
+}